@@ -0,0 +1,94 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.ApiDemoApplication;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Start the application for a benchmark, on its own in-memory H2 database unless a profile or URL sets the database
+ * (always as a servlet application, springfox needs the servlet context)
+ */
+final class BenchmarkApplication {
+
+    private static final String[] DEPARTMENTS = {"Finance", "Engineering", "Sales", "Marketing", "Legal"};
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String databaseName, String... properties) {
+        return start(databaseName, new Class<?>[0], properties);
+    }
+
+    /**
+     * @param extraSources benchmark-only bean classes, not annotated so the component scan never picks them up
+     * @param properties key=value, override application.properties
+     *                   (the admission rate limit is lifted unless an app.admission.* property is given,
+     *                   the in-memory database is used unless spring.profiles.active or spring.datasource.url is given)
+     */
+    static ConfigurableApplicationContext start(String databaseName, Class<?>[] extraSources, String... properties) {
+        // command line arguments, so they win over application.properties
+        List<String> args = new ArrayList<>();
+        args.add("--server.port=0");
+        args.add("--logging.level.root=WARN");
+        boolean admissionSet = false;
+        boolean databaseSet = false;
+        for (String property : properties) {
+            args.add("--" + property);
+            admissionSet |= property.startsWith("app.admission.");
+            databaseSet |= property.startsWith("spring.profiles.active=") || property.startsWith("spring.datasource.url=");
+        }
+        if (!databaseSet) {
+            args.add("--spring.datasource.url=jdbc:h2:mem:" + databaseName + ";DB_CLOSE_DELAY=-1;LAZY_QUERY_EXECUTION=1");
+        }
+        if (!admissionSet) {
+            // one client sends every request: the filter runs, its rate limit never rejects
+            args.add("--app.admission.rate-limit.refill-per-second=1000000000");
+        }
+        return new SpringApplicationBuilder(ApiDemoApplication.class)
+                .initializers(context -> {
+                    if (extraSources.length > 0) {
+                        ((AnnotationConfigRegistry) context).register(extraSources);
+                    }
+                })
+                .web(WebApplicationType.SERVLET)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .run(args.toArray(new String[0]));
+    }
+
+    /**
+     * Insert employees through the bulk service, in chunks of 1000
+     * @return ids of the inserted employees
+     */
+    static long[] seed(EmployeeService employeeService, int count) {
+        long[] ids = new long[count];
+        List<Employee> chunk = new ArrayList<>(1000);
+        int inserted = 0;
+        for (int i = 0; i < count; i++) {
+            chunk.add(employee(i));
+            if (chunk.size() == 1000 || i == count - 1) {
+                for (Employee saved : employeeService.saveEmployees(chunk)) {
+                    ids[inserted++] = saved.getId();
+                }
+                chunk = new ArrayList<>(1000);
+            }
+        }
+        return ids;
+    }
+
+    static Employee employee(int i) {
+        Employee employee = new Employee();
+        employee.setName("Employee " + i);
+        employee.setDepartment(DEPARTMENTS[i % DEPARTMENTS.length]);
+        employee.setSalary(20000 + (i * 37) % 80000);
+        return employee;
+    }
+}
@@ -0,0 +1,130 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overload: 32 clients send filtered pages (uncached SQL) over real HTTP to an application with 4 database connections,
+ * with admission control off or on (at most 8 requests in flight, shedding when more than 4 threads wait for a connection)
+ * A rejected client waits for Retry-After before its next request, like a well-behaved client
+ * Score: answered requests per second, split by the "admitted" / "shed" / "limited" counters;
+ * the latency of the admitted requests (p50 / p99 / max over the measurement iterations) is printed after each trial
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(32)
+public class EmployeeAdmissionBenchmark {
+
+    private static final String AUTHORIZATION = "Basic "
+            + Base64.getEncoder().encodeToString("admin:admin".getBytes(StandardCharsets.UTF_8));
+
+    @Param({"false", "true"})
+    private boolean admission;
+
+    private ConfigurableApplicationContext context;
+
+    private URL url;
+
+    private final Histogram latency = new ConcurrentHistogram(TimeUnit.SECONDS.toNanos(60), 3);
+
+    private final Histogram measured = new Histogram(TimeUnit.SECONDS.toNanos(60), 3);
+
+    /**
+     * Outcomes of one client thread, reported per second next to the score
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Outcomes {
+
+        public long admitted;
+
+        public long shed;
+
+        public long limited;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            admitted = 0;
+            shed = 0;
+            limited = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        context = BenchmarkApplication.start("admission_benchmark",
+                "spring.datasource.hikari.maximum-pool-size=4",
+                "app.admission.enabled=" + admission,
+                "app.admission.rate-limit.refill-per-second=1000000000",
+                "app.admission.shed.max-in-flight=8",
+                "app.admission.shed.max-pool-waiters=4");
+        BenchmarkApplication.seed(context.getBean(EmployeeService.class), 10000);
+        int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+        url = new URL("http://localhost:" + port + "/api/v1/employees?department=Sales&size=100");
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        latency.reset();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration(IterationParams iteration) {
+        if (iteration.getType() == IterationType.MEASUREMENT) {
+            measured.add(latency);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%nadmission=%s: %d admitted, p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                admission, measured.getTotalCount(), measured.getValueAtPercentile(50) / 1e6,
+                measured.getValueAtPercentile(99) / 1e6, measured.getMaxValue() / 1e6);
+        context.close();
+    }
+
+    @Benchmark
+    public int filteredPage(Outcomes outcomes) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty(HttpHeaders.AUTHORIZATION, AUTHORIZATION);
+        int status = connection.getResponseCode();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            while (in != null && in.read(buffer) >= 0) {
+                // drain, so the connection is kept alive
+            }
+        }
+        if (status == 200) {
+            outcomes.admitted++;
+            latency.recordValue(Math.min(System.nanoTime() - start, latency.getHighestTrackableValue()));
+            return status;
+        }
+        if (status == 503) {
+            outcomes.shed++;
+        } else if (status == 429) {
+            outcomes.limited++;
+        }
+        String retryAfter = connection.getHeaderField(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null) {
+            TimeUnit.SECONDS.sleep(Long.parseLong(retryAfter));
+        }
+        return status;
+    }
+}
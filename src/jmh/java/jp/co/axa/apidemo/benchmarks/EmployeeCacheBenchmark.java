@@ -0,0 +1,62 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.services.EmployeeService;
+import jp.co.axa.apidemo.services.EmployeeServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EmployeeService.getEmployee through the Spring cache proxy
+ * - hit: one hot id, always cached
+ * - miss: a random id evicted just before the call, so it goes to H2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmployeeCacheBenchmark {
+
+    private static final int TABLE_SIZE = 10000;
+
+    private ConfigurableApplicationContext context;
+
+    private EmployeeService employeeService;
+
+    private Cache cache;
+
+    private long[] ids;
+
+    private long hotId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkApplication.start("cache_benchmark");
+        employeeService = context.getBean(EmployeeService.class);
+        cache = context.getBean(CacheManager.class).getCache(EmployeeServiceImpl.EMPLOYEES_CACHE);
+        ids = BenchmarkApplication.seed(employeeService, TABLE_SIZE);
+        hotId = ids[0];
+        employeeService.getEmployee(hotId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public EmployeeView getEmployeeCacheHit() {
+        return employeeService.getEmployee(hotId);
+    }
+
+    @Benchmark
+    public EmployeeView getEmployeeCacheMiss() {
+        long id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        cache.evict(id);
+        return employeeService.getEmployee(id);
+    }
+}
@@ -0,0 +1,127 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+
+import javax.servlet.Filter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent in-flight requests against a small Tomcat pool (server.tomcat.max-threads=16),
+ * on platform threads or on virtual threads (app.web.virtual-threads, Java 21+ runtime)
+ * Every request blocks latencyMs in a filter, standing for a remote database round trip
+ * One invocation sends inFlight concurrent GETs over real HTTP and waits for all of them, so its time is the slowest one:
+ * on platform threads it grows with inFlight / 16, on virtual threads it stays near latencyMs
+ * The clients keep inFlight connections alive and the accept backlog holds inFlight connects: with the defaults
+ * (5 kept-alive connections, server.tomcat.accept-count=100) most requests open a new connection, a connect beyond
+ * the backlog is dropped and retried by TCP after 1s, which made the p99 of 128 in flight about latencyMs + 1s
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EmployeeConcurrencyBenchmark {
+
+    private static final String AUTHORIZATION = "Basic "
+            + Base64.getEncoder().encodeToString("admin:admin".getBytes(StandardCharsets.UTF_8));
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+
+    @Param({"16", "128"})
+    private int inFlight;
+
+    @Param({"200"})
+    private int latencyMs;
+
+    private ConfigurableApplicationContext context;
+
+    private ExecutorService clients;
+
+    private URL url;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        // read once by the JDK HTTP client, before its first connection
+        System.setProperty("http.maxConnections", Integer.toString(inFlight));
+        context = BenchmarkApplication.start("concurrency_benchmark", new Class<?>[]{BlockingLatency.class},
+                "server.tomcat.max-threads=16",
+                "server.tomcat.accept-count=" + Math.max(100, 2 * inFlight),
+                "app.web.virtual-threads=" + virtualThreads,
+                "app.benchmark.latency-ms=" + latencyMs);
+        long id = BenchmarkApplication.seed(context.getBean(EmployeeService.class), 100)[0];
+        int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+        url = new URL("http://localhost:" + port + "/api/v1/employees/" + id);
+        clients = Executors.newFixedThreadPool(inFlight);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        clients.shutdownNow();
+        context.close();
+    }
+
+    @Benchmark
+    public int inFlightRequests() throws Exception {
+        List<Future<Integer>> responses = new ArrayList<>(inFlight);
+        for (int i = 0; i < inFlight; i++) {
+            responses.add(clients.submit(this::get));
+        }
+        int ok = 0;
+        for (Future<Integer> response : responses) {
+            if (response.get() == 200) {
+                ok++;
+            }
+        }
+        return ok;
+    }
+
+    private int get() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty(HttpHeaders.AUTHORIZATION, AUTHORIZATION);
+        int status = connection.getResponseCode();
+        byte[] buffer = new byte[4096];
+        try (InputStream in = connection.getInputStream()) {
+            while (in.read(buffer) >= 0) {
+                // drain, so the connection is kept alive
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Blocking latency added to every request, after the security filters
+     * (not a @Configuration, only added to this benchmark's application)
+     */
+    static class BlockingLatency {
+
+        @Bean
+        public FilterRegistrationBean<Filter> blockingLatencyFilter(@Value("${app.benchmark.latency-ms}") long latencyMs) {
+            Filter filter = (request, response, chain) -> {
+                try {
+                    Thread.sleep(latencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                chain.doFilter(request, response);
+            };
+            return new FilterRegistrationBean<>(filter);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.dto.EmployeeQuery;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Database work past the caches, per database profile, on a table of 10000 employees
+ * - default: in-memory H2, h2-file: file-backed H2 in a temporary directory, deleted after the trial
+ * - jdbc: not run by default, needs a scratch database (the inserted employees are left there), e.g.
+ *   JDBC_URL=jdbc:postgresql://localhost:5432/bench ... -Djmh.args="EmployeeDatabaseBenchmark -p profile=jdbc"
+ * Scores: saves of 100 new employees (JDBC batches), updates by id, filtered pages (uncached SQL)
+ * and entity reads by id through the repository
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EmployeeDatabaseBenchmark {
+
+    @Param({"default", "h2-file"})
+    public String profile;
+
+    private ConfigurableApplicationContext context;
+
+    private Path directory;
+
+    private EmployeeService employeeService;
+
+    private EmployeeRepository employeeRepository;
+
+    private long[] ids;
+
+    private int next;
+
+    private EmployeeQuery departmentQuery;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        if ("default".equals(profile)) {
+            context = BenchmarkApplication.start("database_benchmark");
+        } else if ("h2-file".equals(profile)) {
+            directory = Files.createTempDirectory("database_benchmark");
+            context = BenchmarkApplication.start("database_benchmark", "spring.profiles.active=h2-file",
+                    "app.datasource.h2-file=" + directory.resolve("employees").toAbsolutePath());
+        } else {
+            context = BenchmarkApplication.start("database_benchmark", "spring.profiles.active=" + profile);
+        }
+        employeeService = context.getBean(EmployeeService.class);
+        employeeRepository = context.getBean(EmployeeRepository.class);
+        ids = BenchmarkApplication.seed(employeeService, 10000);
+        departmentQuery = new EmployeeQuery();
+        departmentQuery.setDepartment("Sales");
+        departmentQuery.setSize(100);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        if (directory != null) {
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+
+    @Benchmark
+    public List<Employee> insertBatch() {
+        List<Employee> employees = new ArrayList<>(100);
+        for (int i = 0; i < 100; i++) {
+            employees.add(BenchmarkApplication.employee(i));
+        }
+        return employeeService.saveEmployees(employees);
+    }
+
+    @Benchmark
+    public Employee updateOne() {
+        int i = next++;
+        Employee employee = BenchmarkApplication.employee(i);
+        employee.setId(ids[i % ids.length]);
+        return employeeService.updateEmployee(employee);
+    }
+
+    @Benchmark
+    public List<EmployeeView> filteredPage() {
+        return employeeService.retrieveEmployees(departmentQuery);
+    }
+
+    @Benchmark
+    public Optional<Employee> findById() {
+        return employeeRepository.findById(ids[next++ % ids.length]);
+    }
+}
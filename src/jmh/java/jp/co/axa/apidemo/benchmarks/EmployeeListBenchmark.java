@@ -0,0 +1,71 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.dto.EmployeeQuery;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Employee list reads on embedded H2, at several table sizes
+ * - first page and a page in the middle of the table (keyset)
+ * - first page of one department, read by the filtered query (not cached)
+ * - the whole table through the JDBC cursor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmployeeListBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int tableSize;
+
+    private ConfigurableApplicationContext context;
+
+    private EmployeeService employeeService;
+
+    private long middleId;
+
+    private EmployeeQuery departmentQuery;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkApplication.start("list_benchmark_" + tableSize);
+        employeeService = context.getBean(EmployeeService.class);
+        long[] ids = BenchmarkApplication.seed(employeeService, tableSize);
+        middleId = ids[tableSize / 2];
+        departmentQuery = new EmployeeQuery();
+        departmentQuery.setDepartment("Sales");
+        departmentQuery.setSize(100);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<EmployeeView> retrieveFirstPage() {
+        return employeeService.retrieveEmployees(0, 100);
+    }
+
+    @Benchmark
+    public List<EmployeeView> retrieveMiddlePage() {
+        return employeeService.retrieveEmployees(middleId, 100);
+    }
+
+    @Benchmark
+    public List<EmployeeView> retrieveDepartmentPage() {
+        return employeeService.retrieveEmployees(departmentQuery);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void streamAll(Blackhole blackhole) {
+        employeeService.streamEmployees(blackhole::consume);
+    }
+}
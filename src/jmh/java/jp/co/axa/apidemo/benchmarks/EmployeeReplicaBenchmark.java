@@ -0,0 +1,55 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random getEmployee and keyset pages over the whole table, from the caches (replica=false)
+ * or from the off-heap read replica (replica=true)
+ * Run with -prof gc to compare the allocation per operation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmployeeReplicaBenchmark {
+
+    @Param({"false", "true"})
+    private boolean replica;
+
+    @Param({"100000"})
+    private int tableSize;
+
+    private ConfigurableApplicationContext context;
+
+    private EmployeeService employeeService;
+
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkApplication.start("replica_benchmark", "app.employees.replica.enabled=" + replica);
+        employeeService = context.getBean(EmployeeService.class);
+        ids = BenchmarkApplication.seed(employeeService, tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public EmployeeView getRandomEmployee() {
+        return employeeService.getEmployee(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    public List<EmployeeView> getRandomPage() {
+        return employeeService.retrieveEmployees(ids[ThreadLocalRandom.current().nextInt(ids.length)], 100);
+    }
+}
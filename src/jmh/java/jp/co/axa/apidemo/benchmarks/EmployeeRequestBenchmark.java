@@ -0,0 +1,79 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.servlet.Filter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Full request path through MockMvc: security filter chain (HTTP Basic), controller, service, cache, JSON
+ * Run with -prof gc for the bytes allocated per request (gc.alloc.rate.norm)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmployeeRequestBenchmark {
+
+    private static final String AUTHORIZATION = "Basic "
+            + Base64.getEncoder().encodeToString("admin:admin".getBytes(StandardCharsets.UTF_8));
+
+    private ConfigurableApplicationContext context;
+
+    private MockMvc mockMvc;
+
+    private long hotId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkApplication.start("request_benchmark");
+        hotId = BenchmarkApplication.seed(context.getBean(EmployeeService.class), 10000)[0];
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context)
+                .addFilters(context.getBean("springSecurityFilterChain", Filter.class))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] getEmployee() throws Exception {
+        return mockMvc.perform(get("/api/v1/employees/" + hotId).header(HttpHeaders.AUTHORIZATION, AUTHORIZATION))
+                .andReturn().getResponse().getContentAsByteArray();
+    }
+
+    @Benchmark
+    public byte[] getEmployeesPage() throws Exception {
+        return mockMvc.perform(get("/api/v1/employees?size=100").header(HttpHeaders.AUTHORIZATION, AUTHORIZATION))
+                .andReturn().getResponse().getContentAsByteArray();
+    }
+
+    @Benchmark
+    public byte[] getEmployeesFiltered() throws Exception {
+        return mockMvc.perform(get("/api/v1/employees?department=Sales&size=100").header(HttpHeaders.AUTHORIZATION, AUTHORIZATION))
+                .andReturn().getResponse().getContentAsByteArray();
+    }
+
+    @Benchmark
+    public byte[] getEmployeeNotFound() throws Exception {
+        return mockMvc.perform(get("/api/v1/employees/0").header(HttpHeaders.AUTHORIZATION, AUTHORIZATION))
+                .andReturn().getResponse().getContentAsByteArray();
+    }
+
+    @Benchmark
+    public byte[] getEmployeesBadRequest() throws Exception {
+        return mockMvc.perform(get("/api/v1/employees?size=0").header(HttpHeaders.AUTHORIZATION, AUTHORIZATION))
+                .andReturn().getResponse().getContentAsByteArray();
+    }
+}
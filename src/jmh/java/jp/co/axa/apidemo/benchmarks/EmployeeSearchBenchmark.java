@@ -0,0 +1,66 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.dto.EmployeeSearchHit;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.events.EmployeeChangeEvent;
+import jp.co.axa.apidemo.services.EmployeeSearchIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typeahead searches over the in-process search index, filled with generated employees
+ * (no database: the index is fed with change events as the service does)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmployeeSearchBenchmark {
+
+    private static final String[] SYLLABLES = {"ma", "ri", "ko", "ta", "ne", "lo", "sa", "mi", "ru", "ka",
+            "to", "be", "ra", "shi", "da", "no", "ha", "ya", "te", "zu", "an", "el", "or", "un"};
+
+    private static final String[] DEPARTMENTS = {"engineering", "sales", "marketing", "finance", "legal",
+            "human resources", "support", "operations", "research", "procurement"};
+
+    @Param({"1000000"})
+    private int tableSize;
+
+    @Param({"ma", "mari", "kota sales", "marikp"})
+    private String text;
+
+    private EmployeeSearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        index = new EmployeeSearchIndex(null, tableSize, 60000);
+        Random random = new Random(42);
+        for (long id = 1; id <= tableSize; id++) {
+            Employee employee = new Employee();
+            employee.setId(id);
+            employee.setName(capitalize(word(random, 2)) + " " + capitalize(word(random, 3)));
+            employee.setDepartment(DEPARTMENTS[random.nextInt(DEPARTMENTS.length)]);
+            employee.setSalary(random.nextInt(100000));
+            index.onEmployeeChange(EmployeeChangeEvent.created(employee));
+        }
+    }
+
+    @Benchmark
+    public List<EmployeeSearchHit> search() {
+        return index.search(text, 10);
+    }
+
+    private static String word(Random random, int syllables) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < syllables; i++) {
+            word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return word.toString();
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
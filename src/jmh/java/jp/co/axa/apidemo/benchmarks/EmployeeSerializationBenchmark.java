@@ -0,0 +1,87 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import jp.co.axa.apidemo.entities.Employee;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Jackson serialization of employee lists, with the ObjectMapper settings Spring Boot uses,
+ * as JSON and as the binary formats negotiated by the API (CBOR, Smile)
+ * The payload size of each format, plain and gzipped, is printed once per trial
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmployeeSerializationBenchmark {
+
+    private static final TypeReference<List<Employee>> EMPLOYEE_LIST = new TypeReference<List<Employee>>() {};
+
+    @Param({"1", "100", "1000"})
+    public int listSize;
+
+    @Param({"json", "cbor", "smile"})
+    public String format;
+
+    private ObjectMapper objectMapper;
+
+    private List<Employee> employees;
+
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        if ("cbor".equals(format)) {
+            builder.factory(new CBORFactory());
+        } else if ("smile".equals(format)) {
+            builder.factory(new SmileFactory());
+        }
+        objectMapper = builder.build();
+        employees = new ArrayList<>(listSize);
+        for (int i = 0; i < listSize; i++) {
+            Employee employee = BenchmarkApplication.employee(i);
+            employee.setId((long) i + 1);
+            employee.setVersion(0L);
+            employees.add(employee);
+        }
+        payload = objectMapper.writeValueAsBytes(employees);
+        System.out.printf("%n%s, %d employees: %d bytes, %d bytes gzipped%n", format, listSize, payload.length, gzip(payload).length);
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws IOException {
+        return objectMapper.writeValueAsBytes(employees);
+    }
+
+    @Benchmark
+    public List<Employee> deserializeList() throws IOException {
+        return objectMapper.readValue(payload, EMPLOYEE_LIST);
+    }
+
+    /**
+     * Serialization plus the gzip Tomcat applies above server.compression.min-response-size
+     */
+    @Benchmark
+    public byte[] serializeListGzip() throws IOException {
+        return gzip(objectMapper.writeValueAsBytes(employees));
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
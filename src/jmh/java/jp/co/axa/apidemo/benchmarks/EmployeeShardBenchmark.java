@@ -0,0 +1,78 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.dto.EmployeeQuery;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Employee service on one database (shards = 0) or sharded over 2 / 4 in-memory H2 databases, 4 client threads,
+ * on 20000 employees of 5 departments placed by department; the employees cache is off so reads reach the database
+ * Scores: inserts, reads and updates by id (one shard each), filtered pages (every shard, merged)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class EmployeeShardBenchmark {
+
+    @Param({"0", "2", "4"})
+    public int shards;
+
+    private ConfigurableApplicationContext context;
+
+    private EmployeeService employeeService;
+
+    private long[] ids;
+
+    private EmployeeQuery salaryQuery;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkApplication.start("shard_benchmark",
+                "app.cache.specs.employees.maximum-size=0",
+                "app.employees.shards.enabled=" + (shards > 0),
+                "app.employees.shards.count=" + Math.max(shards, 1),
+                "app.employees.shards.url=jdbc:h2:mem:shard_benchmark_{shard};DB_CLOSE_DELAY=-1;LAZY_QUERY_EXECUTION=1");
+        employeeService = context.getBean(EmployeeService.class);
+        ids = BenchmarkApplication.seed(employeeService, 20000);
+        salaryQuery = new EmployeeQuery();
+        salaryQuery.setMinSalary(50000);
+        salaryQuery.parseSort("salary,desc");
+        salaryQuery.setSize(100);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Employee insertOne() {
+        return employeeService.saveEmployee(BenchmarkApplication.employee(ThreadLocalRandom.current().nextInt(20000)));
+    }
+
+    @Benchmark
+    public EmployeeView getById() {
+        return employeeService.getEmployee(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    public Employee updateById() {
+        int i = ThreadLocalRandom.current().nextInt(ids.length);
+        Employee employee = BenchmarkApplication.employee(i);
+        employee.setId(ids[i]);
+        return employeeService.updateEmployee(employee);
+    }
+
+    @Benchmark
+    public List<EmployeeView> filteredPage() {
+        return employeeService.retrieveEmployees(salaryQuery);
+    }
+}
@@ -0,0 +1,129 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of the packaged application: a new JVM per iteration, timed until its first request is answered
+ * Uses the plain jar and target/lib of the cds profile, build them first: mvn -Pcds package -DskipTests
+ * The resident set size of the started JVM after its first request is printed with each iteration
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 0)
+@Measurement(iterations = 5)
+public class StartupBenchmark {
+
+    private static final String JAR = "target/api-demo-0.0.1-SNAPSHOT.jar";
+
+    private static final String AUTHORIZATION = "Basic "
+            + Base64.getEncoder().encodeToString("admin:admin".getBytes(StandardCharsets.UTF_8));
+
+    private static final long TIMEOUT_MILLIS = 120_000;
+
+    @Param({"default", "fast-start"})
+    private String profile;
+
+    @Param({"", "-XX:TieredStopAtLevel=1", "-Xshare:on -XX:SharedArchiveFile=target/app.jsa -XX:TieredStopAtLevel=1"})
+    private String jvmArgs;
+
+    private Process process;
+
+    private int port;
+
+    @Setup(Level.Trial)
+    public void checkJar() {
+        if (!Files.exists(Paths.get("target/lib"))) {
+            throw new IllegalStateException("No target/lib, build the plain jar with: mvn -Pcds package -DskipTests");
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() throws InterruptedException {
+        if (process != null) {
+            process.destroy();
+            process.waitFor();
+            process = null;
+        }
+    }
+
+    @Benchmark
+    public int firstRequest() throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (!jvmArgs.isEmpty()) {
+            command.addAll(Arrays.asList(jvmArgs.split(" ")));
+        }
+        command.addAll(Arrays.asList("-jar", JAR, "--server.port=" + port, "--spring.profiles.active=" + profile));
+        process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File("target/startup-benchmark.log"))
+                .start();
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Application exited, see target/startup-benchmark.log");
+            }
+            try {
+                int status = get("http://localhost:" + port + "/api/v1/employees/1");
+                System.out.print("(RSS " + residentSetKb(process) / 1024 + " MB) ");
+                return status;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("No answer after " + TIMEOUT_MILLIS + " ms", e);
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static int get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty("Authorization", AUTHORIZATION);
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @return VmRSS of the process (Linux), -1 when not available
+     * (Process.pid() looked up by reflection, the code is still compiled for Java 8)
+     */
+    private static long residentSetKb(Process process) {
+        try {
+            Object pid = Process.class.getMethod("pid").invoke(process);
+            return Files.readAllLines(Paths.get("/proc", pid.toString(), "status")).stream()
+                    .filter(line -> line.startsWith("VmRSS:"))
+                    .mapToLong(line -> Long.parseLong(line.replaceAll("\\D", "")))
+                    .findFirst()
+                    .orElse(-1);
+        } catch (ReflectiveOperationException | IOException e) {
+            return -1;
+        }
+    }
+}
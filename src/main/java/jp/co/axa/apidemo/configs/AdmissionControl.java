@@ -0,0 +1,246 @@
+package jp.co.axa.apidemo.configs;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Decide whether an API request is handled now, see {@link AdmissionControlFilter}
+ * - overload first: past max-in-flight every request is shed, while the connection pool has too many waiters
+ *   or the smoothed latency of the cheap requests is too high the expensive ones (cost >= min-cost) are shed (503)
+ * - then the client's token bucket must hold the request cost (429 otherwise)
+ * Both answers carry Retry-After, rejections are counted in "admission.rejected" by reason
+ * Only the synchronous part of a request is in flight: async ones (streams, long polls) leave when they start
+ */
+@Component
+public class AdmissionControl {
+
+    public enum Reason {
+        RATE_LIMIT(429), IN_FLIGHT(503), POOL(503), LATENCY(503);
+
+        @Getter
+        private final int status;
+
+        Reason(int status) {
+            this.status = status;
+        }
+    }
+
+    /**
+     * A request which is not admitted
+     */
+    @Getter
+    public static final class Rejection {
+
+        private final Reason reason;
+
+        private final long retryAfterSeconds;
+
+        private Rejection(Reason reason, long retryAfterSeconds) {
+            this.reason = reason;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+
+    /**
+     * Weight of a new latency sample in the smoothed latency
+     */
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    private final AdmissionProperties properties;
+
+    private final List<AdmissionProperties.Cost> costs;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    private final Cache<String, TokenBucket> buckets;
+
+    private final IntSupplier poolWaiters;
+
+    private final Ticker ticker;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final long latencyThresholdNanos;
+
+    private final long latencyHalfLifeNanos;
+
+    /**
+     * Smoothed latency in nanos at latencyAt, guarded by this
+     */
+    private double latency;
+
+    private long latencyAt;
+
+    private final Map<Reason, Counter> rejected = new EnumMap<>(Reason.class);
+
+    @Autowired
+    public AdmissionControl(AdmissionProperties properties, MeterRegistry meterRegistry, ObjectProvider<DataSource> dataSource) {
+        this(properties, meterRegistry, new PoolWaiters(dataSource), Ticker.systemTicker());
+    }
+
+    AdmissionControl(AdmissionProperties properties, MeterRegistry meterRegistry, IntSupplier poolWaiters, Ticker ticker) {
+        AdmissionProperties.RateLimit rateLimit = properties.getRateLimit();
+        if (rateLimit.getCapacity() < 1 || rateLimit.getRefillPerSecond() <= 0) {
+            throw new IllegalArgumentException("app.admission.rate-limit.capacity and refill-per-second must be positive");
+        }
+        this.properties = properties;
+        this.costs = properties.getCosts();
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(rateLimit.getIdleExpiry().toNanos(), TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .build();
+        this.poolWaiters = poolWaiters;
+        this.ticker = ticker;
+        this.latencyThresholdNanos = properties.getShed().getLatencyThreshold().toNanos();
+        this.latencyHalfLifeNanos = Math.max(1, properties.getShed().getLatencyHalfLife().toNanos());
+        this.latencyAt = ticker.read();
+        for (Reason reason : Reason.values()) {
+            rejected.put(reason, Counter.builder("admission.rejected")
+                    .description("API requests not admitted")
+                    .tag("reason", reason.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        Gauge.builder("admission.in.flight", inFlight, AtomicInteger::get)
+                .description("API requests being handled")
+                .register(meterRegistry);
+        Gauge.builder("admission.latency", this, control -> control.latencyNanos(control.ticker.read()) / 1_000_000d)
+                .description("Smoothed latency of the cheap API requests, in ms")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * @param method HTTP method
+     * @param path path within the application
+     * @return cost of the first matching rule, 1 when none matches
+     */
+    public int cost(String method, String path) {
+        for (AdmissionProperties.Cost cost : costs) {
+            if ((!StringUtils.hasText(cost.getMethod()) || cost.getMethod().equalsIgnoreCase(method))
+                    && pathMatcher.match(cost.getPattern(), path)) {
+                return cost.getCost();
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Admit a request, which must then be released with {@link #release(int, long)}
+     * @param client user name or remote address
+     * @param cost cost of the request, see {@link #cost(String, String)}
+     * @return null when admitted
+     */
+    public Rejection admit(String client, int cost) {
+        AdmissionProperties.Shed shed = properties.getShed();
+        long now = ticker.read();
+        if (cost >= shed.getMinCost()) {
+            if (shed.getMaxPoolWaiters() >= 0 && poolWaiters.getAsInt() > shed.getMaxPoolWaiters()) {
+                return reject(Reason.POOL, shed.getRetryAfterSeconds());
+            }
+            if (latencyThresholdNanos > 0 && latencyNanos(now) > latencyThresholdNanos) {
+                return reject(Reason.LATENCY, shed.getRetryAfterSeconds());
+            }
+        }
+        if (inFlight.incrementAndGet() > shed.getMaxInFlight() && shed.getMaxInFlight() > 0) {
+            inFlight.decrementAndGet();
+            return reject(Reason.IN_FLIGHT, shed.getRetryAfterSeconds());
+        }
+        AdmissionProperties.RateLimit rateLimit = properties.getRateLimit();
+        TokenBucket bucket = buckets.get(client, key -> new TokenBucket(rateLimit.getCapacity(), rateLimit.getRefillPerSecond(), now));
+        long waitNanos = bucket.tryConsume(Math.min(cost, rateLimit.getCapacity()), now);
+        if (waitNanos > 0) {
+            inFlight.decrementAndGet();
+            return reject(Reason.RATE_LIMIT, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999)));
+        }
+        return null;
+    }
+
+    /**
+     * End of an admitted request
+     * @param cost its cost
+     * @param elapsedNanos time it took, part of the smoothed latency when it is a cheap request
+     */
+    public void release(int cost, long elapsedNanos) {
+        inFlight.decrementAndGet();
+        if (cost < properties.getShed().getMinCost()) {
+            long now = ticker.read();
+            synchronized (this) {
+                double current = latencyNanos(now);
+                latency = current + LATENCY_SMOOTHING * (elapsedNanos - current);
+                latencyAt = now;
+            }
+        }
+    }
+
+    private Rejection reject(Reason reason, long retryAfterSeconds) {
+        rejected.get(reason).increment();
+        return new Rejection(reason, retryAfterSeconds);
+    }
+
+    /**
+     * Smoothed latency, decayed since its last sample
+     */
+    private synchronized double latencyNanos(long now) {
+        return latency * Math.pow(0.5, (double) (now - latencyAt) / latencyHalfLifeNanos);
+    }
+
+    /**
+     * Threads waiting for a connection of the Hikari pool, 0 for another pool or before it starts
+     */
+    private static final class PoolWaiters implements IntSupplier {
+
+        private final ObjectProvider<DataSource> dataSource;
+
+        private volatile HikariDataSource hikari;
+
+        private volatile boolean resolved;
+
+        private PoolWaiters(ObjectProvider<DataSource> dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        public int getAsInt() {
+            if (!resolved) {
+                hikari = resolve();
+                resolved = true;
+            }
+            HikariPoolMXBean pool = hikari == null ? null : hikari.getHikariPoolMXBean();
+            return pool == null ? 0 : pool.getThreadsAwaitingConnection();
+        }
+
+        private HikariDataSource resolve() {
+            DataSource source = dataSource.getIfAvailable();
+            try {
+                return source != null && source.isWrapperFor(HikariDataSource.class) ? source.unwrap(HikariDataSource.class) : null;
+            } catch (SQLException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package jp.co.axa.apidemo.configs;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Admission control of the /api/ requests, in the security filter chain right after HTTP Basic
+ * so a client is its user name (its remote address when not authenticated)
+ * A rejected request is answered at once: 429 or 503 with Retry-After and an "error" body
+ */
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final String API_PATH = "/api/";
+
+    private final AdmissionControl admissionControl;
+
+    private final UrlPathHelper pathHelper = new UrlPathHelper();
+
+    public AdmissionControlFilter(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !admissionControl.isEnabled() || !pathHelper.getPathWithinApplication(request).startsWith(API_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        int cost = admissionControl.cost(request.getMethod(), pathHelper.getPathWithinApplication(request));
+        AdmissionControl.Rejection rejection = admissionControl.admit(client(request), cost);
+        if (rejection != null) {
+            response.setStatus(rejection.getReason().getStatus());
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(rejection.getRetryAfterSeconds()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write(rejection.getReason() == AdmissionControl.Reason.RATE_LIMIT
+                    ? "{\"error\":\"Too many requests\"}"
+                    : "{\"error\":\"Server overloaded\"}");
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            admissionControl.release(cost, System.nanoTime() - start);
+        }
+    }
+
+    private static String client(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken || !authentication.isAuthenticated()) {
+            return "address:" + request.getRemoteAddr();
+        }
+        return "user:" + authentication.getName();
+    }
+}
@@ -0,0 +1,101 @@
+package jp.co.axa.apidemo.configs;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Admission control settings of the APIs, bound from "app.admission.*", see {@link AdmissionControl}
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.admission")
+public class AdmissionProperties {
+
+    private boolean enabled = true;
+
+    private RateLimit rateLimit = new RateLimit();
+
+    /**
+     * Cost of the matching requests, the first matching rule wins, 1 when none matches
+     */
+    private List<Cost> costs = new ArrayList<>();
+
+    private Shed shed = new Shed();
+
+    /**
+     * One token bucket per client (authenticated user, or remote address before authentication)
+     */
+    @Getter
+    @Setter
+    public static class RateLimit {
+
+        /**
+         * Tokens of a full bucket, i.e. the largest burst; a request costing more needs a full bucket
+         */
+        private long capacity = 600;
+
+        private double refillPerSecond = 100;
+
+        /**
+         * Bucket of a client forgotten after this idle time (it would be full again by then)
+         */
+        private Duration idleExpiry = Duration.ofMinutes(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Cost {
+
+        /**
+         * HTTP method, any when empty
+         */
+        private String method;
+
+        /**
+         * Ant path pattern, e.g. /api/v1/employees/bulk
+         */
+        private String pattern;
+
+        private int cost = 1;
+    }
+
+    /**
+     * Overload: new requests are answered 503 at once instead of queueing
+     */
+    @Getter
+    @Setter
+    public static class Shed {
+
+        /**
+         * Max requests being handled, every request beyond it is shed (0: no limit)
+         */
+        private int maxInFlight = 200;
+
+        /**
+         * Requests costing at least this are shed while the pool or the latency is over its threshold
+         */
+        private int minCost = 2;
+
+        /**
+         * Threads waiting for a database connection above which the pool is overloaded (negative: not checked)
+         */
+        private int maxPoolWaiters = 8;
+
+        /**
+         * Smoothed latency of the cheap requests above which the server is overloaded (zero: not checked)
+         */
+        private Duration latencyThreshold = Duration.ofSeconds(1);
+
+        /**
+         * Without new samples, the smoothed latency halves every half-life, so shedding ends on its own
+         */
+        private Duration latencyHalfLife = Duration.ofSeconds(2);
+
+        private long retryAfterSeconds = 1;
+    }
+}
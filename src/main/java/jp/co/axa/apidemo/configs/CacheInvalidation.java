@@ -0,0 +1,29 @@
+package jp.co.axa.apidemo.configs;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Message telling the other instances to drop an entry of their local cache
+ * Also published as an application event when received from another instance
+ */
+@Getter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheInvalidation {
+
+    /**
+     * node id of the sender
+     */
+    private String origin;
+
+    private String cacheName;
+
+    /**
+     * null: the whole cache
+     */
+    private Object key;
+}
@@ -1,26 +1,127 @@
 package jp.co.axa.apidemo.configs;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
-import org.springframework.cache.caffeine.CaffeineCacheManager;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Cache Manager
- * Set the max size and expire time for cache
+ * Build one Caffeine cache per name, with the size, weight, expiry and refresh set in {@link CacheProperties}
+ * Statistics are recorded unless disabled, see {@code CacheController}
+ * With app.cache.shared.enabled, the caches of app.cache.shared.cache-names get a second level shared by the instances
+ * (explicit bean name, the default one would clash with the "cacheManager" bean below)
  */
+@Log4j2
+@Configuration("cacheManagerConfiguration")
+@EnableConfigurationProperties(CacheProperties.class)
 public class CacheManager {
 
     @Bean
-    public CaffeineCacheManager cacheManager() {
-        Caffeine<Object, Object> caffeineCacheBuilder =
-                Caffeine.newBuilder()
-                        .maximumSize(200)
-                        .expireAfterAccess(1, TimeUnit.MINUTES);
-
-        CaffeineCacheManager cacheManager = new CaffeineCacheManager("employees");
-        cacheManager.setCaffeine(caffeineCacheBuilder);
+    public org.springframework.cache.CacheManager cacheManager(CacheProperties properties,
+                                                               ObjectProvider<NamedCacheLoader> loaders,
+                                                               ObjectProvider<SharedCacheTier> sharedTier,
+                                                               ApplicationEventPublisher eventPublisher) {
+        Map<String, NamedCacheLoader> loaderByName = loaders.orderedStream()
+                .collect(Collectors.toMap(NamedCacheLoader::cacheName, Function.identity()));
+        CacheProperties.Shared shared = properties.getShared();
+        SharedCacheTier tier = shared.isEnabled() ? sharedTier.getIfAvailable() : null;
+
+        SimpleCacheManager cacheManager = new SimpleCacheManager() {
+            @Override
+            protected Cache getMissingCache(String name) {
+                return buildCache(name, properties, loaderByName.get(name), tier);
+            }
+        };
+        List<Cache> caches = new ArrayList<>();
+        Set<String> names = new LinkedHashSet<>(properties.getSpecs().keySet());
+        if (tier != null) {
+            names.addAll(shared.getCacheNames());
+        }
+        for (String name : names) {
+            caches.add(buildCache(name, properties, loaderByName.get(name), tier));
+        }
+        cacheManager.setCaches(caches);
+
+        if (tier != null) {
+            // drop local entries written by the other instances, and let the listeners (e.g. page cache) know
+            tier.subscribe(invalidation -> {
+                Cache cache = cacheManager.getCache(invalidation.getCacheName());
+                if (cache instanceof TwoLevelCache && ((TwoLevelCache) cache).onInvalidation(invalidation)) {
+                    eventPublisher.publishEvent(invalidation);
+                }
+            });
+        }
         return cacheManager;
     }
+
+    /**
+     * In-process stand-in of the shared tier, unless another implementation is registered
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.cache.shared.enabled", havingValue = "true")
+    @ConditionalOnMissingBean(SharedCacheTier.class)
+    public SharedCacheTier sharedCacheTier(CacheProperties properties) {
+        CacheProperties.Shared shared = properties.getShared();
+        return new InProcessSharedCacheTier(shared.getCluster(), shared.getMaximumSize(), shared.getExpireAfterWrite());
+    }
+
+    private static CaffeineCache buildCache(String name, CacheProperties properties, CacheLoader<Object, Object> loader,
+                                            SharedCacheTier tier) {
+        CaffeineCache cache = buildCache(name, properties.resolve(name), loader);
+        if (tier != null && properties.getShared().getCacheNames().contains(name)) {
+            return new TwoLevelCache(name, cache.getNativeCache(), tier, properties.getShared().getNodeId());
+        }
+        return cache;
+    }
+
+    static CaffeineCache buildCache(String name, CacheProperties.Spec spec, CacheLoader<Object, Object> loader) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder();
+        if (spec.getMaximumSize() != null) {
+            builder.maximumSize(spec.getMaximumSize());
+        }
+        if (spec.getMaximumWeight() != null) {
+            builder.maximumWeight(spec.getMaximumWeight()).weigher(new EntryWeigher());
+        }
+        if (spec.getExpireAfterAccess() != null) {
+            builder.expireAfterAccess(spec.getExpireAfterAccess());
+        }
+        if (spec.getExpireAfterWrite() != null) {
+            builder.expireAfterWrite(spec.getExpireAfterWrite());
+        }
+        if (!Boolean.FALSE.equals(spec.getRecordStats())) {
+            builder.recordStats();
+        }
+        // refresh needs a loader, without one the setting is ignored
+        if (spec.getRefreshAfterWrite() != null && loader == null) {
+            log.warn("Cache {} has refresh-after-write but no NamedCacheLoader, entries will not be refreshed", name);
+        }
+        // refresh-ahead: a hot entry is reloaded in the background (the stale value served meanwhile) before it expires
+        if (spec.getRefreshAfterWrite() != null && spec.getExpireAfterWrite() != null
+                && spec.getRefreshAfterWrite().compareTo(spec.getExpireAfterWrite()) >= 0) {
+            log.warn("Cache {} has refresh-after-write not shorter than expire-after-write, entries expire before a refresh", name);
+        }
+        if (loader != null && spec.getRefreshAfterWrite() != null) {
+            builder.refreshAfterWrite(spec.getRefreshAfterWrite());
+            return new CaffeineCache(name, builder.build(loader));
+        }
+        return new CaffeineCache(name, builder.build());
+    }
 }
@@ -0,0 +1,118 @@
+package jp.co.axa.apidemo.configs;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Cache settings, bound from "app.cache.*"
+ * Each cache in "specs" can override any value of "defaults"
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.cache")
+public class CacheProperties {
+
+    /**
+     * Settings used by every cache unless overridden
+     */
+    private Spec defaults = new Spec();
+
+    /**
+     * Settings by cache name
+     */
+    private Map<String, Spec> specs = new LinkedHashMap<>();
+
+    /**
+     * Second cache level shared by the instances, see {@link TwoLevelCache}
+     */
+    private Shared shared = new Shared();
+
+    /**
+     * Settings of the named cache, falling back to the defaults
+     * @param cacheName cache name
+     * @return merged settings
+     */
+    public Spec resolve(String cacheName) {
+        Spec spec = specs.get(cacheName);
+        return spec == null ? defaults : spec.orElse(defaults);
+    }
+
+    @Getter
+    @Setter
+    public static class Spec {
+
+        /**
+         * Max number of entries, exclusive with maximumWeight
+         */
+        private Long maximumSize;
+
+        /**
+         * Max total weight of entries (estimated bytes), exclusive with maximumSize
+         */
+        private Long maximumWeight;
+
+        private Duration expireAfterAccess;
+
+        private Duration expireAfterWrite;
+
+        /**
+         * Reload an entry in the background when it is read after this delay
+         * Only applied to caches which have a loader
+         */
+        private Duration refreshAfterWrite;
+
+        private Boolean recordStats;
+
+        Spec orElse(Spec other) {
+            Spec merged = new Spec();
+            merged.maximumSize = maximumSize != null || maximumWeight != null ? maximumSize : other.maximumSize;
+            merged.maximumWeight = maximumSize != null || maximumWeight != null ? maximumWeight : other.maximumWeight;
+            merged.expireAfterAccess = expireAfterAccess != null ? expireAfterAccess : other.expireAfterAccess;
+            merged.expireAfterWrite = expireAfterWrite != null ? expireAfterWrite : other.expireAfterWrite;
+            merged.refreshAfterWrite = refreshAfterWrite != null ? refreshAfterWrite : other.refreshAfterWrite;
+            merged.recordStats = recordStats != null ? recordStats : other.recordStats;
+            return merged;
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Shared {
+
+        private boolean enabled;
+
+        /**
+         * Caches backed by the shared tier, the others stay local
+         */
+        private Set<String> cacheNames = new LinkedHashSet<>(Collections.singleton("employees"));
+
+        /**
+         * Name of the group of instances sharing the tier, used by the in-process stand-in
+         */
+        private String cluster = "api-demo";
+
+        /**
+         * Max number of entries of each cache in the in-process stand-in
+         */
+        private long maximumSize = 10000;
+
+        /**
+         * Lifetime of an entry in the in-process stand-in, bounds how long a fill racing a write can serve a stale value
+         */
+        private Duration expireAfterWrite = Duration.ofMinutes(5);
+
+        /**
+         * Id of this instance in the invalidation messages, random by default
+         */
+        private String nodeId = UUID.randomUUID().toString();
+    }
+}
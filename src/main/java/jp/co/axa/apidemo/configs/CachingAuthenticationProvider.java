@@ -0,0 +1,164 @@
+package jp.co.axa.apidemo.configs;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remember successful username / password authentications for a while,
+ * so the slow password hash of the delegate only runs on the first request of a client
+ * - the cache key is an HMAC of the credentials with a random per-process secret, the raw password is never stored
+ * - only successes are cached, a wrong password always goes to the delegate
+ * - entries of a user are evicted when the user changes, see {@link CredentialCacheUserDetailsManager};
+ *   an authentication checked against the old user while the user changes is not cached, a generation of the user
+ *   bumped by every eviction is compared before and after the delegate
+ */
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final AuthenticationProvider delegate;
+
+    private final Cache<CredentialKey, Authentication> cache;
+
+    /**
+     * Evictions by user name, only users which were evicted have one
+     */
+    private final ConcurrentMap<String, Long> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Evictions of all users
+     */
+    private final AtomicLong allGeneration = new AtomicLong();
+
+    private final SecretKeySpec secret;
+
+    private final ThreadLocal<Mac> macs;
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegate, long maximumSize, Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .build();
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.secret = new SecretKeySpec(key, HMAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) {
+        if (!(authentication instanceof UsernamePasswordAuthenticationToken) || authentication.getCredentials() == null) {
+            return delegate.authenticate(authentication);
+        }
+        CredentialKey key = new CredentialKey(authentication.getName(), digest(authentication));
+        Authentication cached = cache.getIfPresent(key);
+        if (cached == null) {
+            long generation = generation(key.username);
+            Authentication result = delegate.authenticate(authentication);
+            if (result == null || !result.isAuthenticated()) {
+                return result;
+            }
+            // atomic with the eviction of the key: an eviction bumps the generation before removing the entries
+            cache.asMap().compute(key, (k, previous) -> generation(key.username) == generation ? result : previous);
+            return result;
+        }
+        // new token, so the details are the ones of this request
+        UsernamePasswordAuthenticationToken result = new UsernamePasswordAuthenticationToken(
+                cached.getPrincipal(), null, cached.getAuthorities());
+        result.setDetails(authentication.getDetails());
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+
+    /**
+     * Forget the cached authentications of a user
+     * @param username user name
+     */
+    public void evict(String username) {
+        generations.merge(username, 1L, Long::sum);
+        cache.asMap().keySet().removeIf(key -> key.username.equals(username));
+    }
+
+    /**
+     * Forget all cached authentications
+     */
+    public void evictAll() {
+        allGeneration.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return changes on every eviction of the user
+     */
+    private long generation(String username) {
+        return allGeneration.get() + generations.getOrDefault(username, 0L);
+    }
+
+    private byte[] digest(Authentication authentication) {
+        Mac mac = macs.get();
+        mac.update(authentication.getName().getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(authentication.getCredentials().toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(secret);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot create " + HMAC_ALGORITHM, e);
+        }
+    }
+
+    private static final class CredentialKey {
+
+        private final String username;
+
+        private final byte[] digest;
+
+        private final int hash;
+
+        private CredentialKey(String username, byte[] digest) {
+            this.username = username;
+            this.digest = digest;
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CredentialKey)) {
+                return false;
+            }
+            CredentialKey other = (CredentialKey) o;
+            return username.equals(other.username) && Arrays.equals(digest, other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
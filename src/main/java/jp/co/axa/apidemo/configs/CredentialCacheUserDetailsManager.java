@@ -0,0 +1,55 @@
+package jp.co.axa.apidemo.configs;
+
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.provisioning.UserDetailsManager;
+
+/**
+ * User store which evicts the cached authentications of a user when the user is changed or removed
+ */
+public class CredentialCacheUserDetailsManager implements UserDetailsManager {
+
+    private final UserDetailsManager delegate;
+
+    private final CachingAuthenticationProvider authenticationProvider;
+
+    public CredentialCacheUserDetailsManager(UserDetailsManager delegate, CachingAuthenticationProvider authenticationProvider) {
+        this.delegate = delegate;
+        this.authenticationProvider = authenticationProvider;
+    }
+
+    @Override
+    public void createUser(UserDetails user) {
+        delegate.createUser(user);
+        authenticationProvider.evict(user.getUsername());
+    }
+
+    @Override
+    public void updateUser(UserDetails user) {
+        delegate.updateUser(user);
+        authenticationProvider.evict(user.getUsername());
+    }
+
+    @Override
+    public void deleteUser(String username) {
+        delegate.deleteUser(username);
+        authenticationProvider.evict(username);
+    }
+
+    @Override
+    public void changePassword(String oldPassword, String newPassword) {
+        delegate.changePassword(oldPassword, newPassword);
+        authenticationProvider.evict(SecurityContextHolder.getContext().getAuthentication().getName());
+    }
+
+    @Override
+    public boolean userExists(String username) {
+        return delegate.userExists(username);
+    }
+
+    @Override
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        return delegate.loadUserByUsername(username);
+    }
+}
@@ -0,0 +1,45 @@
+package jp.co.axa.apidemo.configs;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+import jp.co.axa.apidemo.dto.EmployeeView;
+
+import java.util.Collection;
+
+/**
+ * Rough estimate of the heap bytes held by a cache entry
+ * Used for caches sized by "maximum-weight"
+ */
+public class EntryWeigher implements Weigher<Object, Object> {
+
+    private static final int OBJECT_OVERHEAD = 16;
+
+    private static final int REFERENCE_SIZE = 8;
+
+    @Override
+    public int weigh(Object key, Object value) {
+        return OBJECT_OVERHEAD + estimate(value);
+    }
+
+    private static int estimate(Object value) {
+        if (value instanceof EmployeeView) {
+            EmployeeView employee = (EmployeeView) value;
+            return OBJECT_OVERHEAD + 5 * REFERENCE_SIZE + 40
+                    + estimateString(employee.getName()) + estimateString(employee.getDepartment());
+        }
+        if (value instanceof String) {
+            return estimateString((String) value);
+        }
+        if (value instanceof Collection) {
+            int size = OBJECT_OVERHEAD;
+            for (Object element : (Collection<?>) value) {
+                size += REFERENCE_SIZE + estimate(element);
+            }
+            return size;
+        }
+        return OBJECT_OVERHEAD;
+    }
+
+    private static int estimateString(String value) {
+        return value == null ? 0 : 40 + value.length() * 2;
+    }
+}
@@ -0,0 +1,104 @@
+package jp.co.axa.apidemo.configs;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Stand-in of the shared cache tier, for a single JVM: the application contexts started with the same
+ * cluster name share one store and receive each other's invalidations, like instances sharing a cache server
+ * Values are shared by reference and messages delivered synchronously, a real tier serializes both
+ * Each cache of the cluster is bounded and its entries expire, as they would on a cache server
+ */
+public class InProcessSharedCacheTier implements SharedCacheTier, DisposableBean {
+
+    private static final Map<String, Cluster> CLUSTERS = new ConcurrentHashMap<>();
+
+    private final Cluster cluster;
+
+    private final List<Consumer<CacheInvalidation>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param maximumSize max number of entries of each cache, set by the first instance of the cluster
+     * @param expireAfterWrite lifetime of an entry, set by the first instance of the cluster
+     */
+    public InProcessSharedCacheTier(String clusterName, long maximumSize, Duration expireAfterWrite) {
+        this.cluster = CLUSTERS.computeIfAbsent(clusterName, name -> new Cluster(maximumSize, expireAfterWrite));
+    }
+
+    @Override
+    public Object get(String cacheName, Object key) {
+        return cluster.store(cacheName).get(key);
+    }
+
+    @Override
+    public void put(String cacheName, Object key, Object value) {
+        cluster.store(cacheName).put(key, value);
+    }
+
+    @Override
+    public void putIfAbsent(String cacheName, Object key, Object value) {
+        cluster.store(cacheName).putIfAbsent(key, value);
+    }
+
+    @Override
+    public void evict(String cacheName, Object key) {
+        cluster.store(cacheName).remove(key);
+    }
+
+    @Override
+    public void clear(String cacheName) {
+        cluster.store(cacheName).clear();
+    }
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        for (Consumer<CacheInvalidation> listener : cluster.listeners) {
+            listener.accept(invalidation);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<CacheInvalidation> listener) {
+        listeners.add(listener);
+        cluster.listeners.add(listener);
+    }
+
+    /**
+     * Leave the cluster, the store stays for the other instances
+     */
+    @Override
+    public void destroy() {
+        cluster.listeners.removeAll(listeners);
+        listeners.clear();
+    }
+
+    private static final class Cluster {
+
+        private final long maximumSize;
+
+        private final Duration expireAfterWrite;
+
+        private final Map<String, Map<Object, Object>> stores = new ConcurrentHashMap<>();
+
+        private final List<Consumer<CacheInvalidation>> listeners = new CopyOnWriteArrayList<>();
+
+        private Cluster(long maximumSize, Duration expireAfterWrite) {
+            this.maximumSize = maximumSize;
+            this.expireAfterWrite = expireAfterWrite;
+        }
+
+        private Map<Object, Object> store(String cacheName) {
+            return stores.computeIfAbsent(cacheName, name -> Caffeine.newBuilder()
+                    .maximumSize(maximumSize)
+                    .expireAfterWrite(expireAfterWrite)
+                    .build().asMap());
+        }
+    }
+}
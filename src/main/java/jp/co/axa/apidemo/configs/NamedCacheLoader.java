@@ -0,0 +1,15 @@
+package jp.co.axa.apidemo.configs;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+
+/**
+ * Loader of one named cache
+ * Registering a bean of this type lets the cache use refresh-after-write
+ */
+public interface NamedCacheLoader extends CacheLoader<Object, Object> {
+
+    /**
+     * @return name of the cache loaded by this loader
+     */
+    String cacheName();
+}
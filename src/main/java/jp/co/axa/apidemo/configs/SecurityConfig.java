@@ -1,20 +1,57 @@
 package jp.co.axa.apidemo.configs;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.security.provisioning.UserDetailsManager;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+
+import java.time.Duration;
 
 /**
  * Configure global access authorization
  * User: admin Pw: admin
+ * The password is stored as a bcrypt hash, verified authentications are cached
+ * by {@link CachingAuthenticationProvider} so bcrypt only runs on a cache miss
+ * Authenticated API requests then go through {@link AdmissionControlFilter} (rate limits, load shedding)
  */
 @Configuration
 @EnableWebSecurity
+@EnableConfigurationProperties(AdmissionProperties.class)
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
+    private final InMemoryUserDetailsManager users;
+
+    private final CachingAuthenticationProvider authenticationProvider;
+
+    private final AdmissionControl admissionControl;
+
+    public SecurityConfig(@Value("${app.security.auth-cache.maximum-size:10000}") long authCacheMaximumSize,
+                          @Value("${app.security.auth-cache.expire-after-write-seconds:300}") long authCacheExpireSeconds,
+                          AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+        PasswordEncoder passwordEncoder = PasswordEncoderFactories.createDelegatingPasswordEncoder();
+        users = new InMemoryUserDetailsManager(
+                User.withUsername("admin").password(passwordEncoder.encode("admin")).roles("ADMIN").build());
+
+        DaoAuthenticationProvider daoAuthenticationProvider = new DaoAuthenticationProvider();
+        daoAuthenticationProvider.setUserDetailsService(users);
+        daoAuthenticationProvider.setPasswordEncoder(passwordEncoder);
+        authenticationProvider = new CachingAuthenticationProvider(daoAuthenticationProvider,
+                authCacheMaximumSize, Duration.ofSeconds(authCacheExpireSeconds));
+    }
+
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http
@@ -24,12 +61,20 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .and()
                 .httpBasic()
                 .and()
+                .addFilterAfter(new AdmissionControlFilter(admissionControl), BasicAuthenticationFilter.class)
                 .csrf().disable();
     }
 
     @Autowired
-    public void configureGlobal(AuthenticationManagerBuilder auth) throws Exception {
-        auth.inMemoryAuthentication()
-                .withUser("admin").password("{noop}admin").roles("ADMIN");
+    public void configureGlobal(AuthenticationManagerBuilder auth) {
+        auth.authenticationProvider(authenticationProvider);
+    }
+
+    /**
+     * User store, changing a user through it evicts the user's cached authentications
+     */
+    @Bean
+    public UserDetailsManager userDetailsManager() {
+        return new CredentialCacheUserDetailsManager(users, authenticationProvider);
     }
-}
\ No newline at end of file
+}
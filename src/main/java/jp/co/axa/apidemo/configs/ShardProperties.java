@@ -0,0 +1,58 @@
+package jp.co.axa.apidemo.configs;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Sharded employee storage settings, bound from "app.employees.shards.*", see {@link ShardingConfig}
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.employees.shards")
+public class ShardProperties {
+
+    /**
+     * How a new employee is placed on a shard; existing employees are always found by their id
+     */
+    public enum Key {
+        /**
+         * hash of the department, so the employees of a department are created on the same shard
+         */
+        DEPARTMENT,
+        /**
+         * round robin, every shard receives the same share of the new employees
+         */
+        ID
+    }
+
+    private boolean enabled;
+
+    private int count = 4;
+
+    /**
+     * JDBC URL of the shards, "{shard}" is replaced by the shard index (H2 only)
+     */
+    private String url = "jdbc:h2:mem:employees_shard_{shard};DB_CLOSE_DELAY=-1;LAZY_QUERY_EXECUTION=1";
+
+    private String username = "sa";
+
+    private String password = "";
+
+    /**
+     * Connections of each shard's pool
+     */
+    private int poolSize = 4;
+
+    private Key key = Key.DEPARTMENT;
+
+    /**
+     * Threads running the per-shard parts of the list queries and bulk writes, shared by all requests
+     */
+    private int fanOutThreads = 16;
+
+    /**
+     * A rebalance stops once every shard is within this fraction of the average employee count
+     */
+    private double rebalanceTolerance = 0.1;
+}
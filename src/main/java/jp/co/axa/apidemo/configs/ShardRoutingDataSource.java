@@ -0,0 +1,74 @@
+package jp.co.axa.apidemo.configs;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data source of the sharded storage: every connection is taken from the pool of the shard routed on the current thread,
+ * shard 0 when none is (schema creation at startup, unrouted reads)
+ * The route is set by {@code EmployeeShards} around each call, before its transaction begins
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final List<HikariDataSource> shards;
+
+    public ShardRoutingDataSource(List<HikariDataSource> shards) {
+        this.shards = Collections.unmodifiableList(shards);
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    /**
+     * @return shard routed on the current thread, null when none is
+     */
+    public static Integer currentShard() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Route the connections taken by the current thread to this shard, null: back to the default
+     * @return shard routed before
+     */
+    public static Integer route(Integer shard) {
+        Integer previous = CURRENT.get();
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+        return previous;
+    }
+
+    /**
+     * Pool of each shard, by shard index
+     */
+    public List<HikariDataSource> getShards() {
+        return shards;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return CURRENT.get();
+    }
+
+    @Override
+    public void close() {
+        for (HikariDataSource shard : shards) {
+            shard.close();
+        }
+    }
+}
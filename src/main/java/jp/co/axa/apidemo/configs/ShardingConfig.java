@@ -0,0 +1,65 @@
+package jp.co.axa.apidemo.configs;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sharded employee storage, enabled by app.employees.shards.enabled
+ * The application data source becomes a {@link ShardRoutingDataSource} over one Hikari pool per shard
+ * (spring.datasource.* is then unused), see {@code EmployeeShards} and {@code ShardedEmployeeService}
+ * The shards are H2 only, they are set up with H2 SQL (SCRIPT, sequences, MERGE ... KEY): the startup fails on another URL,
+ * or when spring.datasource.url points to another database, which the shards would silently replace
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.employees.shards.enabled", havingValue = "true")
+@EnableConfigurationProperties(ShardProperties.class)
+@Log4j2
+public class ShardingConfig {
+
+    @Bean
+    @Primary
+    public ShardRoutingDataSource dataSource(ShardProperties properties, MeterRegistry meterRegistry,
+                                             @Value("${app.employees.write-behind.enabled:false}") boolean writeBehind,
+                                             @Value("${spring.datasource.url:}") String datasourceUrl) {
+        if (writeBehind) {
+            throw new IllegalStateException("app.employees.shards.enabled and app.employees.write-behind.enabled cannot be both true");
+        }
+        if (!isH2(properties.getUrl())) {
+            throw new IllegalStateException("app.employees.shards.url must be an H2 URL, the shards are set up with H2 SQL: " + properties.getUrl());
+        }
+        if (!datasourceUrl.isEmpty() && !isH2(datasourceUrl)) {
+            throw new IllegalStateException("app.employees.shards.enabled needs H2, it would replace spring.datasource.url: " + datasourceUrl);
+        }
+        if (properties.getCount() < 1) {
+            throw new IllegalStateException("app.employees.shards.count must be at least 1");
+        }
+        List<HikariDataSource> shards = new ArrayList<>(properties.getCount());
+        for (int i = 0; i < properties.getCount(); i++) {
+            HikariDataSource shard = new HikariDataSource();
+            shard.setPoolName("employee-shard-" + i);
+            shard.setJdbcUrl(properties.getUrl().replace("{shard}", Integer.toString(i)));
+            shard.setUsername(properties.getUsername());
+            shard.setPassword(properties.getPassword());
+            shard.setMaximumPoolSize(properties.getPoolSize());
+            // hikaricp_* metrics per shard, tagged with the pool name
+            shard.setMetricRegistry(meterRegistry);
+            shards.add(shard);
+        }
+        log.info("Employees sharded over {} databases by {}", shards.size(), properties.getKey());
+        return new ShardRoutingDataSource(shards);
+    }
+
+    private static boolean isH2(String url) {
+        return url.startsWith("jdbc:h2:");
+    }
+}
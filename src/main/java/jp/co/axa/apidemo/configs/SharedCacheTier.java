@@ -0,0 +1,31 @@
+package jp.co.axa.apidemo.configs;
+
+import java.util.function.Consumer;
+
+/**
+ * Cache level shared by all the instances, behind their local Caffeine caches, see {@link TwoLevelCache}
+ * Also carries the invalidation messages between the instances
+ * {@link InProcessSharedCacheTier} is used unless another bean of this type is registered (e.g. backed by Redis)
+ */
+public interface SharedCacheTier {
+
+    /**
+     * @return stored value (may be the cache null marker), null when absent
+     */
+    Object get(String cacheName, Object key);
+
+    void put(String cacheName, Object key, Object value);
+
+    void putIfAbsent(String cacheName, Object key, Object value);
+
+    void evict(String cacheName, Object key);
+
+    void clear(String cacheName);
+
+    /**
+     * Send an invalidation message to every subscribed instance, the sender included
+     */
+    void publish(CacheInvalidation invalidation);
+
+    void subscribe(Consumer<CacheInvalidation> listener);
+}
@@ -0,0 +1,34 @@
+package jp.co.axa.apidemo.configs;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Startup options, all grouped in the fast-start profile (application-fast-start.properties)
+ * Phase timings are logged by {@link StartupTimingListener}
+ */
+@Configuration
+public class StartupConfig {
+
+    /**
+     * Create the application beans on first use instead of during the context refresh,
+     * like spring.main.lazy-initialization of Spring Boot 2.2+ (not in 2.1)
+     * The controllers, services and their dependencies are then built by the first requests,
+     * only the infrastructure beans of Spring stay eager
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.startup.lazy-initialization", havingValue = "true")
+    public static BeanFactoryPostProcessor lazyInitialization() {
+        return beanFactory -> {
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                if (definition.getRole() != BeanDefinition.ROLE_INFRASTRUCTURE) {
+                    definition.setLazyInit(true);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,135 @@
+package jp.co.axa.apidemo.configs;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringApplicationRunListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Logs how long each startup phase took, once the application is ready (registered in META-INF/spring.factories)
+ * jvm: JVM start to main, environment: properties and logging, context: context creation,
+ * refresh: bean creation and web server start, runners: application / command line runners
+ * The slowest bean creations (including the dependencies they pulled in) are logged at debug level
+ * With app.startup.exit-on-ready the JVM exits once ready, e.g. to record the classes loaded for a CDS archive
+ */
+@Log4j2
+public class StartupTimingListener implements SpringApplicationRunListener {
+
+    private static final int SLOWEST_BEANS = 10;
+
+    private final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+    private final Map<String, Long> beanStarts = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> beanMillis = new ConcurrentHashMap<>();
+
+    private long starting;
+
+    private long environmentPrepared;
+
+    private long contextLoaded;
+
+    private long started;
+
+    public StartupTimingListener(SpringApplication application, String[] args) {
+    }
+
+    @Override
+    public void starting() {
+        starting = System.currentTimeMillis();
+    }
+
+    @Override
+    public void environmentPrepared(ConfigurableEnvironment environment) {
+        environmentPrepared = System.currentTimeMillis();
+    }
+
+    @Override
+    public void contextPrepared(ConfigurableApplicationContext context) {
+        context.getBeanFactory().addBeanPostProcessor(new InstantiationAwareBeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) {
+                // called again by the actual creation when a factory bean was first built for a type check
+                beanStarts.put(beanName, System.nanoTime());
+                return null;
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                Long start = beanStarts.remove(beanName);
+                if (start != null) {
+                    beanMillis.put(beanName, (System.nanoTime() - start) / 1_000_000);
+                }
+                return bean;
+            }
+        });
+    }
+
+    @Override
+    public void contextLoaded(ConfigurableApplicationContext context) {
+        contextLoaded = System.currentTimeMillis();
+    }
+
+    @Override
+    public void started(ConfigurableApplicationContext context) {
+        started = System.currentTimeMillis();
+    }
+
+    @Override
+    public void running(ConfigurableApplicationContext context) {
+        long running = System.currentTimeMillis();
+        log.info("Startup phases: jvm {} ms, environment {} ms, context {} ms, refresh {} ms, runners {} ms",
+                starting - jvmStart, environmentPrepared - starting, contextLoaded - environmentPrepared,
+                started - contextLoaded, running - started);
+        long rssKb = residentSetKb();
+        log.info("Ready {} ms after JVM start, {} beans created{}", running - jvmStart, beanMillis.size(),
+                rssKb < 0 ? "" : ", RSS " + rssKb / 1024 + " MB");
+        if (log.isDebugEnabled()) {
+            log.debug("Slowest bean creations (with their dependencies): {}", beanMillis.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(SLOWEST_BEANS)
+                    .map(entry -> entry.getKey() + " " + entry.getValue() + " ms")
+                    .collect(Collectors.joining(", ")));
+        }
+        beanStarts.clear();
+        beanMillis.clear();
+        if (context.getEnvironment().getProperty("app.startup.exit-on-ready", Boolean.class, false)) {
+            log.info("app.startup.exit-on-ready is set, exiting");
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    @Override
+    public void failed(ConfigurableApplicationContext context, Throwable exception) {
+    }
+
+    /**
+     * @return resident set size of the process from /proc, -1 when not available (not Linux)
+     */
+    static long residentSetKb() {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try {
+            return Files.readAllLines(status).stream()
+                    .filter(line -> line.startsWith("VmRSS:"))
+                    .mapToLong(line -> Long.parseLong(line.replaceAll("\\D", "")))
+                    .findFirst()
+                    .orElse(-1);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package jp.co.axa.apidemo.configs;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import springfox.documentation.spring.web.plugins.DocumentationPluginsBootstrapper;
+import springfox.documentation.swagger2.annotations.EnableSwagger2;
+
+/**
+ * Swagger 2 docs (springfox), scanned from the request mappings at startup
+ * With app.docs.deferred the springfox beans and the scan are left out of the startup and built in the background
+ * once the application is ready, /v2/api-docs answers 404 until then
+ */
+@Configuration
+@EnableSwagger2
+public class SwaggerConfig {
+
+    /**
+     * Drop the springfox bootstrapper, a SmartLifecycle which the context would create and start during the refresh
+     * along with all the springfox beans it depends on
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.docs.deferred", havingValue = "true")
+    public static BeanFactoryPostProcessor deferredDocumentationBootstrapper() {
+        return beanFactory -> {
+            for (String name : beanFactory.getBeanNamesForType(DocumentationPluginsBootstrapper.class, true, false)) {
+                ((BeanDefinitionRegistry) beanFactory).removeBeanDefinition(name);
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.docs.deferred", havingValue = "true")
+    public DeferredDocumentation deferredDocumentation(AutowireCapableBeanFactory beanFactory) {
+        return new DeferredDocumentation(beanFactory);
+    }
+
+    /**
+     * Creates and starts the springfox bootstrapper on a background thread after ApplicationReadyEvent
+     */
+    @Log4j2
+    static class DeferredDocumentation implements ApplicationListener<ApplicationReadyEvent> {
+
+        private final AutowireCapableBeanFactory beanFactory;
+
+        DeferredDocumentation(AutowireCapableBeanFactory beanFactory) {
+            this.beanFactory = beanFactory;
+        }
+
+        @Override
+        public void onApplicationEvent(ApplicationReadyEvent event) {
+            Thread scan = new Thread(() -> {
+                long start = System.nanoTime();
+                beanFactory.createBean(DocumentationPluginsBootstrapper.class).start();
+                log.info("API docs scanned in {} ms", (System.nanoTime() - start) / 1_000_000);
+            }, "api-docs-scan");
+            scan.setDaemon(true);
+            scan.setPriority(Thread.MIN_PRIORITY);
+            scan.start();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package jp.co.axa.apidemo.configs;
+
+/**
+ * Token bucket of one client: refilled continuously up to its capacity, each request takes its cost
+ */
+final class TokenBucket {
+
+    private final double capacity;
+
+    private final double refillPerNano;
+
+    private double tokens;
+
+    private long refilledAt;
+
+    TokenBucket(double capacity, double refillPerSecond, long now) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.refilledAt = now;
+    }
+
+    /**
+     * @param cost tokens to take, at most the capacity
+     * @param now ticker time in nanos
+     * @return 0 when taken, otherwise the nanos until enough tokens are back (nothing is taken)
+     */
+    synchronized long tryConsume(double cost, long now) {
+        if (now > refilledAt) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * refillPerNano);
+            refilledAt = now;
+        }
+        if (tokens >= cost) {
+            tokens -= cost;
+            return 0;
+        }
+        return (long) Math.ceil((cost - tokens) / refillPerNano);
+    }
+}
@@ -0,0 +1,147 @@
+package jp.co.axa.apidemo.configs;
+
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local Caffeine cache in front of the {@link SharedCacheTier}
+ * A local miss reads the shared tier, then the loader; a put / evict updates the local cache at once,
+ * the shared tier and the other instances (invalidation message) once the transaction commits
+ * A value read or loaded while an invalidation arrives may be older than the write behind it, so it is
+ * not kept in either level; what a late message still lets through expires from the shared tier
+ * Still a {@link CaffeineCache}, its native cache and stats are the local level
+ */
+public class TwoLevelCache extends CaffeineCache {
+
+    private final SharedCacheTier tier;
+
+    private final String nodeId;
+
+    /**
+     * Incremented by every invalidation, received or committed here,
+     * a value read or loaded meanwhile is not kept
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public TwoLevelCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> local,
+                         SharedCacheTier tier, String nodeId) {
+        super(name, local);
+        this.tier = tier;
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Object value = super.lookup(key);
+        if (value != null) {
+            return value;
+        }
+        long seen = invalidations.get();
+        value = tier.get(getName(), key);
+        if (value != null && invalidations.get() == seen) {
+            getNativeCache().put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        long seen = invalidations.get();
+        boolean[] loaded = new boolean[1];
+        T result = super.get(key, () -> {
+            loaded[0] = true;
+            Object shared = tier.get(getName(), key);
+            if (shared != null) {
+                return (T) fromStoreValue(shared);
+            }
+            T value = valueLoader.call();
+            if (invalidations.get() == seen) {
+                tier.putIfAbsent(getName(), key, toStoreValue(value));
+            }
+            return value;
+        });
+        if (loaded[0] && invalidations.get() != seen) {
+            // returned to this caller only, the next read loads again
+            getNativeCache().invalidate(key);
+        }
+        return result;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        super.put(key, value);
+        Object storeValue = toStoreValue(value);
+        afterCommit(() -> {
+            invalidations.incrementAndGet();
+            tier.put(getName(), key, storeValue);
+            tier.publish(new CacheInvalidation(nodeId, getName(), key));
+        });
+    }
+
+    /**
+     * read-through fill (nothing changed), so the other instances are not invalidated
+     */
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = super.putIfAbsent(key, value);
+        if (existing == null) {
+            tier.putIfAbsent(getName(), key, toStoreValue(value));
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        super.evict(key);
+        afterCommit(() -> {
+            invalidations.incrementAndGet();
+            tier.evict(getName(), key);
+            tier.publish(new CacheInvalidation(nodeId, getName(), key));
+        });
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        afterCommit(() -> {
+            invalidations.incrementAndGet();
+            tier.clear(getName());
+            tier.publish(new CacheInvalidation(nodeId, getName(), null));
+        });
+    }
+
+    /**
+     * Drop the local entry named by another instance
+     * @return false: sent by this instance, ignored
+     */
+    public boolean onInvalidation(CacheInvalidation invalidation) {
+        if (nodeId.equals(invalidation.getOrigin())) {
+            return false;
+        }
+        invalidations.incrementAndGet();
+        if (invalidation.getKey() == null) {
+            getNativeCache().invalidateAll();
+        } else {
+            getNativeCache().invalidate(invalidation.getKey());
+        }
+        return true;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
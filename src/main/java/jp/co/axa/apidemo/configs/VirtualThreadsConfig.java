@@ -0,0 +1,82 @@
+package jp.co.axa.apidemo.configs;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.coyote.AbstractProtocol;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Run requests on virtual threads, enabled by app.web.virtual-threads on a Java 21+ runtime
+ * A blocking JPA / JDBC call then parks a cheap virtual thread instead of holding one of
+ * server.tomcat.max-threads, so in-flight requests are no longer capped by the Tomcat pool
+ * (only by the connection pool, for the requests which reach the database)
+ * On an older runtime the setting is ignored and the platform thread pool is kept
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.web.virtual-threads", havingValue = "true")
+@Log4j2
+public class VirtualThreadsConfig implements WebMvcConfigurer {
+
+    private final ExecutorService executor = newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Tomcat connector threads
+     */
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadsCustomizer() {
+        return factory -> {
+            if (executor == null) {
+                log.warn("app.web.virtual-threads needs Java 21+, keeping the platform thread pool");
+                return;
+            }
+            factory.addConnectorCustomizers(connector ->
+                    ((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(executor));
+            log.info("Tomcat requests run on virtual threads");
+        };
+    }
+
+    /**
+     * Async handlers, e.g. the employee stream
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        if (executor != null) {
+            configurer.setTaskExecutor(new TaskExecutorAdapter(executor));
+        }
+    }
+
+    /**
+     * Tomcat does not stop an executor set on its connector: the running requests finish, no new one is started
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() when the runtime has it
+     * (looked up by reflection, the code is still compiled for Java 8)
+     * @return the executor, null before Java 21
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create the virtual thread executor", e);
+        }
+    }
+}
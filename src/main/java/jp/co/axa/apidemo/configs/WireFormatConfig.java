@@ -0,0 +1,60 @@
+package jp.co.axa.apidemo.configs;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.List;
+
+/**
+ * CBOR and Smile bodies on every API, negotiated by Accept / Content-Type
+ * Their converters come right after the JSON one, so JSON stays the answer to a missing or wildcard Accept
+ * Gzip above a size threshold is done by Tomcat, see server.compression.* in application.properties
+ */
+@Configuration
+public class WireFormatConfig implements WebMvcConfigurer {
+
+    private final WireFormats wireFormats;
+
+    @Autowired
+    public WireFormatConfig(WireFormats wireFormats) {
+        this.wireFormats = wireFormats;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // the defaults Spring adds when the formats are on the classpath use a plain ObjectMapper
+        converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter
+                || converter instanceof MappingJackson2SmileHttpMessageConverter);
+        int json = 0;
+        while (json < converters.size() && !(converters.get(json) instanceof MappingJackson2HttpMessageConverter)) {
+            json++;
+        }
+        int position = json < converters.size() ? json + 1 : converters.size();
+        converters.add(position, new MappingJackson2SmileHttpMessageConverter(wireFormats.getSmileMapper()));
+        converters.add(position, new MappingJackson2CborHttpMessageConverter(wireFormats.getCborMapper()));
+    }
+
+    /**
+     * One URL has several representations, so shared caches must key them by Accept
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                return true;
+            }
+        }).addPathPatterns("/api/v1/employees", "/api/v1/employees/**");
+    }
+}
@@ -0,0 +1,88 @@
+package jp.co.axa.apidemo.configs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Media types of the employee API and their Jackson mappers
+ * JSON is the default, CBOR and Smile are compact binary encodings of the same documents
+ * (no repeated field names, binary numbers), picked by Accept / Content-Type
+ * The binary mappers are built with the Spring Boot Jackson settings, like the JSON one
+ */
+@Component
+public class WireFormats {
+
+    public static final String APPLICATION_CBOR_VALUE = "application/cbor";
+
+    public static final MediaType APPLICATION_CBOR = MediaType.parseMediaType(APPLICATION_CBOR_VALUE);
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    public static final MediaType APPLICATION_SMILE = MediaType.parseMediaType(APPLICATION_SMILE_VALUE);
+
+    private final ObjectMapper jsonMapper;
+
+    private final ObjectMapper cborMapper;
+
+    private final ObjectMapper smileMapper;
+
+    @Autowired
+    public WireFormats(ObjectMapper objectMapper, Jackson2ObjectMapperBuilder builder) {
+        this.jsonMapper = objectMapper;
+        this.cborMapper = builder.factory(new CBORFactory()).build();
+        this.smileMapper = builder.factory(new SmileFactory()).build();
+    }
+
+    public ObjectMapper getCborMapper() {
+        return cborMapper;
+    }
+
+    public ObjectMapper getSmileMapper() {
+        return smileMapper;
+    }
+
+    /**
+     * @param contentType Content-Type of a request body, null when missing
+     * @return the mapper reading it, JSON (and NDJSON) unless CBOR or Smile
+     */
+    public ObjectMapper mapperFor(MediaType contentType) {
+        if (contentType != null && APPLICATION_CBOR.includes(contentType)) {
+            return cborMapper;
+        }
+        if (contentType != null && APPLICATION_SMILE.includes(contentType)) {
+            return smileMapper;
+        }
+        return jsonMapper;
+    }
+
+    /**
+     * Format of a response written directly (not through the message converters)
+     * @param accept Accept header values, empty when missing
+     * @return the best of JSON / CBOR / Smile for the caller, JSON on a tie or a wildcard
+     */
+    public MediaType negotiate(List<MediaType> accept) {
+        MediaType.sortBySpecificityAndQuality(accept);
+        for (MediaType mediaType : accept) {
+            if (mediaType.isWildcardType() || mediaType.isWildcardSubtype()) {
+                break;
+            }
+            if (APPLICATION_CBOR.includes(mediaType)) {
+                return APPLICATION_CBOR;
+            }
+            if (APPLICATION_SMILE.includes(mediaType)) {
+                return APPLICATION_SMILE;
+            }
+            if (MediaType.APPLICATION_JSON.includes(mediaType)) {
+                return MediaType.APPLICATION_JSON;
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+}
@@ -0,0 +1,73 @@
+package jp.co.axa.apidemo.controllers;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Expose the statistics recorded by each Caffeine cache
+ */
+@RestController
+@RequestMapping("/api/v1")
+public class CacheController {
+
+    private final CacheManager cacheManager;
+
+    @Autowired
+    public CacheController(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    // Get stats of all caches
+    @GetMapping("/caches")
+    public Map<String, Map<String, Object>> getCacheStats() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        for (String name : cacheManager.getCacheNames()) {
+            Map<String, Object> stats = statsOf(cacheManager.getCache(name));
+            if (stats != null) {
+                result.put(name, stats);
+            }
+        }
+        return result;
+    }
+
+    // Get stats of one cache
+    @GetMapping("/caches/{cacheName}")
+    public ResponseEntity<Map<String, Object>> getCacheStats(@PathVariable(name = "cacheName") String cacheName) {
+        if (!cacheManager.getCacheNames().contains(cacheName)) {
+            return ResponseEntity.notFound().build();
+        }
+        Map<String, Object> stats = statsOf(cacheManager.getCache(cacheName));
+        return stats == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(stats);
+    }
+
+    private static Map<String, Object> statsOf(Cache cache) {
+        if (!(cache instanceof CaffeineCache)) {
+            return null;
+        }
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = ((CaffeineCache) cache).getNativeCache();
+        CacheStats stats = nativeCache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("estimatedSize", nativeCache.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("evictionWeight", stats.evictionWeight());
+        result.put("loadSuccessCount", stats.loadSuccessCount());
+        result.put("loadFailureCount", stats.loadFailureCount());
+        result.put("averageLoadPenaltyNanos", stats.averageLoadPenalty());
+        result.put("totalLoadTimeNanos", stats.totalLoadTime());
+        return result;
+    }
+}
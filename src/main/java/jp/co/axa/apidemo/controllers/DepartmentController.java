@@ -0,0 +1,41 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.dto.DepartmentStats;
+import jp.co.axa.apidemo.services.DepartmentStatsRollup;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Department aggregates, served from the in-memory rollup
+ */
+@RestController
+@RequestMapping("/api/v1")
+public class DepartmentController {
+
+    private final DepartmentStatsRollup departmentStatsRollup;
+
+    @Autowired
+    public DepartmentController(DepartmentStatsRollup departmentStatsRollup) {
+        this.departmentStatsRollup = departmentStatsRollup;
+    }
+
+    // Get salary stats of all departments
+    @GetMapping("/departments/stats")
+    public List<DepartmentStats> getDepartmentStats() {
+        return departmentStatsRollup.getStats();
+    }
+
+    // Get salary stats of one department
+    @GetMapping("/departments/{department}/stats")
+    public ResponseEntity<DepartmentStats> getDepartmentStats(@PathVariable(name = "department") String department) {
+        Optional<DepartmentStats> stats = Optional.ofNullable(departmentStatsRollup.getStats(department));
+        return stats.map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    }
+}
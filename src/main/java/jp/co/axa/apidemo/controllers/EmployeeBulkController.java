@@ -0,0 +1,209 @@
+package jp.co.axa.apidemo.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import jp.co.axa.apidemo.configs.WireFormats;
+import jp.co.axa.apidemo.dto.BulkItemResult;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.services.EmployeeService;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Bulk create / update / delete of employees
+ * The body is a JSON array, NDJSON (one item per line) or a CBOR / Smile array, read incrementally
+ * and applied in chunks of "app.employees.bulk.chunk-size" items, one transaction per chunk
+ * A malformed item stops the request, chunks applied before it stay committed
+ */
+@Log4j2
+@RestController
+@RequestMapping("/api/v1")
+public class EmployeeBulkController {
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private final EmployeeService employeeService;
+
+    private final WireFormats wireFormats;
+
+    private final Validator validator;
+
+    private final int chunkSize;
+
+    @Autowired
+    public EmployeeBulkController(EmployeeService employeeService,
+                                  WireFormats wireFormats,
+                                  Validator validator,
+                                  @Value("${app.employees.bulk.chunk-size:500}") int chunkSize) {
+        this.employeeService = employeeService;
+        this.wireFormats = wireFormats;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+    }
+
+    // Add new employees
+    @PostMapping(value = "/employees/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE,
+            WireFormats.APPLICATION_CBOR_VALUE, WireFormats.APPLICATION_SMILE_VALUE})
+    public List<BulkItemResult> saveEmployees(InputStream body,
+                                              @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) throws IOException {
+        List<BulkItemResult> results = new ArrayList<>();
+        List<Employee> chunk = new ArrayList<>(chunkSize);
+        List<Integer> indexes = new ArrayList<>(chunkSize);
+        readItems(body, contentType, Employee.class, results, (employee, index) -> {
+            employee.setId(null);
+            employee.setVersion(null);
+            if (isValid(employee, index, results)) {
+                chunk.add(employee);
+                indexes.add(index);
+            }
+            if (chunk.size() == chunkSize) {
+                applySave(chunk, indexes, results);
+            }
+        });
+        applySave(chunk, indexes, results);
+        results.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+        return results;
+    }
+
+    // Update existing employees, every item must have its id
+    @PutMapping(value = "/employees/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE,
+            WireFormats.APPLICATION_CBOR_VALUE, WireFormats.APPLICATION_SMILE_VALUE})
+    public List<BulkItemResult> updateEmployees(InputStream body,
+                                                @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) throws IOException {
+        List<BulkItemResult> results = new ArrayList<>();
+        List<Employee> chunk = new ArrayList<>(chunkSize);
+        List<Integer> indexes = new ArrayList<>(chunkSize);
+        readItems(body, contentType, Employee.class, results, (employee, index) -> {
+            if (employee.getId() == null) {
+                results.add(new BulkItemResult(index, null, HttpStatus.BAD_REQUEST.value(), "id cannot be null"));
+            } else if (isValid(employee, index, results)) {
+                chunk.add(employee);
+                indexes.add(index);
+            }
+            if (chunk.size() == chunkSize) {
+                applyUpdate(chunk, indexes, results);
+            }
+        });
+        applyUpdate(chunk, indexes, results);
+        results.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+        return results;
+    }
+
+    // Delete employees, the body is a list of ids
+    @DeleteMapping(value = "/employees/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE,
+            WireFormats.APPLICATION_CBOR_VALUE, WireFormats.APPLICATION_SMILE_VALUE})
+    public List<BulkItemResult> deleteEmployees(InputStream body,
+                                                @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) throws IOException {
+        List<BulkItemResult> results = new ArrayList<>();
+        List<Long> chunk = new ArrayList<>(chunkSize);
+        List<Integer> indexes = new ArrayList<>(chunkSize);
+        readItems(body, contentType, Long.class, results, (employeeId, index) -> {
+            if (employeeId == null) {
+                results.add(new BulkItemResult(index, null, HttpStatus.BAD_REQUEST.value(), "id cannot be null"));
+            } else {
+                chunk.add(employeeId);
+                indexes.add(index);
+            }
+            if (chunk.size() == chunkSize) {
+                applyDelete(chunk, indexes, results);
+            }
+        });
+        applyDelete(chunk, indexes, results);
+        results.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+        return results;
+    }
+
+    private void applySave(List<Employee> chunk, List<Integer> indexes, List<BulkItemResult> results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<Employee> saved = employeeService.saveEmployees(chunk);
+        for (int i = 0; i < saved.size(); i++) {
+            results.add(new BulkItemResult(indexes.get(i), saved.get(i).getId(), HttpStatus.CREATED.value(), null));
+        }
+        chunk.clear();
+        indexes.clear();
+    }
+
+    private void applyUpdate(List<Employee> chunk, List<Integer> indexes, List<BulkItemResult> results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<Employee> updated = employeeService.updateEmployees(chunk);
+        for (int i = 0; i < updated.size(); i++) {
+            results.add(updated.get(i) == null
+                    ? new BulkItemResult(indexes.get(i), chunk.get(i).getId(), HttpStatus.NOT_FOUND.value(), null)
+                    : new BulkItemResult(indexes.get(i), chunk.get(i).getId(), HttpStatus.OK.value(), null));
+        }
+        chunk.clear();
+        indexes.clear();
+    }
+
+    private void applyDelete(List<Long> chunk, List<Integer> indexes, List<BulkItemResult> results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Set<Long> deleted = employeeService.deleteEmployees(chunk);
+        for (int i = 0; i < chunk.size(); i++) {
+            Long employeeId = chunk.get(i);
+            int status = deleted.contains(employeeId) ? HttpStatus.OK.value() : HttpStatus.NOT_FOUND.value();
+            results.add(new BulkItemResult(indexes.get(i), employeeId, status, null));
+        }
+        chunk.clear();
+        indexes.clear();
+    }
+
+    /**
+     * Read the items of a JSON array, NDJSON, CBOR or Smile body one by one
+     * Stop at the first malformed item and report it in the results
+     */
+    private <T> void readItems(InputStream body, MediaType contentType, Class<T> type, List<BulkItemResult> results,
+                               BiConsumer<T, Integer> handler) throws IOException {
+        try (MappingIterator<T> items = wireFormats.mapperFor(contentType).readerFor(type).readValues(body)) {
+            int index = 0;
+            while (true) {
+                T item;
+                try {
+                    if (!items.hasNextValue()) {
+                        return;
+                    }
+                    item = items.nextValue();
+                } catch (JsonProcessingException e) {
+                    log.info("Malformed bulk item at index {}", index);
+                    results.add(new BulkItemResult(index, null, HttpStatus.BAD_REQUEST.value(), "malformed item, request stopped"));
+                    return;
+                }
+                handler.accept(item, index++);
+            }
+        }
+    }
+
+    private boolean isValid(Employee employee, int index, List<BulkItemResult> results) {
+        Set<ConstraintViolation<Employee>> violations = validator.validate(employee);
+        if (violations.isEmpty()) {
+            return true;
+        }
+        Map<String, Object> errors = new LinkedHashMap<>();
+        for (ConstraintViolation<Employee> violation : violations) {
+            errors.put(violation.getPropertyPath().toString(), violation.getMessage());
+        }
+        results.add(new BulkItemResult(index, employee.getId(), HttpStatus.BAD_REQUEST.value(), errors));
+        return false;
+    }
+}
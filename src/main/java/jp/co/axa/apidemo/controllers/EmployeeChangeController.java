@@ -0,0 +1,147 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.dto.EmployeeChange;
+import jp.co.axa.apidemo.dto.EmployeeChangeBatch;
+import jp.co.axa.apidemo.dto.ErrorResponse;
+import jp.co.axa.apidemo.exception.ChangeStreamGapException;
+import jp.co.axa.apidemo.services.EmployeeChangeStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Change stream of the employees: every committed create / update / delete, in order, with its sequence number
+ * Read by long-poll (JSON) or as Server-Sent Events, both resuming after the last sequence seen
+ */
+@RestController
+@RequestMapping("/api/v1")
+public class EmployeeChangeController {
+
+    private final EmployeeChangeStream changeStream;
+
+    private final int maxBatch;
+
+    private final int maxWaitSeconds;
+
+    private final long streamTimeoutMs;
+
+    @Autowired
+    public EmployeeChangeController(EmployeeChangeStream changeStream,
+                                    @Value("${app.employees.changes.max-batch:500}") int maxBatch,
+                                    @Value("${app.employees.changes.max-wait-seconds:60}") int maxWaitSeconds,
+                                    @Value("${app.employees.changes.stream-timeout-ms:300000}") long streamTimeoutMs) {
+        this.changeStream = changeStream;
+        this.maxBatch = maxBatch;
+        this.maxWaitSeconds = maxWaitSeconds;
+        this.streamTimeoutMs = streamTimeoutMs;
+    }
+
+    // Long-poll the changes following "after" (default: the latest, i.e. only new changes; 0: from the start)
+    // Answers at once when there are some, else waits up to "wait" seconds for the next ones
+    // Pass the returned "last" as the next "after"; 410 when "after" is no longer retained
+    @GetMapping(value = "/employees/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<EmployeeChangeBatch> pollChanges(@RequestParam(name = "after", required = false) Long after,
+                                                           @RequestParam(name = "limit", required = false) Integer limit,
+                                                           @RequestParam(name = "wait", defaultValue = "30") int wait) {
+        int batchSize = limit == null ? maxBatch : limit;
+        if (batchSize < 1 || batchSize > maxBatch) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxBatch);
+        }
+        if (wait < 0 || wait > maxWaitSeconds) {
+            throw new IllegalArgumentException("wait must be between 0 and " + maxWaitSeconds);
+        }
+        long from = start(after);
+        List<EmployeeChange> changes = changeStream.read(from, batchSize);
+        if (!changes.isEmpty() || wait == 0) {
+            DeferredResult<EmployeeChangeBatch> result = new DeferredResult<>();
+            result.setResult(batch(changes, from));
+            return result;
+        }
+
+        DeferredResult<EmployeeChangeBatch> result = new DeferredResult<>(wait * 1000L, batch(changes, from));
+        EmployeeChangeStream.Subscription subscription = changeStream.subscribe(from, new EmployeeChangeStream.ChangeSubscriber() {
+            @Override
+            public boolean onChanges(List<EmployeeChange> next) {
+                if (next.isEmpty()) {
+                    return !result.isSetOrExpired();
+                }
+                result.setResult(batch(next.size() > batchSize ? next.subList(0, batchSize) : next, from));
+                return false;
+            }
+
+            @Override
+            public void onGap(ChangeStreamGapException gap) {
+                result.setErrorResult(gap);
+            }
+        });
+        result.onCompletion(subscription::cancel);
+        return result;
+    }
+
+    // Stream the changes as Server-Sent Events: "id" is the sequence, "data" the change as JSON
+    // Starts after "after" (default: the latest), or after the Last-Event-ID header an EventSource sends to resume
+    // A comment is sent to idle streams every app.employees.changes.heartbeat-ms, a "gap" event ends a stream behind the buffer
+    // The stream ends after app.employees.changes.stream-timeout-ms, an EventSource then reconnects with Last-Event-ID
+    @GetMapping(value = "/employees/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestParam(name = "after", required = false) Long after,
+                                    @RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId) {
+        long from = start(lastEventId != null ? lastEventId : after);
+        // fails with 410 before the stream starts
+        changeStream.read(from, 1);
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        EmployeeChangeStream.Subscription subscription = changeStream.subscribe(from, new EmployeeChangeStream.ChangeSubscriber() {
+            @Override
+            public boolean onChanges(List<EmployeeChange> changes) throws IOException {
+                try {
+                    if (changes.isEmpty()) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    }
+                    for (EmployeeChange change : changes) {
+                        emitter.send(SseEmitter.event()
+                                .id(Long.toString(change.getSequence()))
+                                .data(change, MediaType.APPLICATION_JSON));
+                    }
+                    return true;
+                } catch (IllegalStateException e) {
+                    // already completed, e.g. by a timeout
+                    return false;
+                }
+            }
+
+            @Override
+            public void onGap(ChangeStreamGapException gap) {
+                ErrorResponse data = new ErrorResponse(gap.getMessage(), gap.getOldest(), gap.getLatest());
+                try {
+                    emitter.send(SseEmitter.event().name("gap").data(data, MediaType.APPLICATION_JSON));
+                    emitter.complete();
+                } catch (IOException | IllegalStateException e) {
+                    emitter.completeWithError(e);
+                }
+            }
+        });
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        return emitter;
+    }
+
+    private long start(Long after) {
+        if (after == null) {
+            return changeStream.latest();
+        }
+        if (after < 0) {
+            throw new IllegalArgumentException("after must be positive or 0");
+        }
+        return after;
+    }
+
+    private static EmployeeChangeBatch batch(List<EmployeeChange> changes, long after) {
+        return new EmployeeChangeBatch(changes, changes.isEmpty() ? after : changes.get(changes.size() - 1).getSequence());
+    }
+}
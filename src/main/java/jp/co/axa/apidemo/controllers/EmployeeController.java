@@ -1,15 +1,30 @@
 package jp.co.axa.apidemo.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import jp.co.axa.apidemo.configs.WireFormats;
+import jp.co.axa.apidemo.dto.EmployeeQuery;
+import jp.co.axa.apidemo.dto.EmployeeSearchHit;
+import jp.co.axa.apidemo.dto.EmployeeView;
 import jp.co.axa.apidemo.entities.Employee;
 import jp.co.axa.apidemo.services.EmployeeService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.constraints.NotBlank;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/v1")
@@ -17,54 +32,201 @@ public class EmployeeController {
 
     private final EmployeeService employeeService;
 
+    private final WireFormats wireFormats;
+
+    private final int defaultPageSize;
+
+    private final int maxPageSize;
+
+    private final int maxSearchLimit;
+
     @Autowired
-    public EmployeeController(EmployeeService employeeService) {
+    public EmployeeController(EmployeeService employeeService,
+                              WireFormats wireFormats,
+                              @Value("${app.employees.page.default-size:100}") int defaultPageSize,
+                              @Value("${app.employees.page.max-size:1000}") int maxPageSize,
+                              @Value("${app.employees.search.max-limit:100}") int maxSearchLimit) {
         this.employeeService = employeeService;
+        this.wireFormats = wireFormats;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.maxSearchLimit = maxSearchLimit;
     }
 
-    // Get add employees
+    // Get one page of employees, filtered, sorted and projected in SQL
+    // - department, namePrefix, minSalary, maxSalary: filters
+    // - sort: "field" or "field,desc" among id, name, salary, department (default id)
+    // - fields: comma separated attributes to return (default the whole employee)
+    // The next page is linked in the "Link" header while the page is full
     @GetMapping("/employees")
-    public List<Employee> getEmployees() {
-        return employeeService.retrieveEmployees();
+    public ResponseEntity<List<?>> getEmployees(@RequestParam(name = "after", required = false) Long after,
+                                                @RequestParam(name = "afterValue", required = false) String afterValue,
+                                                @RequestParam(name = "size", required = false) Integer size,
+                                                @RequestParam(name = "department", required = false) String department,
+                                                @RequestParam(name = "namePrefix", required = false) String namePrefix,
+                                                @RequestParam(name = "minSalary", required = false) Integer minSalary,
+                                                @RequestParam(name = "maxSalary", required = false) Integer maxSalary,
+                                                @RequestParam(name = "sort", required = false) String sort,
+                                                @RequestParam(name = "fields", required = false) String fields) {
+        int pageSize = size == null ? defaultPageSize : size;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new IllegalArgumentException("size must be between 1 and " + maxPageSize);
+        }
+        EmployeeQuery query = new EmployeeQuery();
+        query.setDepartment(department);
+        query.setNamePrefix(namePrefix);
+        query.setMinSalary(minSalary);
+        query.setMaxSalary(maxSalary);
+        query.parseSort(sort);
+        query.parseFields(fields);
+        query.parseAfterValue(afterValue);
+        query.setAfterId(after);
+        query.setSize(pageSize);
+        if (after != null && !"id".equals(query.getSortField()) && query.getAfterValue() == null) {
+            throw new IllegalArgumentException("afterValue is needed with after when not sorting by id");
+        }
+
+        if (query.isPlainPage()) {
+            List<EmployeeView> employees = employeeService.retrieveEmployees(after == null ? 0 : after, pageSize);
+            EmployeeView last = employees.isEmpty() ? null : employees.get(employees.size() - 1);
+            // If-None-Match is answered with 304 by Spring when the ETag is unchanged
+            return page(employees.size(), pageSize, last == null ? null : last.getId(), null)
+                    .eTag(EmployeeETags.of(employees)).body(employees);
+        }
+        if (query.getFields().isEmpty()) {
+            List<EmployeeView> employees = employeeService.retrieveEmployees(query);
+            EmployeeView last = employees.isEmpty() ? null : employees.get(employees.size() - 1);
+            return page(employees.size(), pageSize, last == null ? null : last.getId(), last == null ? null : sortValue(last, query))
+                    .eTag(EmployeeETags.of(employees)).body(employees);
+        }
+        List<Map<String, Object>> rows = employeeService.retrieveEmployeeFields(query);
+        Map<String, Object> last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        ResponseEntity.BodyBuilder response = page(rows.size(), pageSize,
+                last == null ? null : (Long) last.get("id"), last == null ? null : sortValue(last, query));
+        // the id and sort attribute are only selected for the cursor
+        for (Map<String, Object> row : rows) {
+            row.keySet().retainAll(query.getFields());
+        }
+        return response.eTag(EmployeeETags.ofRows(rows)).body(rows);
+    }
+
+    /**
+     * Response of one page, with the "Link" to the next page when the page is full
+     */
+    private static ResponseEntity.BodyBuilder page(int count, int pageSize, Long lastId, Object lastValue) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (count == pageSize && lastId != null) {
+            ServletUriComponentsBuilder next = ServletUriComponentsBuilder.fromCurrentRequest();
+            next.replaceQueryParam("after", lastId).replaceQueryParam("size", pageSize);
+            if (lastValue == null) {
+                next.replaceQueryParam("afterValue");
+            } else {
+                next.replaceQueryParam("afterValue", lastValue);
+            }
+            response.header(HttpHeaders.LINK, "<" + next.toUriString() + ">; rel=\"next\"");
+        }
+        return response;
+    }
+
+    private static Object sortValue(EmployeeView employee, EmployeeQuery query) {
+        switch (query.getSortField()) {
+            case "name":
+                return employee.getName();
+            case "salary":
+                return employee.getSalary();
+            case "department":
+                return employee.getDepartment();
+            default:
+                return null;
+        }
+    }
+
+    private static Object sortValue(Map<String, Object> row, EmployeeQuery query) {
+        return "id".equals(query.getSortField()) ? null : row.get(query.getSortField());
+    }
+
+    // Search employees for typeahead, every word of q must match a word of the name or department
+    // by prefix, or with a typo when there are few prefix matches; best matches first
+    @GetMapping("/employees/search")
+    public List<EmployeeSearchHit> searchEmployees(@RequestParam(name = "q") String q,
+                                                   @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        if (q.trim().isEmpty()) {
+            throw new IllegalArgumentException("q cannot be blank");
+        }
+        if (limit < 1 || limit > maxSearchLimit) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxSearchLimit);
+        }
+        return employeeService.searchEmployees(q, limit);
+    }
+
+    // Stream all employees as one array, written row by row from a database cursor
+    // JSON by default, CBOR or Smile when accepted
+    @GetMapping(value = "/employees/stream",
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormats.APPLICATION_CBOR_VALUE, WireFormats.APPLICATION_SMILE_VALUE})
+    public ResponseEntity<StreamingResponseBody> streamEmployees(@RequestHeader HttpHeaders headers) {
+        MediaType mediaType = wireFormats.negotiate(headers.getAccept());
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = wireFormats.mapperFor(mediaType).getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                employeeService.streamEmployees(employee -> {
+                    try {
+                        generator.writeObject(employee);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(mediaType).body(body);
     }
 
     // Get employee info by id
+    // written on the servlet response (no ResponseEntity / HttpHeaders per request), 304 when If-None-Match matches
     @GetMapping("/employees/{employeeId}")
-    public ResponseEntity<Employee> getEmployee(@NotBlank(message = "cannot be blank") @PathVariable(name = "employeeId") Long employeeId) {
-        Optional<Employee> empOptional = Optional.ofNullable(employeeService.getEmployee(employeeId));
-        return empOptional.map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    public EmployeeView getEmployee(@NotBlank(message = "cannot be blank") @PathVariable(name = "employeeId") Long employeeId,
+                                    ServletWebRequest request) {
+        EmployeeView employee = employeeService.getEmployee(employeeId);
+        if (employee == null) {
+            request.getResponse().setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+        return request.checkNotModified(EmployeeETags.of(employee)) ? null : employee;
     }
 
     // Add new employee
     @PostMapping("/employees")
     public ResponseEntity<Employee> saveEmployee(@Validated @RequestBody Employee employee) {
+        employee.setId(null);
+        employee.setVersion(null);
         Employee empUpd = employeeService.saveEmployee(employee);
-        return ResponseEntity.ok(empUpd);
+        return ResponseEntity.ok().eTag(EmployeeETags.of(empUpd)).body(empUpd);
     }
 
-    // Delete employee
+    // Delete employee, only at the If-Match version when the header is given (412 otherwise, also for "*" on a missing id)
     @DeleteMapping("/employees/{employeeId}")
-    public ResponseEntity<Void> deleteEmployee(@NotBlank(message = "cannot be blank") @PathVariable(name = "employeeId") Long employeeId) {
-        // delete object check
-        boolean empExist = employeeService.checkEmployee(employeeId);
-        if (empExist) {
-            employeeService.deleteEmployee(employeeId);
-            return ResponseEntity.noContent().build();
+    public ResponseEntity<Void> deleteEmployee(@NotBlank(message = "cannot be blank") @PathVariable(name = "employeeId") Long employeeId,
+                                               @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        boolean deleted = employeeService.deleteEmployee(employeeId, EmployeeETags.parseVersion(ifMatch));
+        if (!deleted && EmployeeETags.matchesAny(ifMatch)) {
+            throw new OptimisticLockingFailureException("Employee " + employeeId + " does not exist");
         }
-        return ResponseEntity.notFound().build();
+        return deleted ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
     }
 
-    // Update existing employee info
+    // Update existing employee info, only at the If-Match version when the header is given (412 otherwise, also for "*" on a missing id)
     @PutMapping("/employees/{employeeId}")
     public ResponseEntity<Employee> updateEmployee(@Validated @RequestBody Employee employee,
-                                                   @NotBlank(message = "cannot be blank") @PathVariable(name = "employeeId") Long employeeId) {
-        // update object check
-        boolean empExist = employeeService.checkEmployee(employeeId);
-        if (empExist) {
-            employee.setId(employeeId);
-            Employee empUpd = employeeService.updateEmployee(employee);
-            return ResponseEntity.ok(empUpd);
+                                                   @NotBlank(message = "cannot be blank") @PathVariable(name = "employeeId") Long employeeId,
+                                                   @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        employee.setId(employeeId);
+        employee.setVersion(EmployeeETags.parseVersion(ifMatch));
+        Employee empUpd = employeeService.updateEmployee(employee);
+        if (empUpd == null && EmployeeETags.matchesAny(ifMatch)) {
+            throw new OptimisticLockingFailureException("Employee " + employeeId + " does not exist");
         }
-        return ResponseEntity.notFound().build();
+        return empUpd != null
+                ? ResponseEntity.ok().eTag(EmployeeETags.of(empUpd)).body(empUpd)
+                : ResponseEntity.notFound().build();
     }
 }
@@ -0,0 +1,177 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.entities.Employee;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV (RFC 4180) of employees, written and read one record at a time
+ * - columns: id,name,salary,department,version
+ * - a field with a comma, a quote or a line break is quoted, quotes inside doubled
+ */
+final class EmployeeCsv {
+
+    static final String TEXT_CSV_VALUE = "text/csv";
+
+    static final String HEADER = "id,name,salary,department,version";
+
+    private EmployeeCsv() {
+    }
+
+    static void write(Writer out, Employee employee) throws IOException {
+        writeField(out, employee.getId());
+        out.write(',');
+        writeField(out, employee.getName());
+        out.write(',');
+        writeField(out, employee.getSalary());
+        out.write(',');
+        writeField(out, employee.getDepartment());
+        out.write(',');
+        writeField(out, employee.getVersion());
+        out.write('\n');
+    }
+
+    private static void writeField(Writer out, Number value) throws IOException {
+        if (value != null) {
+            out.write(value.toString());
+        }
+    }
+
+    private static void writeField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    /**
+     * Incremental CSV parser, holds one record at a time
+     * Blank lines are skipped, quoted fields can span lines
+     */
+    static final class RecordReader {
+
+        private static final int NONE = -2;
+
+        private final Reader in;
+
+        private final char[] buffer = new char[8192];
+
+        private int position;
+
+        private int limit;
+
+        private final StringBuilder field = new StringBuilder();
+
+        private int line = 1;
+
+        private int recordLine;
+
+        private int pushedBack = NONE;
+
+        RecordReader(Reader in) {
+            this.in = in;
+        }
+
+        /**
+         * @return line number where the last returned record starts, from 1
+         */
+        int getRecordLine() {
+            return recordLine;
+        }
+
+        /**
+         * Read the next record
+         * @return fields of the record, null at the end of the input
+         * @throws IllegalArgumentException when a quoted field is not closed before the end of the input
+         */
+        List<String> next() throws IOException {
+            int c = read();
+            while (c == '\n' || c == '\r') {
+                c = skipLineBreak(c);
+            }
+            if (c == -1) {
+                return null;
+            }
+            recordLine = line;
+            List<String> fields = new ArrayList<>();
+            field.setLength(0);
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IllegalArgumentException("unterminated quoted field at line " + recordLine);
+                    }
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue;
+                        }
+                    } else if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c == '\r' || c == -1) {
+                    fields.add(field.toString());
+                    if (c != -1) {
+                        pushedBack = skipLineBreak(c);
+                    }
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        /**
+         * Consume a line break (\n, \r or \r\n)
+         * @return the character after it
+         */
+        private int skipLineBreak(int c) throws IOException {
+            line++;
+            int next = read();
+            if (c == '\r' && next == '\n') {
+                next = read();
+            }
+            return next;
+        }
+
+        private int read() throws IOException {
+            if (pushedBack != NONE) {
+                int c = pushedBack;
+                pushedBack = NONE;
+                return c;
+            }
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.entities.Employee;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ETag values of employee resources, built from the entity version
+ * - one employee: strong ETag of its version, e.g. "3"
+ * - a list: weak ETag hashed from the ids and versions of its employees
+ * - projected rows: weak ETag hashed from the returned values
+ */
+final class EmployeeETags {
+
+    private EmployeeETags() {
+    }
+
+    static String of(Employee employee) {
+        return "\"" + employee.getVersion() + "\"";
+    }
+
+    static String of(EmployeeView employee) {
+        return "\"" + employee.getVersion() + "\"";
+    }
+
+    static String of(List<EmployeeView> employees) {
+        long hash = employees.size();
+        for (EmployeeView employee : employees) {
+            hash = 31 * hash + employee.getId();
+            hash = 31 * hash + (employee.getVersion() == null ? 0 : employee.getVersion());
+        }
+        return "W/\"" + Long.toHexString(hash) + "\"";
+    }
+
+    /**
+     * ETag of projected rows, which may not carry the version: hashed from the returned values
+     */
+    static String ofRows(List<Map<String, Object>> rows) {
+        return "W/\"" + Integer.toHexString(rows.hashCode()) + "\"";
+    }
+
+    /**
+     * @param ifMatch If-Match header value
+     * @return true when it is "*": the write is on any version, but the employee must exist (412 otherwise)
+     */
+    static boolean matchesAny(String ifMatch) {
+        return ifMatch != null && ifMatch.trim().equals("*");
+    }
+
+    /**
+     * Read the version from an If-Match header
+     * @param ifMatch header value
+     * @return version, null when the header is absent or "*", see {@link #matchesAny(String)}
+     */
+    static Long parseVersion(String ifMatch) {
+        if (ifMatch == null || matchesAny(ifMatch)) {
+            return null;
+        }
+        String value = ifMatch.trim();
+        if (value.startsWith("W/")) {
+            throw new IllegalArgumentException("If-Match needs a strong ETag");
+        }
+        if (value.length() < 2 || !value.startsWith("\"") || !value.endsWith("\"")) {
+            throw new IllegalArgumentException("If-Match must be one ETag");
+        }
+        try {
+            return Long.valueOf(value.substring(1, value.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("If-Match must be one ETag");
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package jp.co.axa.apidemo.controllers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.co.axa.apidemo.dto.BulkItemResult;
+import jp.co.axa.apidemo.dto.ImportProgress;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.services.EmployeeService;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Whole-table export and import of employees as CSV or NDJSON
+ * - export streams from the forward-only JDBC cursor of streamEmployees, one row in memory at a time
+ * - import parses the upload record by record and saves it in chunks of "app.employees.bulk.chunk-size",
+ *   one transaction per chunk; invalid records are rejected and skipped, a malformed upload stops the import
+ *   (chunks saved before stay committed)
+ * - the progress of running and recent imports is readable at /employees/imports
+ */
+@Log4j2
+@RestController
+@RequestMapping("/api/v1")
+public class EmployeeTransferController {
+
+    private static final String CSV = "csv";
+
+    private static final String NDJSON = "ndjson";
+
+    private static final int RECENT_IMPORTS = 20;
+
+    private static final List<String> COLUMNS = Arrays.asList(EmployeeCsv.HEADER.split(","));
+
+    private final EmployeeService employeeService;
+
+    private final ObjectMapper objectMapper;
+
+    private final Validator validator;
+
+    private final int chunkSize;
+
+    private final int maxReportedRejections;
+
+    private final AtomicLong importIds = new AtomicLong();
+
+    private final Deque<ImportProgress> imports = new ConcurrentLinkedDeque<>();
+
+    @Autowired
+    public EmployeeTransferController(EmployeeService employeeService,
+                                      ObjectMapper objectMapper,
+                                      Validator validator,
+                                      @Value("${app.employees.bulk.chunk-size:500}") int chunkSize,
+                                      @Value("${app.employees.import.max-reported-rejections:100}") int maxReportedRejections) {
+        this.employeeService = employeeService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+        this.maxReportedRejections = maxReportedRejections;
+    }
+
+    // Export all employees as a CSV or NDJSON file, ordered by id
+    @GetMapping("/employees/export")
+    public ResponseEntity<StreamingResponseBody> exportEmployees(@RequestParam(name = "format", defaultValue = CSV) String format) {
+        String type = format.toLowerCase(Locale.ROOT);
+        StreamingResponseBody body;
+        MediaType mediaType;
+        if (CSV.equals(type)) {
+            body = this::writeCsv;
+            mediaType = new MediaType("text", "csv", StandardCharsets.UTF_8);
+        } else if (NDJSON.equals(type)) {
+            body = this::writeNdjson;
+            mediaType = MediaType.parseMediaType(EmployeeBulkController.APPLICATION_NDJSON_VALUE);
+        } else {
+            throw new IllegalArgumentException("format must be csv or ndjson");
+        }
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"employees." + type + "\"")
+                .body(body);
+    }
+
+    // Import employees from a CSV file with a header line, ids and versions in it are ignored
+    @PostMapping(value = "/employees/import", consumes = EmployeeCsv.TEXT_CSV_VALUE)
+    public ImportProgress importCsv(InputStream body) throws IOException {
+        ImportProgress progress = startImport(CSV);
+        EmployeeCsv.RecordReader records = new EmployeeCsv.RecordReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        try {
+            Map<String, Integer> columns = readHeader(records.next());
+            List<Employee> chunk = new ArrayList<>(chunkSize);
+            int index = 0;
+            for (List<String> record = records.next(); record != null; record = records.next(), index++) {
+                progress.recordRead();
+                Employee employee;
+                try {
+                    employee = toEmployee(record, columns);
+                } catch (IllegalArgumentException e) {
+                    progress.recordRejected(new BulkItemResult(index, null, HttpStatus.BAD_REQUEST.value(),
+                            "line " + records.getRecordLine() + ": " + e.getMessage()), maxReportedRejections);
+                    continue;
+                }
+                accept(employee, index, chunk, progress);
+            }
+            applySave(chunk, progress);
+            progress.finish();
+        } catch (IllegalArgumentException e) {
+            progress.fail(e.getMessage());
+        } catch (RuntimeException | IOException e) {
+            progress.fail("import stopped: " + e.getClass().getSimpleName());
+            throw e;
+        }
+        log.info("CSV import {} {}: {} imported, {} rejected", progress.getId(), progress.getState(),
+                progress.getImported(), progress.getRejected());
+        return progress;
+    }
+
+    // Import employees from NDJSON, one employee per line, ids and versions in it are ignored
+    @PostMapping(value = "/employees/import", consumes = EmployeeBulkController.APPLICATION_NDJSON_VALUE)
+    public ImportProgress importNdjson(InputStream body) throws IOException {
+        ImportProgress progress = startImport(NDJSON);
+        try (MappingIterator<Employee> items = objectMapper.readerFor(Employee.class).readValues(body)) {
+            List<Employee> chunk = new ArrayList<>(chunkSize);
+            int index = 0;
+            while (true) {
+                Employee employee;
+                try {
+                    if (!items.hasNextValue()) {
+                        break;
+                    }
+                    employee = items.nextValue();
+                } catch (JsonProcessingException e) {
+                    progress.fail("malformed item at index " + index + ", import stopped");
+                    break;
+                }
+                progress.recordRead();
+                accept(employee, index++, chunk, progress);
+            }
+            if (!ImportProgress.FAILED.equals(progress.getState())) {
+                applySave(chunk, progress);
+                progress.finish();
+            }
+        } catch (RuntimeException | IOException e) {
+            progress.fail("import stopped: " + e.getClass().getSimpleName());
+            throw e;
+        }
+        log.info("NDJSON import {} {}: {} imported, {} rejected", progress.getId(), progress.getState(),
+                progress.getImported(), progress.getRejected());
+        return progress;
+    }
+
+    // Get the progress of running and recent imports, newest first
+    @GetMapping("/employees/imports")
+    public List<ImportProgress> getImports() {
+        return new ArrayList<>(imports);
+    }
+
+    // Get the progress of one import
+    @GetMapping("/employees/imports/{importId}")
+    public ResponseEntity<ImportProgress> getImport(@PathVariable(name = "importId") long importId) {
+        for (ImportProgress progress : imports) {
+            if (progress.getId() == importId) {
+                return ResponseEntity.ok(progress);
+            }
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    private void writeCsv(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write(EmployeeCsv.HEADER);
+        writer.write('\n');
+        employeeService.streamEmployees(employee -> {
+            try {
+                EmployeeCsv.write(writer, employee);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    private void writeNdjson(OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            // lines end with \n, not the default space between root values
+            generator.setRootValueSeparator(null);
+            employeeService.streamEmployees(employee -> {
+                try {
+                    generator.writeObject(employee);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private ImportProgress startImport(String format) {
+        ImportProgress progress = new ImportProgress(importIds.incrementAndGet(), format);
+        imports.addFirst(progress);
+        while (imports.size() > RECENT_IMPORTS) {
+            imports.pollLast();
+        }
+        return progress;
+    }
+
+    /**
+     * Map the header line to column positions, name / salary / department are required
+     */
+    private Map<String, Integer> readHeader(List<String> header) {
+        if (header == null) {
+            throw new IllegalArgumentException("missing header line");
+        }
+        Map<String, Integer> columns = new LinkedHashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            // a byte order mark, as spreadsheets write it, is not part of the first column name
+            String column = header.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+            if (!COLUMNS.contains(column)) {
+                throw new IllegalArgumentException("unknown column " + header.get(i));
+            }
+            columns.put(column, i);
+        }
+        for (String required : new String[]{"name", "salary", "department"}) {
+            if (!columns.containsKey(required)) {
+                throw new IllegalArgumentException("missing column " + required);
+            }
+        }
+        return columns;
+    }
+
+    private Employee toEmployee(List<String> record, Map<String, Integer> columns) {
+        if (record.size() != columns.size()) {
+            throw new IllegalArgumentException(columns.size() + " fields expected, " + record.size() + " found");
+        }
+        Employee employee = new Employee();
+        employee.setName(record.get(columns.get("name")));
+        employee.setDepartment(record.get(columns.get("department")));
+        String salary = record.get(columns.get("salary")).trim();
+        if (!salary.isEmpty()) {
+            try {
+                employee.setSalary(Integer.valueOf(salary));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("salary must be a number");
+            }
+        }
+        return employee;
+    }
+
+    private void accept(Employee employee, int index, List<Employee> chunk, ImportProgress progress) {
+        employee.setId(null);
+        employee.setVersion(null);
+        Set<ConstraintViolation<Employee>> violations = validator.validate(employee);
+        if (!violations.isEmpty()) {
+            Map<String, Object> errors = new LinkedHashMap<>();
+            for (ConstraintViolation<Employee> violation : violations) {
+                errors.put(violation.getPropertyPath().toString(), violation.getMessage());
+            }
+            progress.recordRejected(new BulkItemResult(index, null, HttpStatus.BAD_REQUEST.value(), errors), maxReportedRejections);
+            return;
+        }
+        chunk.add(employee);
+        if (chunk.size() == chunkSize) {
+            applySave(chunk, progress);
+        }
+    }
+
+    private void applySave(List<Employee> chunk, ImportProgress progress) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        employeeService.saveEmployees(chunk);
+        progress.recordImported(chunk.size());
+        log.debug("Import {}: {} read, {} imported", progress.getId(), progress.getRead(), progress.getImported());
+        chunk.clear();
+    }
+}
@@ -0,0 +1,56 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.dto.ShardMove;
+import jp.co.axa.apidemo.dto.ShardStatus;
+import jp.co.axa.apidemo.repositories.EmployeeShards;
+import jp.co.axa.apidemo.services.EmployeeShardRebalancer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Shards of the employee storage: their employees and id ranges, rebalance and manual moves
+ * Only when app.employees.shards.enabled
+ */
+@RestController
+@RequestMapping("/api/v1")
+@ConditionalOnProperty(name = "app.employees.shards.enabled", havingValue = "true")
+public class ShardController {
+
+    private final EmployeeShards employeeShards;
+
+    private final EmployeeShardRebalancer rebalancer;
+
+    @Autowired
+    public ShardController(EmployeeShards employeeShards, EmployeeShardRebalancer rebalancer) {
+        this.employeeShards = employeeShards;
+        this.rebalancer = rebalancer;
+    }
+
+    // Get the employees and id ranges of every shard
+    @GetMapping("/shards")
+    public List<ShardStatus> getShards() {
+        return rebalancer.status();
+    }
+
+    // Even out the shards, returns the moves done
+    @PostMapping("/shards/rebalance")
+    public List<ShardMove> rebalance() {
+        return rebalancer.rebalance();
+    }
+
+    // Move the ids [fromId, toId) to a shard, they must be within one range of another shard
+    @PostMapping("/shards/moves")
+    public ShardMove move(@RequestParam(name = "fromId") long fromId, @RequestParam(name = "toId") long toId,
+                          @RequestParam(name = "shard") int shard) {
+        int source = employeeShards.shardOf(fromId);
+        long moved = employeeShards.move(fromId, toId, shard);
+        return new ShardMove(fromId, toId, source, shard, moved);
+    }
+}
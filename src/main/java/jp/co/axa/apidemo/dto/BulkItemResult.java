@@ -0,0 +1,33 @@
+package jp.co.axa.apidemo.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+/**
+ * Result of one item of a bulk request
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkItemResult {
+
+    /**
+     * Position of the item in the request, from 0
+     */
+    private final int index;
+
+    private final Long id;
+
+    /**
+     * Http status of the item: 201 created, 200 updated/deleted, 400 invalid, 404 not found
+     */
+    private final int status;
+
+    private final Object error;
+
+    public BulkItemResult(int index, Long id, int status, Object error) {
+        this.index = index;
+        this.id = id;
+        this.status = status;
+        this.error = error;
+    }
+}
@@ -0,0 +1,41 @@
+package jp.co.axa.apidemo.dto;
+
+import lombok.Getter;
+
+/**
+ * Salary statistics of one department
+ */
+@Getter
+public class DepartmentStats {
+
+    private final String department;
+
+    private final long headcount;
+
+    private final long totalSalary;
+
+    private final int minSalary;
+
+    private final int maxSalary;
+
+    private final double averageSalary;
+
+    private final int p50Salary;
+
+    private final int p90Salary;
+
+    private final int p99Salary;
+
+    public DepartmentStats(String department, long headcount, long totalSalary, int minSalary, int maxSalary,
+                           int p50Salary, int p90Salary, int p99Salary) {
+        this.department = department;
+        this.headcount = headcount;
+        this.totalSalary = totalSalary;
+        this.minSalary = minSalary;
+        this.maxSalary = maxSalary;
+        this.averageSalary = headcount == 0 ? 0 : (double) totalSalary / headcount;
+        this.p50Salary = p50Salary;
+        this.p90Salary = p90Salary;
+        this.p99Salary = p99Salary;
+    }
+}
@@ -0,0 +1,50 @@
+package jp.co.axa.apidemo.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import jp.co.axa.apidemo.events.EmployeeChangeEvent;
+import lombok.Getter;
+
+/**
+ * One committed employee change of the change stream
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EmployeeChange {
+
+    /**
+     * Position in the stream, from 1 and without holes, restarts with the process
+     * Numbered when the commit is published: concurrent commits may be numbered in either order,
+     * compare the versions to tell the latest state
+     */
+    private final long sequence;
+
+    private final EmployeeChangeEvent.Type type;
+
+    private final long employeeId;
+
+    /**
+     * Version after the change; for a delete, the last version the employee had
+     * A change with a lower version than one already seen is older, a delete supersedes every state up to its version
+     */
+    private final Long version;
+
+    /**
+     * Epoch millis when the change was committed
+     */
+    private final long timestamp;
+
+    /**
+     * State after the change, null when deleted
+     */
+    private final EmployeeView employee;
+
+    public EmployeeChange(long sequence, EmployeeChangeEvent.Type type, long employeeId, Long version, long timestamp,
+                          EmployeeView employee) {
+        this.sequence = sequence;
+        this.type = type;
+        this.employeeId = employeeId;
+        this.version = version;
+        this.timestamp = timestamp;
+        this.employee = employee;
+    }
+}
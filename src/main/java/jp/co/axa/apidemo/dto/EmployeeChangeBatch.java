@@ -0,0 +1,24 @@
+package jp.co.axa.apidemo.dto;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Changes returned by one poll of the change stream
+ */
+@Getter
+public class EmployeeChangeBatch {
+
+    private final List<EmployeeChange> changes;
+
+    /**
+     * Sequence to poll after next time: the last change returned, or the requested one when there is none
+     */
+    private final long last;
+
+    public EmployeeChangeBatch(List<EmployeeChange> changes, long last) {
+        this.changes = changes;
+        this.last = last;
+    }
+}
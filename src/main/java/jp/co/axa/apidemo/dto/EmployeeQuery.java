@@ -0,0 +1,111 @@
+package jp.co.axa.apidemo.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Filter, sort, projection and keyset cursor of an employee list request
+ * Every part is pushed down to SQL, see {@code EmployeeRepositoryImpl}
+ */
+@Getter
+@Setter
+public class EmployeeQuery {
+
+    /**
+     * Attributes which can be sorted on, and selected by "fields"
+     */
+    public static final List<String> SORTABLE = Collections.unmodifiableList(Arrays.asList("id", "name", "salary", "department"));
+
+    public static final List<String> SELECTABLE = Collections.unmodifiableList(Arrays.asList("id", "name", "salary", "department", "version"));
+
+    private String department;
+
+    private String namePrefix;
+
+    private Integer minSalary;
+
+    private Integer maxSalary;
+
+    private String sortField = "id";
+
+    private boolean descending;
+
+    /**
+     * Id of the last employee of the previous page
+     */
+    private Long afterId;
+
+    /**
+     * Sort value of the last employee of the previous page, unused when sorting by id
+     */
+    private Object afterValue;
+
+    private int size;
+
+    /**
+     * Selected attributes, empty: the whole employee
+     */
+    private Set<String> fields = Collections.emptySet();
+
+    /**
+     * @return true when the request is a plain id-ordered page of whole employees
+     */
+    public boolean isPlainPage() {
+        return department == null && namePrefix == null && minSalary == null && maxSalary == null
+                && "id".equals(sortField) && !descending && fields.isEmpty();
+    }
+
+    /**
+     * Parse a "field" or "field,asc|desc" sort parameter
+     */
+    public void parseSort(String sort) {
+        if (sort == null) {
+            return;
+        }
+        String[] parts = sort.split(",");
+        if (!SORTABLE.contains(parts[0]) || parts.length > 2
+                || (parts.length == 2 && !parts[1].equalsIgnoreCase("asc") && !parts[1].equalsIgnoreCase("desc"))) {
+            throw new IllegalArgumentException("sort must be one of " + SORTABLE + " optionally followed by ,asc or ,desc");
+        }
+        sortField = parts[0];
+        descending = parts.length == 2 && parts[1].equalsIgnoreCase("desc");
+    }
+
+    /**
+     * Parse the cursor sort value, typed like the sort attribute
+     */
+    public void parseAfterValue(String value) {
+        if (value == null || "id".equals(sortField)) {
+            return;
+        }
+        if ("salary".equals(sortField)) {
+            try {
+                afterValue = Integer.valueOf(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("afterValue must be a number when sorting by salary");
+            }
+        } else {
+            afterValue = value;
+        }
+    }
+
+    /**
+     * Parse a comma separated "fields" parameter
+     */
+    public void parseFields(String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        Set<String> selected = new LinkedHashSet<>(Arrays.asList(value.split(",")));
+        if (!SELECTABLE.containsAll(selected)) {
+            throw new IllegalArgumentException("fields must be among " + SELECTABLE);
+        }
+        fields = selected;
+    }
+}
@@ -0,0 +1,28 @@
+package jp.co.axa.apidemo.dto;
+
+import lombok.Getter;
+
+/**
+ * One employee found by the search API, with what a typeahead shows
+ */
+@Getter
+public class EmployeeSearchHit {
+
+    private final long id;
+
+    private final String name;
+
+    private final String department;
+
+    /**
+     * Relevance, higher first: exact word > word prefix > word with typos, name words weigh twice department words
+     */
+    private final double score;
+
+    public EmployeeSearchHit(long id, String name, String department, double score) {
+        this.id = id;
+        this.name = name;
+        this.department = department;
+        this.score = score;
+    }
+}
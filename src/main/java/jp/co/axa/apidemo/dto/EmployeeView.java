@@ -0,0 +1,108 @@
+package jp.co.axa.apidemo.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import jp.co.axa.apidemo.entities.Employee;
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * Immutable read model of an employee, returned by the read APIs and held by the caches
+ * Pages are loaded by projection queries, so a page read creates no managed entity (no persistence context, no dirty checking);
+ * and a single employee miss is read with JDBC straight into a view
+ * Shared as is between callers since it cannot be changed
+ * Serialized like {@link Employee}, field by field with {@link Serializer} rather than through bean properties
+ */
+@Getter
+@JsonSerialize(using = EmployeeView.Serializer.class)
+public final class EmployeeView {
+
+    private final Long id;
+
+    private final String name;
+
+    private final Integer salary;
+
+    private final String department;
+
+    private final Long version;
+
+    public EmployeeView(Long id, String name, Integer salary, String department, Long version) {
+        this.id = id;
+        this.name = name;
+        this.salary = salary;
+        this.department = department;
+        this.version = version;
+    }
+
+    public static EmployeeView of(Employee employee) {
+        return new EmployeeView(employee.getId(), employee.getName(), employee.getSalary(),
+                employee.getDepartment(), employee.getVersion());
+    }
+
+    /**
+     * @return a new entity with the same values, e.g. to edit and update it
+     */
+    public Employee toEmployee() {
+        Employee employee = new Employee();
+        employee.setId(id);
+        employee.setName(name);
+        employee.setSalary(salary);
+        employee.setDepartment(department);
+        employee.setVersion(version);
+        return employee;
+    }
+
+    /**
+     * Writes the five fields in the order of {@link Employee}, with pre-encoded names, in any format (JSON, CBOR, Smile)
+     */
+    public static final class Serializer extends StdSerializer<EmployeeView> {
+
+        private static final SerializableString ID = new SerializedString("id");
+
+        private static final SerializableString NAME = new SerializedString("name");
+
+        private static final SerializableString SALARY = new SerializedString("salary");
+
+        private static final SerializableString DEPARTMENT = new SerializedString("department");
+
+        private static final SerializableString VERSION = new SerializedString("version");
+
+        public Serializer() {
+            super(EmployeeView.class);
+        }
+
+        @Override
+        public void serialize(EmployeeView view, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(view);
+            gen.writeFieldName(ID);
+            writeNumber(gen, view.id);
+            gen.writeFieldName(NAME);
+            gen.writeString(view.name);
+            gen.writeFieldName(SALARY);
+            if (view.salary == null) {
+                gen.writeNull();
+            } else {
+                gen.writeNumber(view.salary);
+            }
+            gen.writeFieldName(DEPARTMENT);
+            gen.writeString(view.department);
+            gen.writeFieldName(VERSION);
+            writeNumber(gen, view.version);
+            gen.writeEndObject();
+        }
+
+        private static void writeNumber(JsonGenerator gen, Long value) throws IOException {
+            if (value == null) {
+                gen.writeNull();
+            } else {
+                gen.writeNumber(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package jp.co.axa.apidemo.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+/**
+ * Body of an error response: {"error": message}, with the retained sequences for a change stream gap
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ErrorResponse {
+
+    private final String error;
+
+    /**
+     * Oldest sequence still retained by the change stream, gaps only
+     */
+    private final Long oldest;
+
+    /**
+     * Latest sequence of the change stream, to follow it from after a reload, gaps only
+     */
+    private final Long latest;
+
+    public ErrorResponse(String error) {
+        this(error, null, null);
+    }
+
+    public ErrorResponse(String error, Long oldest, Long latest) {
+        this.error = error;
+        this.oldest = oldest;
+        this.latest = latest;
+    }
+}
@@ -0,0 +1,85 @@
+package jp.co.axa.apidemo.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Progress of one employee import, updated by the importing request and readable by others while it runs
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImportProgress {
+
+    public static final String RUNNING = "running";
+
+    public static final String DONE = "done";
+
+    public static final String FAILED = "failed";
+
+    private final long id;
+
+    private final String format;
+
+    private final long startedAt;
+
+    private volatile Long finishedAt;
+
+    private volatile String state = RUNNING;
+
+    /**
+     * Records read from the upload so far
+     */
+    private volatile long read;
+
+    /**
+     * Records committed so far
+     */
+    private volatile long imported;
+
+    private volatile long rejected;
+
+    /**
+     * Why the import stopped, when failed
+     */
+    private volatile String error;
+
+    /**
+     * The first rejected records, index from 0 like bulk results
+     */
+    private final List<BulkItemResult> rejections = new CopyOnWriteArrayList<>();
+
+    public ImportProgress(long id, String format) {
+        this.id = id;
+        this.format = format;
+        this.startedAt = System.currentTimeMillis();
+    }
+
+    public void recordRead() {
+        read++;
+    }
+
+    public void recordImported(int count) {
+        imported += count;
+    }
+
+    public void recordRejected(BulkItemResult rejection, int maxReported) {
+        rejected++;
+        if (rejections.size() < maxReported) {
+            rejections.add(rejection);
+        }
+    }
+
+    public void finish() {
+        state = DONE;
+        finishedAt = System.currentTimeMillis();
+    }
+
+    public void fail(String error) {
+        this.error = error;
+        state = FAILED;
+        finishedAt = System.currentTimeMillis();
+    }
+}
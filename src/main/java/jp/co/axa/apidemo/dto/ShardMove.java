@@ -0,0 +1,31 @@
+package jp.co.axa.apidemo.dto;
+
+import lombok.Getter;
+
+/**
+ * Id range [fromId, toId) handed over from one shard to another by a rebalance
+ */
+@Getter
+public class ShardMove {
+
+    private final long fromId;
+
+    private final long toId;
+
+    private final int fromShard;
+
+    private final int toShard;
+
+    /**
+     * Employees copied to the new shard
+     */
+    private final long employees;
+
+    public ShardMove(long fromId, long toId, int fromShard, int toShard, long employees) {
+        this.fromId = fromId;
+        this.toId = toId;
+        this.fromShard = fromShard;
+        this.toShard = toShard;
+        this.employees = employees;
+    }
+}
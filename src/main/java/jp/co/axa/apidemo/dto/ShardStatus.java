@@ -0,0 +1,43 @@
+package jp.co.axa.apidemo.dto;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Employees of one shard, and the id ranges it owns
+ */
+@Getter
+public class ShardStatus {
+
+    /**
+     * Id range [fromId, toId) of the shard
+     */
+    @Getter
+    public static class Range {
+
+        private final long fromId;
+
+        private final long toId;
+
+        private final long employees;
+
+        public Range(long fromId, long toId, long employees) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.employees = employees;
+        }
+    }
+
+    private final int shard;
+
+    private final long employees;
+
+    private final List<Range> ranges;
+
+    public ShardStatus(int shard, long employees, List<Range> ranges) {
+        this.shard = shard;
+        this.employees = employees;
+        this.ranges = ranges;
+    }
+}
@@ -2,6 +2,8 @@ package jp.co.axa.apidemo.entities;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 import javax.validation.constraints.Min;
@@ -12,13 +14,23 @@ import javax.validation.constraints.NotNull;
  * Entity of employee
  */
 @Entity
-@Table(name="EMPLOYEE")
+@Table(name="EMPLOYEE", indexes = {
+        // the id closes each index, so keyset pages sorted on the column can use it
+        @Index(name = "IDX_EMPLOYEE_DEPARTMENT", columnList = "DEPARTMENT, ID"),
+        @Index(name = "IDX_EMPLOYEE_SALARY", columnList = "EMPLOYEE_SALARY, ID"),
+        @Index(name = "IDX_EMPLOYEE_NAME", columnList = "EMPLOYEE_NAME, ID")
+})
 public class Employee {
 
     @Getter
     @Setter
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    // pooled sequence instead of IDENTITY, so Hibernate can batch the inserts
+    // (one block of ids per shard when sharded, see ShardSequenceGenerator)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "employee_seq")
+    @GenericGenerator(name = "employee_seq", strategy = "jp.co.axa.apidemo.repositories.ShardSequenceGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "EMPLOYEE_SEQ"),
+            @Parameter(name = "increment_size", value = "50")})
     private Long id;
 
     @Getter
@@ -40,4 +52,10 @@ public class Employee {
     @NotBlank(message = "cannot be blank")
     private String department;
 
+    @Getter
+    @Setter
+    @Version
+    @Column(name="VERSION")
+    private Long version;
+
 }
@@ -0,0 +1,61 @@
+package jp.co.axa.apidemo.events;
+
+import jp.co.axa.apidemo.entities.Employee;
+import lombok.Getter;
+
+/**
+ * Published by the employee service for each created, updated or deleted employee
+ * Listeners keep derived read models (rollups, indexes...) in step with the table
+ */
+@Getter
+public class EmployeeChangeEvent {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private final Type type;
+
+    private final Long employeeId;
+
+    /**
+     * Version after the change; for a delete, the last version of the deleted row
+     * (listeners of concurrent transactions may run out of commit order: a change never replaces a higher version,
+     * and a delete supersedes every state up to its version)
+     */
+    private final Long version;
+
+    /**
+     * State after the change, null when deleted
+     */
+    private final Employee employee;
+
+    private EmployeeChangeEvent(Type type, Long employeeId, Long version, Employee employee) {
+        this.type = type;
+        this.employeeId = employeeId;
+        this.version = version;
+        this.employee = employee;
+    }
+
+    public static EmployeeChangeEvent created(Employee employee) {
+        return new EmployeeChangeEvent(Type.CREATED, employee.getId(), employee.getVersion(), employee);
+    }
+
+    public static EmployeeChangeEvent updated(Employee employee) {
+        return new EmployeeChangeEvent(Type.UPDATED, employee.getId(), employee.getVersion(), employee);
+    }
+
+    /**
+     * @param version last version of the deleted row
+     */
+    public static EmployeeChangeEvent deleted(Long employeeId, Long version) {
+        return new EmployeeChangeEvent(Type.DELETED, employeeId, version, null);
+    }
+
+    /**
+     * @return the version to order the changes of the employee by, 0 when unknown
+     */
+    public long versionOrZero() {
+        return version == null ? 0L : version;
+    }
+}
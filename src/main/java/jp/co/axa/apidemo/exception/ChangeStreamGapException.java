@@ -0,0 +1,24 @@
+package jp.co.axa.apidemo.exception;
+
+import lombok.Getter;
+
+/**
+ * The changes after a requested sequence are no longer in the change stream (overwritten, or from before a restart)
+ * The consumer has to reload the employees, then follow the stream from latest
+ */
+@Getter
+public class ChangeStreamGapException extends RuntimeException {
+
+    private final long after;
+
+    private final long oldest;
+
+    private final long latest;
+
+    public ChangeStreamGapException(long after, long oldest, long latest) {
+        super("changes after " + after + " are not retained, the stream holds " + oldest + " to " + latest);
+        this.after = after;
+        this.oldest = oldest;
+        this.latest = latest;
+    }
+}
@@ -1,7 +1,8 @@
 package jp.co.axa.apidemo.exception;
 
+import jp.co.axa.apidemo.dto.ErrorResponse;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
-import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -9,11 +10,15 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Process the global validation error on request parameter
+ * the version conflict on conditional writes
+ * and the change stream offsets which are no longer retained
  */
 @ControllerAdvice
 public class GlobalExceptionHandler {
@@ -26,10 +31,14 @@ public class GlobalExceptionHandler {
     @ExceptionHandler(MethodArgumentNotValidException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ResponseBody
-    public Map<String, Object> handleMethodArgumentNotValidException(MethodArgumentNotValidException e) {
-        Map<String, Object> errors = new HashMap<>();
-        BindingResult bindingResult = e.getBindingResult();
-        for (FieldError fieldError : bindingResult.getFieldErrors()) {
+    public Map<String, String> handleMethodArgumentNotValidException(MethodArgumentNotValidException e) {
+        List<FieldError> fieldErrors = e.getBindingResult().getFieldErrors();
+        // keyed by the invalid fields, usually a single one
+        if (fieldErrors.size() == 1) {
+            return Collections.singletonMap(fieldErrors.get(0).getField(), fieldErrors.get(0).getDefaultMessage());
+        }
+        Map<String, String> errors = new HashMap<>();
+        for (FieldError fieldError : fieldErrors) {
             errors.put(fieldError.getField(), fieldError.getDefaultMessage());
         }
         return errors;
@@ -43,10 +52,32 @@ public class GlobalExceptionHandler {
     @ExceptionHandler(IllegalArgumentException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ResponseBody
-    public Map<String, Object> handleIllegalArgumentException(IllegalArgumentException e) {
-        Map<String, Object> result = new HashMap<>();
-        result.put("error", e.getMessage());
-        return result;
+    public ErrorResponse handleIllegalArgumentException(IllegalArgumentException e) {
+        return new ErrorResponse(e.getMessage());
+    }
+
+    /**
+     * process a write whose If-Match version is stale
+     * @param e exception
+     * @return error
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    @ResponseBody
+    public ErrorResponse handleOptimisticLockingFailureException(OptimisticLockingFailureException e) {
+        return new ErrorResponse(e.getMessage());
+    }
+
+    /**
+     * process a change stream read after a sequence which is no longer retained
+     * @param e exception
+     * @return error, with the latest sequence to follow the stream from after a reload
+     */
+    @ExceptionHandler(ChangeStreamGapException.class)
+    @ResponseStatus(HttpStatus.GONE)
+    @ResponseBody
+    public ErrorResponse handleChangeStreamGapException(ChangeStreamGapException e) {
+        return new ErrorResponse(e.getMessage(), e.getOldest(), e.getLatest());
     }
 
 }
\ No newline at end of file
@@ -1,9 +1,86 @@
 package jp.co.axa.apidemo.repositories;
 
+import jp.co.axa.apidemo.dto.EmployeeView;
 import jp.co.axa.apidemo.entities.Employee;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+
 @Repository
-public interface EmployeeRepository extends JpaRepository<Employee,Long> {
+public interface EmployeeRepository extends JpaRepository<Employee,Long>, EmployeeRepositoryCustom {
+
+    /**
+     * Read models of the employees with these ids, in no particular order
+     */
+    @Query("select new jp.co.axa.apidemo.dto.EmployeeView(e.id, e.name, e.salary, e.department, e.version) " +
+            "from Employee e where e.id in :ids")
+    List<EmployeeView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Keyset page of read models: employees whose id is greater than the cursor, ordered by id
+     * @param afterId cursor (last id of the previous page)
+     * @param pageable page size (page number is always 0 for keyset reads)
+     * @return employees of the page
+     */
+    @Query("select new jp.co.axa.apidemo.dto.EmployeeView(e.id, e.name, e.salary, e.department, e.version) " +
+            "from Employee e where e.id > :afterId order by e.id")
+    List<EmployeeView> findViewPage(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Update an employee with one statement, without loading it first
+     * @return number of updated rows, 0 when the id does not exist
+     */
+    @Modifying
+    @Query("update Employee e set e.name = :name, e.salary = :salary, e.department = :department, " +
+            "e.version = e.version + 1 where e.id = :id")
+    int updateById(@Param("id") Long id,
+                   @Param("name") String name,
+                   @Param("salary") Integer salary,
+                   @Param("department") String department);
+
+    /**
+     * Update an employee with one statement, only when its version matches
+     * @return number of updated rows, 0 when the id does not exist or the version is stale
+     */
+    @Modifying
+    @Query("update Employee e set e.name = :name, e.salary = :salary, e.department = :department, " +
+            "e.version = e.version + 1 where e.id = :id and e.version = :version")
+    int updateByIdAndVersion(@Param("id") Long id,
+                             @Param("version") Long version,
+                             @Param("name") String name,
+                             @Param("salary") Integer salary,
+                             @Param("department") String department);
+
+    /**
+     * Delete an employee with one statement, only when its version matches
+     * @return number of deleted rows, 0 when the id does not exist or the version is stale
+     */
+    @Modifying
+    @Query("delete from Employee e where e.id = :id and e.version = :version")
+    int removeByIdAndVersion(@Param("id") Long id, @Param("version") Long version);
+
+    @Query("select e.version from Employee e where e.id = :id")
+    Long findVersionById(@Param("id") Long id);
+
+    /**
+     * The ids of these employees which are in the table
+     */
+    @Query("select e.id from Employee e where e.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * The employees with these ids, locked until the end of the transaction (SELECT ... FOR UPDATE),
+     * so their versions stay the ones read
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select e from Employee e where e.id in :ids")
+    List<Employee> lockAllByIdIn(@Param("ids") Collection<Long> ids);
 }
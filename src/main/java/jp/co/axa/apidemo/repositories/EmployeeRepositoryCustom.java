@@ -0,0 +1,75 @@
+package jp.co.axa.apidemo.repositories;
+
+import jp.co.axa.apidemo.dto.EmployeeQuery;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.entities.Employee;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads which do not fit derived queries:
+ * plain JDBC reads which should not go through the persistence context,
+ * and filtered / sorted keyset pages built with the Criteria API
+ */
+public interface EmployeeRepositoryCustom {
+
+    /**
+     * Read all employees ordered by id from a forward-only cursor
+     * and hand every row to the action as soon as it is fetched
+     * When sharded and not routed to a shard, reads every id range from the shard owning it, in id order
+     * @param action row consumer
+     */
+    void forEachEmployee(Consumer<Employee> action);
+
+    /**
+     * Read one keyset page of employees matching the query, as read models
+     * @param query filter, sort and cursor
+     * @return employees of the page
+     */
+    List<EmployeeView> findPage(EmployeeQuery query);
+
+    /**
+     * Read one keyset page of employees matching the query, only selecting the query fields
+     * The id and the sort attribute are always selected, as they make the cursor
+     * @param query filter, sort, cursor and fields
+     * @return one map of attribute name to value per employee
+     */
+    List<Map<String, Object>> findPageFields(EmployeeQuery query);
+
+    /**
+     * Read model of one employee, read with JDBC straight into the view, without a session or an entity
+     * @return the employee, null when the id does not exist
+     */
+    EmployeeView findViewById(Long id);
+
+    /**
+     * Draw the next employee id from the same pooled generator Hibernate uses for inserts
+     * Must be called in a transaction
+     * @return new employee id
+     */
+    Long nextId();
+
+    /**
+     * Overwrite employees with their state and version as given, in JDBC batches,
+     * only the rows at an older version: a replayed or overtaken write leaves a newer row as it is
+     * @param employees employees with id and version
+     * @return number of updated rows of each employee, in the same order, 0 when missing or not older
+     */
+    int[] updateAllIfOlder(List<Employee> employees);
+
+    /**
+     * Insert employees with their id and version as given, in JDBC batches
+     * @param employees employees with id and version, not in the table
+     */
+    void insertAll(Collection<Employee> employees);
+
+    /**
+     * Delete employees by id in JDBC batches, only the rows at their version or an older one
+     * @param employees employees with id and last version
+     * @return number of deleted rows of each employee, in the same order, 0 when missing or newer
+     */
+    int[] removeAllUpToVersion(List<Employee> employees);
+}
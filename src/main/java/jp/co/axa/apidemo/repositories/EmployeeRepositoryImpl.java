@@ -0,0 +1,274 @@
+package jp.co.axa.apidemo.repositories;
+
+import jp.co.axa.apidemo.configs.ShardRoutingDataSource;
+import jp.co.axa.apidemo.dto.EmployeeQuery;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.entities.Employee;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Implementation of {@link EmployeeRepositoryCustom}
+ * Streamed rows are mapped one by one with JDBC, so memory does not grow with the table size
+ * Filtered pages are Criteria queries, so filters, order, cursor and projection all run in SQL,
+ * and select read models rather than entities
+ */
+public class EmployeeRepositoryImpl implements EmployeeRepositoryCustom {
+
+    private static final String SELECT_ALL_ORDER_BY_ID =
+            "SELECT ID, EMPLOYEE_NAME, EMPLOYEE_SALARY, DEPARTMENT, VERSION FROM EMPLOYEE ORDER BY ID";
+
+    private static final String SELECT_RANGE_ORDER_BY_ID =
+            "SELECT ID, EMPLOYEE_NAME, EMPLOYEE_SALARY, DEPARTMENT, VERSION FROM EMPLOYEE WHERE ID >= ? AND ID < ? ORDER BY ID";
+
+    // H2 upsert
+    static final String MERGE_BY_ID =
+            "MERGE INTO EMPLOYEE (ID, EMPLOYEE_NAME, EMPLOYEE_SALARY, DEPARTMENT, VERSION) KEY (ID) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String SELECT_BY_ID =
+            "SELECT ID, EMPLOYEE_NAME, EMPLOYEE_SALARY, DEPARTMENT, VERSION FROM EMPLOYEE WHERE ID = ?";
+
+    private static final String UPDATE_IF_OLDER =
+            "UPDATE EMPLOYEE SET EMPLOYEE_NAME = ?, EMPLOYEE_SALARY = ?, DEPARTMENT = ?, VERSION = ? WHERE ID = ? AND VERSION < ?";
+
+    private static final String INSERT =
+            "INSERT INTO EMPLOYEE (ID, EMPLOYEE_NAME, EMPLOYEE_SALARY, DEPARTMENT, VERSION) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String DELETE_UP_TO_VERSION = "DELETE FROM EMPLOYEE WHERE ID = ? AND VERSION <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int fetchSize;
+
+    /**
+     * empty unless app.employees.shards.enabled
+     */
+    private final ObjectProvider<EmployeeShards> shards;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public EmployeeRepositoryImpl(JdbcTemplate jdbcTemplate,
+                                  @Value("${app.employees.stream.fetch-size:500}") int fetchSize,
+                                  ObjectProvider<EmployeeShards> shards) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+        this.shards = shards;
+    }
+
+    @Override
+    public void forEachEmployee(Consumer<Employee> action) {
+        EmployeeShards employeeShards = shards.getIfAvailable();
+        if (employeeShards == null || ShardRoutingDataSource.currentShard() != null) {
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(SELECT_ALL_ORDER_BY_ID,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(fetchSize);
+                return ps;
+            }, (RowCallbackHandler) rs -> action.accept(mapRow(rs)));
+            return;
+        }
+        // sharded: range after range from the shard owning it, so the rows still come in id order
+        for (EmployeeShards.Range range : employeeShards.ranges()) {
+            employeeShards.on(range.getShard(), () -> {
+                jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(SELECT_RANGE_ORDER_BY_ID,
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(fetchSize);
+                    ps.setLong(1, range.getFromId());
+                    ps.setLong(2, range.getToId());
+                    return ps;
+                }, (RowCallbackHandler) rs -> action.accept(mapRow(rs)));
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public List<EmployeeView> findPage(EmployeeQuery query) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<EmployeeView> criteria = cb.createQuery(EmployeeView.class);
+        Root<Employee> root = criteria.from(Employee.class);
+        criteria.select(cb.construct(EmployeeView.class, root.get("id"), root.get("name"), root.get("salary"),
+                root.get("department"), root.get("version")))
+                .where(predicates(cb, root, query)).orderBy(orders(cb, root, query));
+        return entityManager.createQuery(criteria).setMaxResults(query.getSize()).getResultList();
+    }
+
+    @Override
+    public List<Map<String, Object>> findPageFields(EmployeeQuery query) {
+        Set<String> selected = new LinkedHashSet<>(query.getFields());
+        selected.add("id");
+        selected.add(query.getSortField());
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteria = cb.createTupleQuery();
+        Root<Employee> root = criteria.from(Employee.class);
+        List<Selection<?>> selections = new ArrayList<>(selected.size());
+        for (String field : selected) {
+            selections.add(root.get(field).alias(field));
+        }
+        criteria.multiselect(selections).where(predicates(cb, root, query)).orderBy(orders(cb, root, query));
+
+        List<Tuple> tuples = entityManager.createQuery(criteria).setMaxResults(query.getSize()).getResultList();
+        List<Map<String, Object>> rows = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (String field : selected) {
+                row.put(field, tuple.get(field));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Override
+    public EmployeeView findViewById(Long id) {
+        return jdbcTemplate.query(SELECT_BY_ID, rs -> rs.next()
+                ? new EmployeeView(rs.getLong(1), rs.getString(2), rs.getInt(3), rs.getString(4), rs.getLong(5))
+                : null, id);
+    }
+
+    @Override
+    public Long nextId() {
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        IdentifierGenerator generator = session.getFactory().getIdentifierGenerator(Employee.class.getName());
+        return (Long) generator.generate(session, new Employee());
+    }
+
+    @Override
+    public int[] updateAllIfOlder(List<Employee> employees) {
+        return counts(jdbcTemplate.batchUpdate(UPDATE_IF_OLDER, employees, employees.size(), (ps, employee) -> {
+            ps.setString(1, employee.getName());
+            ps.setInt(2, employee.getSalary());
+            ps.setString(3, employee.getDepartment());
+            ps.setLong(4, employee.getVersion());
+            ps.setLong(5, employee.getId());
+            ps.setLong(6, employee.getVersion());
+        }));
+    }
+
+    @Override
+    public void insertAll(Collection<Employee> employees) {
+        jdbcTemplate.batchUpdate(INSERT, employees, employees.size(), EmployeeRepositoryImpl::setMergeParameters);
+    }
+
+    @Override
+    public int[] removeAllUpToVersion(List<Employee> employees) {
+        return counts(jdbcTemplate.batchUpdate(DELETE_UP_TO_VERSION, employees, employees.size(), (ps, employee) -> {
+            ps.setLong(1, employee.getId());
+            ps.setLong(2, employee.getVersion());
+        }));
+    }
+
+    /**
+     * @return the row counts of the batches, one after the other
+     */
+    private static int[] counts(int[][] batches) {
+        int[] counts = new int[Arrays.stream(batches).mapToInt(batch -> batch.length).sum()];
+        int i = 0;
+        for (int[] batch : batches) {
+            for (int count : batch) {
+                counts[i++] = count;
+            }
+        }
+        return counts;
+    }
+
+    private static Predicate[] predicates(CriteriaBuilder cb, Root<Employee> root, EmployeeQuery query) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (query.getDepartment() != null) {
+            predicates.add(cb.equal(root.get("department"), query.getDepartment()));
+        }
+        if (query.getNamePrefix() != null) {
+            predicates.add(cb.like(root.get("name"), escapeLike(query.getNamePrefix()) + "%", '\\'));
+        }
+        if (query.getMinSalary() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(root.get("salary"), query.getMinSalary()));
+        }
+        if (query.getMaxSalary() != null) {
+            predicates.add(cb.lessThanOrEqualTo(root.get("salary"), query.getMaxSalary()));
+        }
+        if (query.getAfterId() != null) {
+            predicates.add(afterCursor(cb, root, query));
+        }
+        return predicates.toArray(new Predicate[0]);
+    }
+
+    /**
+     * Keyset condition: rows after (afterValue, afterId) in the sort order, the id breaks ties
+     */
+    @SuppressWarnings("unchecked")
+    private static Predicate afterCursor(CriteriaBuilder cb, Root<Employee> root, EmployeeQuery query) {
+        Path<Long> id = root.get("id");
+        Predicate afterId = query.isDescending() ? cb.lessThan(id, query.getAfterId()) : cb.greaterThan(id, query.getAfterId());
+        if ("id".equals(query.getSortField())) {
+            return afterId;
+        }
+        Path<Comparable<Object>> sortPath = root.get(query.getSortField());
+        Comparable<Object> value = (Comparable<Object>) query.getAfterValue();
+        Predicate afterValue = query.isDescending() ? cb.lessThan(sortPath, value) : cb.greaterThan(sortPath, value);
+        return cb.or(afterValue, cb.and(cb.equal(sortPath, value), afterId));
+    }
+
+    private static List<Order> orders(CriteriaBuilder cb, Root<Employee> root, EmployeeQuery query) {
+        List<Order> orders = new ArrayList<>(2);
+        if (!"id".equals(query.getSortField())) {
+            Path<Object> sortPath = root.get(query.getSortField());
+            orders.add(query.isDescending() ? cb.desc(sortPath) : cb.asc(sortPath));
+        }
+        orders.add(query.isDescending() ? cb.desc(root.get("id")) : cb.asc(root.get("id")));
+        return orders;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    static void setMergeParameters(PreparedStatement ps, Employee employee) throws SQLException {
+        ps.setLong(1, employee.getId());
+        ps.setString(2, employee.getName());
+        ps.setInt(3, employee.getSalary());
+        ps.setString(4, employee.getDepartment());
+        ps.setLong(5, employee.getVersion());
+    }
+
+    static Employee mapRow(ResultSet rs) throws SQLException {
+        Employee employee = new Employee();
+        employee.setId(rs.getLong("ID"));
+        employee.setName(rs.getString("EMPLOYEE_NAME"));
+        employee.setSalary(rs.getInt("EMPLOYEE_SALARY"));
+        employee.setDepartment(rs.getString("DEPARTMENT"));
+        employee.setVersion(rs.getLong("VERSION"));
+        return employee;
+    }
+}
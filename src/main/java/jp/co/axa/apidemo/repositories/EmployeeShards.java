@@ -0,0 +1,638 @@
+package jp.co.axa.apidemo.repositories;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jp.co.axa.apidemo.configs.ShardProperties;
+import jp.co.axa.apidemo.configs.ShardRoutingDataSource;
+import jp.co.axa.apidemo.entities.Employee;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Routing of the employee storage over the shards, enabled by app.employees.shards.enabled
+ * - every employee lives on the shard owning its id: the id ranges are kept in EMPLOYEE_SHARD_RANGE on shard 0,
+ *   initially shard i owns [i * SHARD_ID_RANGE, (i + 1) * SHARD_ID_RANGE), where its own sequence draws the new ids
+ * - a new employee is placed by the shard key (app.employees.shards.key), and takes an id of that shard's range
+ * - a call runs on one shard with {@link #on}, or on several in parallel with {@link #onShards}
+ * - {@link #move} hands an id range over to another shard; it is exclusive with the list reads and bulk writes,
+ *   which run under {@link #shared}, and with the single employee reads and writes of the moved ids only,
+ *   which run with {@link #onOwner}: the other ids are served meanwhile
+ * - a move runs in three ordered steps: copy the employees to the target, save the new ranges on shard 0
+ *   (the switch: the copies are orphans before it, the source rows after it), delete the source rows;
+ *   the shards are separate databases, so a crash or a failure between the last two steps leaves orphan rows,
+ *   which are deleted before anything lists the shards again: at startup in {@link #init}, otherwise by the next
+ *   {@link #shared} call, which retries the delete under the move lock
+ * The schema is created by Hibernate on shard 0 and copied to the others, in H2 SQL (SCRIPT, sequences): shards are H2
+ */
+@Component
+@ConditionalOnProperty(name = "app.employees.shards.enabled", havingValue = "true")
+@Log4j2
+public class EmployeeShards {
+
+    /**
+     * Ids each shard's sequence can draw, so a shard never draws the ids of another
+     */
+    public static final long SHARD_ID_RANGE = 1L << 40;
+
+    private static final String CREATE_RANGE_TABLE = "CREATE TABLE IF NOT EXISTS EMPLOYEE_SHARD_RANGE"
+            + " (FROM_ID BIGINT PRIMARY KEY, TO_ID BIGINT NOT NULL, SHARD INT NOT NULL)";
+
+    private static final String SELECT_SEQUENCE =
+            "SELECT CURRENT_VALUE, INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'EMPLOYEE_SEQ'";
+
+    private static final String SELECT_RANGE = "SELECT ID, EMPLOYEE_NAME, EMPLOYEE_SALARY, DEPARTMENT, VERSION FROM EMPLOYEE"
+            + " WHERE ID >= ? AND ID < ? ORDER BY ID";
+
+    private static final int COPY_BATCH = 1000;
+
+    /**
+     * Id range [fromId, toId) owned by a shard
+     */
+    @Getter
+    public static final class Range {
+
+        private final long fromId;
+
+        private final long toId;
+
+        private final int shard;
+
+        Range(long fromId, long toId, int shard) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.shard = shard;
+        }
+    }
+
+    /**
+     * Ids [fromId, toId) being moved
+     */
+    private static final class Move {
+
+        private final long fromId;
+
+        private final long toId;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Move(long fromId, long toId) {
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        private boolean covers(long id) {
+            return id >= fromId && id < toId;
+        }
+
+        private void await() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while ids [" + fromId + ", " + toId + ") are moved", e);
+            }
+        }
+    }
+
+    private final List<JdbcTemplate> jdbc = new ArrayList<>();
+
+    private final TransactionTemplate rangeTransaction;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final ShardProperties.Key key;
+
+    private final ExecutorService fanOut;
+
+    private final AtomicInteger nextPlacement = new AtomicInteger();
+
+    /**
+     * Held shared by the list reads and bulk writes, exclusively by the moves
+     */
+    private final ReentrantReadWriteLock moveLock = new ReentrantReadWriteLock();
+
+    /**
+     * Ids of the single employee reads and writes running, with their count
+     */
+    private final ConcurrentMap<Long, Integer> running = new ConcurrentHashMap<>();
+
+    /**
+     * Signalled by the last release of an id while a move runs, see {@link #awaitRunning}
+     */
+    private final ReentrantLock runningLock = new ReentrantLock();
+
+    private final Condition released = runningLock.newCondition();
+
+    /**
+     * Moved ranges still on their source shard (the range's shard) after a failed delete, see {@link #shared}
+     */
+    private final Queue<Range> orphans = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Range being moved, null when no move runs
+     */
+    private volatile Move moving;
+
+    /**
+     * Ranges by their first id, replaced as a whole by a move
+     */
+    private volatile NavigableMap<Long, Range> ranges = Collections.emptyNavigableMap();
+
+    /**
+     * @param entityManagerFactory also makes sure Hibernate created the schema on shard 0 before {@link #init}
+     */
+    @Autowired
+    public EmployeeShards(ShardRoutingDataSource dataSource, EntityManagerFactory entityManagerFactory, ShardProperties properties) {
+        for (HikariDataSource shard : dataSource.getShards()) {
+            jdbc.add(new JdbcTemplate(shard));
+        }
+        this.rangeTransaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource.getShards().get(0)));
+        this.entityManagerFactory = entityManagerFactory;
+        this.key = properties.getKey();
+        AtomicInteger threads = new AtomicInteger();
+        this.fanOut = Executors.newFixedThreadPool(properties.getFanOutThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "employee-shard-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Copy the schema to the new shards, give each shard's sequence its id range, load the range table
+     * and delete what a move interrupted by a crash left on the shards not owning it
+     */
+    @PostConstruct
+    public void init() {
+        List<String> schema = new ArrayList<>();
+        for (String statement : jdbc.get(0).queryForList("SCRIPT NODATA", String.class)) {
+            if (!statement.startsWith("--") && !statement.startsWith("CREATE USER") && !statement.contains("EMPLOYEE_SHARD_RANGE")) {
+                schema.add(statement);
+            }
+        }
+        for (int shard = 1; shard < count(); shard++) {
+            Integer tables = jdbc.get(shard).queryForObject(
+                    "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'EMPLOYEE'", Integer.class);
+            if (tables == null || tables == 0) {
+                jdbc.get(shard).batchUpdate(schema.toArray(new String[0]));
+            }
+            Map<String, Object> sequence = jdbc.get(shard).queryForMap(SELECT_SEQUENCE);
+            long base = shard * SHARD_ID_RANGE;
+            if (((Number) sequence.get("CURRENT_VALUE")).longValue() < base) {
+                // the pooled optimizer takes the first value as the top of its first block: ids start at base + 1
+                jdbc.get(shard).execute("ALTER SEQUENCE EMPLOYEE_SEQ RESTART WITH " + (base + ((Number) sequence.get("INCREMENT")).longValue()));
+            }
+        }
+
+        jdbc.get(0).execute(CREATE_RANGE_TABLE);
+        NavigableMap<Long, Range> loaded = new TreeMap<>();
+        jdbc.get(0).query("SELECT FROM_ID, TO_ID, SHARD FROM EMPLOYEE_SHARD_RANGE", rs -> {
+            loaded.put(rs.getLong(1), new Range(rs.getLong(1), rs.getLong(2), rs.getInt(3)));
+        });
+        for (Range range : loaded.values()) {
+            if (range.getShard() >= count()) {
+                throw new IllegalStateException("Ids [" + range.getFromId() + ", " + range.getToId() + ") are on shard "
+                        + range.getShard() + ", move them before lowering app.employees.shards.count");
+            }
+        }
+        boolean added = false;
+        for (int shard = 0; shard < count(); shard++) {
+            long base = shard * SHARD_ID_RANGE;
+            Map.Entry<Long, Range> covering = loaded.floorEntry(base);
+            if (covering == null || covering.getValue().getToId() <= base) {
+                loaded.put(base, new Range(base, base + SHARD_ID_RANGE, shard));
+                added = true;
+            }
+        }
+        if (added) {
+            saveRanges(loaded);
+        }
+        ranges = Collections.unmodifiableNavigableMap(loaded);
+
+        for (Range range : loaded.values()) {
+            for (int shard = 0; shard < count(); shard++) {
+                if (shard != range.getShard()) {
+                    deleteOrphans(new Range(range.getFromId(), range.getToId(), shard));
+                }
+            }
+        }
+        log.info("Employee shards ready: {} shards, {} id ranges", count(), loaded.size());
+    }
+
+    @PreDestroy
+    public void stop() {
+        fanOut.shutdown();
+    }
+
+    public int count() {
+        return jdbc.size();
+    }
+
+    /**
+     * @return id ranges in id order
+     */
+    public Collection<Range> ranges() {
+        return ranges.values();
+    }
+
+    /**
+     * Shard owning the id, shard 0 for ids outside every range (they do not exist)
+     */
+    public int shardOf(long id) {
+        Map.Entry<Long, Range> range = ranges.floorEntry(id);
+        return range == null || id >= range.getValue().getToId() ? 0 : range.getValue().getShard();
+    }
+
+    /**
+     * Shard a new employee is created on, by the shard key
+     */
+    public int placementOf(Employee employee) {
+        int hash = key == ShardProperties.Key.DEPARTMENT ? Objects.hashCode(employee.getDepartment()) : nextPlacement.getAndIncrement();
+        return Math.floorMod(hash, count());
+    }
+
+    /**
+     * Run the work on the calling thread with its connections taken from the shard
+     * The request's open-in-view EntityManager (holding the connection of the shard it used first) is set aside meanwhile
+     * @throws IllegalStateException inside a transaction, whose connection is already taken
+     */
+    public <T> T on(int shard, Supplier<T> work) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Cannot route to shard " + shard + " inside a transaction");
+        }
+        Object entityManager = TransactionSynchronizationManager.unbindResourceIfPossible(entityManagerFactory);
+        Integer previous = ShardRoutingDataSource.route(shard);
+        try {
+            return work.get();
+        } finally {
+            ShardRoutingDataSource.route(previous);
+            if (entityManager != null) {
+                TransactionSynchronizationManager.bindResource(entityManagerFactory, entityManager);
+            }
+        }
+    }
+
+    /**
+     * Run the work on every shard in parallel, see {@link #onShards}
+     * @return results by shard index
+     */
+    public <T> List<T> onEach(IntFunction<T> work) {
+        List<Integer> all = new ArrayList<>(count());
+        for (int shard = 0; shard < count(); shard++) {
+            all.add(shard);
+        }
+        Map<Integer, T> results = onShards(all, work);
+        List<T> ordered = new ArrayList<>(count());
+        for (int shard = 0; shard < count(); shard++) {
+            ordered.add(results.get(shard));
+        }
+        return ordered;
+    }
+
+    /**
+     * Run the work on each shard in parallel, on the fan-out threads, the calling thread taking the last shard
+     * Every part runs to its end, the first failure is then thrown
+     * @return results by shard
+     */
+    public <T> Map<Integer, T> onShards(Collection<Integer> shards, IntFunction<T> work) {
+        List<Integer> list = new ArrayList<>(shards);
+        Map<Integer, T> results = new HashMap<>();
+        if (list.isEmpty()) {
+            return results;
+        }
+        Map<Integer, Future<T>> futures = new HashMap<>();
+        for (int shard : list.subList(0, list.size() - 1)) {
+            futures.put(shard, fanOut.submit(() -> on(shard, () -> work.apply(shard))));
+        }
+        int last = list.get(list.size() - 1);
+        RuntimeException failure = null;
+        try {
+            results.put(last, on(last, () -> work.apply(last)));
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        for (Map.Entry<Integer, Future<T>> future : futures.entrySet()) {
+            try {
+                results.put(future.getKey(), future.getValue().get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                            : new IllegalStateException("Shard " + future.getKey() + " failed", e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for shard " + future.getKey(), e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * Run a single employee read or write on the shard owning the id, {@link #on}
+     * Waits while the id is being moved, the moves of other ids do not block it
+     */
+    public <T> T onOwner(long id, Supplier<T> work) {
+        while (true) {
+            // registered before looking at the move, which sets the move before looking at the registrations
+            running.merge(id, 1, Integer::sum);
+            Move move = moving;
+            if (move == null || !move.covers(id)) {
+                try {
+                    return on(shardOf(id), work);
+                } finally {
+                    release(id);
+                }
+            }
+            release(id);
+            move.await();
+        }
+    }
+
+    /**
+     * Run a list read or a bulk write, which a move must not interleave with
+     * The orphans a failed move left are deleted first, so the shards never list an employee twice
+     */
+    public <T> T shared(Supplier<T> work) {
+        if (!orphans.isEmpty()) {
+            deleteLeftOrphans();
+        }
+        moveLock.readLock().lock();
+        try {
+            return work.get();
+        } finally {
+            moveLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Employees on the shard, in the range
+     */
+    public long countEmployees(int shard, long fromId, long toId) {
+        Long count = jdbc.get(shard).queryForObject("SELECT COUNT(*) FROM EMPLOYEE WHERE ID >= ? AND ID < ?", Long.class, fromId, toId);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Id of the employee after the first n of the shard in the range, in id order
+     * @return null when there are n employees or less
+     */
+    public Long idAfter(int shard, long fromId, long toId, long n) {
+        List<Long> ids = jdbc.get(shard).queryForList("SELECT ID FROM EMPLOYEE WHERE ID >= ? AND ID < ? ORDER BY ID LIMIT 1 OFFSET ?",
+                Long.class, fromId, toId, n);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    /**
+     * End of the part of a range which can be moved: the ids its sequence can still hand out stay with the shard drawing them
+     */
+    public long movableTo(Range range) {
+        long drawing = range.getFromId() / SHARD_ID_RANGE;
+        if (drawing >= count()) {
+            return range.getToId();
+        }
+        Map<String, Object> sequence = jdbc.get((int) drawing).queryForMap(SELECT_SEQUENCE);
+        // first id of the block the pooled optimizer may still be handing out
+        long floor = ((Number) sequence.get("CURRENT_VALUE")).longValue() - ((Number) sequence.get("INCREMENT")).longValue() + 1;
+        return Math.max(range.getFromId(), Math.min(range.getToId(), floor));
+    }
+
+    /**
+     * Hand the ids [fromId, toId) over to the target shard: copy its employees, switch the range, delete them from the source
+     * Waits for the running list reads, bulk writes and single employee operations on the ids, and blocks new ones until done
+     * @return number of employees moved
+     * @throws IllegalArgumentException the ids are not within one range of another shard, or can still be handed out
+     * @throws IllegalStateException the writes did not stop within 5 seconds
+     */
+    public long move(long fromId, long toId, int target) {
+        if (target < 0 || target >= count()) {
+            throw new IllegalArgumentException("No shard " + target);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        try {
+            if (!moveLock.writeLock().tryLock(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Writes did not stop within 5 seconds, no move");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted before the move", e);
+        }
+        Move move = new Move(fromId, toId);
+        moving = move;
+        try {
+            awaitRunning(move, deadline);
+            // before the ranges change again: a left orphan range could become owned by its shard
+            deleteLeftOrphans();
+            Map.Entry<Long, Range> entry = ranges.floorEntry(fromId);
+            if (fromId >= toId || entry == null || toId > entry.getValue().getToId()) {
+                throw new IllegalArgumentException("[" + fromId + ", " + toId + ") is not within one id range");
+            }
+            Range range = entry.getValue();
+            if (range.getShard() == target) {
+                throw new IllegalArgumentException("[" + fromId + ", " + toId + ") is already on shard " + target);
+            }
+            if (toId > movableTo(range)) {
+                throw new IllegalArgumentException("Ids below " + toId + " can still be handed out by their sequence");
+            }
+
+            long moved;
+            try {
+                moved = copy(range.getShard(), target, fromId, toId);
+            } catch (RuntimeException e) {
+                orphans.add(new Range(fromId, toId, target));
+                throw e;
+            }
+
+            NavigableMap<Long, Range> updated = new TreeMap<>(ranges);
+            updated.remove(range.getFromId());
+            if (range.getFromId() < fromId) {
+                updated.put(range.getFromId(), new Range(range.getFromId(), fromId, range.getShard()));
+            }
+            updated.put(fromId, new Range(fromId, toId, target));
+            if (toId < range.getToId()) {
+                updated.put(toId, new Range(toId, range.getToId(), range.getShard()));
+            }
+            updated = coalesce(updated);
+            try {
+                saveRanges(updated);
+            } catch (RuntimeException e) {
+                // not switched, the copies are the orphans
+                orphans.add(new Range(fromId, toId, target));
+                throw e;
+            }
+            ranges = Collections.unmodifiableNavigableMap(updated);
+
+            Range source = new Range(fromId, toId, range.getShard());
+            try {
+                deleteOrphans(source);
+            } catch (RuntimeException e) {
+                // the move is done, the next list read or bulk write deletes them before it runs
+                orphans.add(source);
+                log.error("Employees of [{}, {}) left on shard {} after their move, deleted before the next list read",
+                        fromId, toId, range.getShard(), e);
+            }
+            log.info("Moved {} employees of [{}, {}) from shard {} to shard {}", moved, fromId, toId, range.getShard(), target);
+            return moved;
+        } finally {
+            moving = null;
+            move.done.countDown();
+            moveLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Unregister an operation on the id, the last one signals a move of the id waiting for it
+     */
+    private void release(long id) {
+        boolean last = running.computeIfPresent(id, (key, count) -> count == 1 ? null : count - 1) == null;
+        Move move = moving;
+        if (last && move != null && move.covers(id)) {
+            runningLock.lock();
+            try {
+                released.signalAll();
+            } finally {
+                runningLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Wait until no single employee operation on the moved ids runs, the new ones wait for the move
+     * The registrations are looked at again only when the last operation of a moved id is released
+     */
+    private void awaitRunning(Move move, long deadline) {
+        runningLock.lock();
+        try {
+            while (running.keySet().stream().anyMatch(move::covers)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new IllegalStateException("Writes did not stop within 5 seconds, no move");
+                }
+                released.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted before the move", e);
+        } finally {
+            runningLock.unlock();
+        }
+    }
+
+    /**
+     * Delete the employees of the range from its shard, which no longer owns them
+     */
+    private void deleteOrphans(Range range) {
+        int deleted = jdbc.get(range.getShard()).update("DELETE FROM EMPLOYEE WHERE ID >= ? AND ID < ?", range.getFromId(), range.getToId());
+        if (deleted > 0) {
+            log.info("Deleted {} employees of [{}, {}) from shard {}, which no longer owns them",
+                    deleted, range.getFromId(), range.getToId(), range.getShard());
+        }
+    }
+
+    /**
+     * Delete the orphans failed moves left, under the move lock so no list read sees them meanwhile
+     * @throws RuntimeException the delete failed again, the caller does not run
+     */
+    private void deleteLeftOrphans() {
+        moveLock.writeLock().lock();
+        try {
+            Range range;
+            while ((range = orphans.peek()) != null) {
+                deleteOrphans(range);
+                orphans.poll();
+            }
+        } finally {
+            moveLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copy the employees of the range in batches, as they are (id and version kept)
+     */
+    private long copy(int source, int target, long fromId, long toId) {
+        List<Employee> batch = new ArrayList<>(COPY_BATCH);
+        long[] copied = {0};
+        jdbc.get(source).query(SELECT_RANGE, rs -> {
+            batch.add(EmployeeRepositoryImpl.mapRow(rs));
+            if (batch.size() == COPY_BATCH) {
+                copied[0] += merge(target, batch);
+                batch.clear();
+            }
+        }, fromId, toId);
+        return copied[0] + merge(target, batch);
+    }
+
+    private int merge(int target, List<Employee> employees) {
+        jdbc.get(target).batchUpdate(EmployeeRepositoryImpl.MERGE_BY_ID, employees, COPY_BATCH, EmployeeRepositoryImpl::setMergeParameters);
+        return employees.size();
+    }
+
+    private static NavigableMap<Long, Range> coalesce(NavigableMap<Long, Range> ranges) {
+        NavigableMap<Long, Range> merged = new TreeMap<>();
+        Range open = null;
+        for (Range range : ranges.values()) {
+            if (open != null && open.getShard() == range.getShard() && open.getToId() == range.getFromId()) {
+                open = new Range(open.getFromId(), range.getToId(), open.getShard());
+            } else {
+                if (open != null) {
+                    merged.put(open.getFromId(), open);
+                }
+                open = range;
+            }
+        }
+        if (open != null) {
+            merged.put(open.getFromId(), open);
+        }
+        return merged;
+    }
+
+    private void saveRanges(NavigableMap<Long, Range> ranges) {
+        List<Object[]> rows = new ArrayList<>(ranges.size());
+        for (Range range : ranges.values()) {
+            rows.add(new Object[]{range.getFromId(), range.getToId(), range.getShard()});
+        }
+        rangeTransaction.execute(status -> {
+            jdbc.get(0).update("DELETE FROM EMPLOYEE_SHARD_RANGE");
+            return jdbc.get(0).batchUpdate("INSERT INTO EMPLOYEE_SHARD_RANGE (FROM_ID, TO_ID, SHARD) VALUES (?, ?, ?)", rows);
+        });
+    }
+}
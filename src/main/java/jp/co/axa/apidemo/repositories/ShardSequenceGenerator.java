@@ -0,0 +1,48 @@
+package jp.co.axa.apidemo.repositories;
+
+import jp.co.axa.apidemo.configs.ShardRoutingDataSource;
+import org.hibernate.MappingException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.OptimizerFactory;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sequence generator keeping one optimizer (block of pooled ids) per shard
+ * Each shard has its own sequence, in its own id range (see {@link EmployeeShards}); a single optimizer would hand out
+ * the ids of a block drawn on one shard to inserts on the others
+ * Without a routed shard, e.g. when sharding is off, it is the plain sequence generator
+ */
+public class ShardSequenceGenerator extends SequenceStyleGenerator {
+
+    private final Map<Integer, Optimizer> shardOptimizers = new ConcurrentHashMap<>();
+
+    private String optimizationStrategy;
+
+    private int initialValue;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        super.configure(type, params, serviceRegistry);
+        initialValue = determineInitialValue(params);
+        optimizationStrategy = determineOptimizationStrategy(params, getDatabaseStructure().getIncrementSize());
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        Integer shard = ShardRoutingDataSource.currentShard();
+        if (shard == null) {
+            return super.generate(session, object);
+        }
+        Optimizer optimizer = shardOptimizers.computeIfAbsent(shard, key -> OptimizerFactory.buildOptimizer(
+                optimizationStrategy, getIdentifierType().getReturnedClass(), getDatabaseStructure().getIncrementSize(), initialValue));
+        return optimizer.generate(getDatabaseStructure().buildCallback(session));
+    }
+}
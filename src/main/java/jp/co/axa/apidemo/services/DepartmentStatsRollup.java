@@ -0,0 +1,204 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.dto.DepartmentStats;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.events.EmployeeChangeEvent;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory salary rollup by department
+ * Built from the table at startup, then updated by every committed employee change,
+ * so reading the stats never scans employees
+ * The after-commit listeners of concurrent transactions may run out of commit order: a change only replaces
+ * an older version of its employee, and a deleted id ignores late updates, see {@link EmployeeTombstones}
+ */
+@Service
+@Log4j2
+public class DepartmentStatsRollup {
+
+    private final EmployeeRepository employeeRepository;
+
+    private final EmployeeTombstones tombstones;
+
+    /**
+     * Department, salary and version of each employee, to undo its previous contribution on update / delete
+     */
+    private Map<Long, Contribution> contributions = new HashMap<>();
+
+    private Map<String, Aggregate> aggregates = new TreeMap<>();
+
+    @Autowired
+    public DepartmentStatsRollup(EmployeeRepository employeeRepository,
+                                 @Value("${app.employees.tombstone-ms:60000}") long tombstoneMs) {
+        this.employeeRepository = employeeRepository;
+        this.tombstones = new EmployeeTombstones(tombstoneMs);
+    }
+
+    /**
+     * Rebuild the rollup from the table, before the web server accepts requests
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void rebuild() {
+        Map<Long, Contribution> newContributions = new HashMap<>();
+        Map<String, Aggregate> newAggregates = new TreeMap<>();
+        employeeRepository.forEachEmployee(employee -> add(newContributions, newAggregates, employee));
+        synchronized (this) {
+            contributions = newContributions;
+            aggregates = newAggregates;
+        }
+        log.info("Department stats rebuilt from {} employees", newContributions.size());
+    }
+
+    /**
+     * Apply a committed employee change, unless the rollup already holds a newer one
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onEmployeeChange(EmployeeChangeEvent event) {
+        long now = System.currentTimeMillis();
+        long id = event.getEmployeeId();
+        if (event.getType() == EmployeeChangeEvent.Type.DELETED) {
+            remove(id);
+            tombstones.add(id, now);
+        } else if (!tombstones.contains(id, now) && event.versionOrZero() > version(id)) {
+            remove(id);
+            add(contributions, aggregates, event.getEmployee());
+        }
+    }
+
+    /**
+     * @return stats of every department, ordered by department name
+     */
+    public synchronized List<DepartmentStats> getStats() {
+        List<DepartmentStats> stats = new ArrayList<>(aggregates.size());
+        for (Aggregate aggregate : aggregates.values()) {
+            stats.add(aggregate.snapshot());
+        }
+        return stats;
+    }
+
+    /**
+     * @return stats of one department, null when it has no employee
+     */
+    public synchronized DepartmentStats getStats(String department) {
+        Aggregate aggregate = aggregates.get(department);
+        return aggregate == null ? null : aggregate.snapshot();
+    }
+
+    /**
+     * An employee without department or salary is counted nowhere, its version is still kept
+     */
+    private static void add(Map<Long, Contribution> contributions, Map<String, Aggregate> aggregates, Employee employee) {
+        long version = employee.getVersion() == null ? 0L : employee.getVersion();
+        contributions.put(employee.getId(), new Contribution(employee.getDepartment(), employee.getSalary(), version));
+        if (employee.getDepartment() != null && employee.getSalary() != null) {
+            aggregates.computeIfAbsent(employee.getDepartment(), Aggregate::new).add(employee.getSalary());
+        }
+    }
+
+    /**
+     * @return the version of the employee, -1 when not present
+     */
+    private long version(long employeeId) {
+        Contribution contribution = contributions.get(employeeId);
+        return contribution == null ? -1L : contribution.version;
+    }
+
+    private void remove(long employeeId) {
+        Contribution previous = contributions.remove(employeeId);
+        if (previous == null || previous.department == null || previous.salary == null) {
+            return;
+        }
+        Aggregate aggregate = aggregates.get(previous.department);
+        aggregate.remove(previous.salary);
+        if (aggregate.headcount == 0) {
+            aggregates.remove(previous.department);
+        }
+    }
+
+    private static final class Contribution {
+
+        private final String department;
+
+        private final Integer salary;
+
+        private final long version;
+
+        private Contribution(String department, Integer salary, long version) {
+            this.department = department;
+            this.salary = salary;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Running totals of one department, plus its salary histogram for min / max / percentiles
+     * The stats are computed again only after a change
+     */
+    private static final class Aggregate {
+
+        private final String department;
+
+        private final TreeMap<Integer, Integer> salaryCounts = new TreeMap<>();
+
+        private long headcount;
+
+        private long totalSalary;
+
+        private DepartmentStats snapshot;
+
+        private Aggregate(String department) {
+            this.department = department;
+        }
+
+        private void add(int salary) {
+            salaryCounts.merge(salary, 1, Integer::sum);
+            headcount++;
+            totalSalary += salary;
+            snapshot = null;
+        }
+
+        private void remove(int salary) {
+            salaryCounts.computeIfPresent(salary, (key, count) -> count == 1 ? null : count - 1);
+            headcount--;
+            totalSalary -= salary;
+            snapshot = null;
+        }
+
+        private DepartmentStats snapshot() {
+            if (snapshot == null) {
+                snapshot = new DepartmentStats(department, headcount, totalSalary,
+                        salaryCounts.firstKey(), salaryCounts.lastKey(),
+                        percentile(50), percentile(90), percentile(99));
+            }
+            return snapshot;
+        }
+
+        /**
+         * Nearest-rank percentile
+         */
+        private int percentile(int percent) {
+            long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * headcount));
+            long seen = 0;
+            for (Map.Entry<Integer, Integer> entry : salaryCounts.entrySet()) {
+                seen += entry.getValue();
+                if (seen >= rank) {
+                    return entry.getKey();
+                }
+            }
+            return salaryCounts.lastKey();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.configs.NamedCacheLoader;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.repositories.EmployeeShards;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reload entries of the "employees" cache when refresh-after-write is configured, as read models (see EmployeeView)
+ * from the shard owning the employee when sharded
+ */
+@Component
+public class EmployeeCacheLoader implements NamedCacheLoader {
+
+    private final EmployeeRepository employeeRepository;
+
+    private final ObjectProvider<EmployeeShards> shards;
+
+    @Autowired
+    public EmployeeCacheLoader(EmployeeRepository employeeRepository, ObjectProvider<EmployeeShards> shards) {
+        this.employeeRepository = employeeRepository;
+        this.shards = shards;
+    }
+
+    @Override
+    public String cacheName() {
+        return EmployeeServiceImpl.EMPLOYEES_CACHE;
+    }
+
+    @Override
+    public Object load(Object key) {
+        Long id = (Long) key;
+        EmployeeShards employeeShards = shards.getIfAvailable();
+        if (employeeShards == null) {
+            return employeeRepository.findById(id).map(EmployeeView::of).orElse(null);
+        }
+        // not during a move, which would make the employee missing from both shards for a moment
+        return employeeShards.onOwner(id, () -> employeeRepository.findById(id).map(EmployeeView::of).orElse(null));
+    }
+}
@@ -0,0 +1,332 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.dto.EmployeeChange;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.events.EmployeeChangeEvent;
+import jp.co.axa.apidemo.exception.ChangeStreamGapException;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ordered stream of the committed employee changes, numbered from 1, for consumers which sync incrementally
+ * The latest changes are kept in a ring buffer of app.employees.changes.capacity entries (in memory, lost on restart),
+ * a read after an overwritten sequence fails with {@link ChangeStreamGapException}
+ * Sequences follow the order the after-commit listeners run in: two transactions committing at the same time may be
+ * numbered in either order, so a consumer keeps the highest employee version it has seen and drops an older state;
+ * a delete carries the last version of the employee and supersedes every state up to it
+ * One dispatcher thread moves the new changes into a bounded queue per subscriber, each subscriber is sent its queue
+ * on a sender thread of its own: a slow consumer never holds up the writes or the other consumers,
+ * it is ended with a gap once its queue is full
+ */
+@Service
+@Log4j2
+public class EmployeeChangeStream {
+
+    /**
+     * Consumer of the stream, see {@link #subscribe(long, ChangeSubscriber)}
+     */
+    public interface ChangeSubscriber {
+
+        /**
+         * @param changes the next changes in sequence order, empty on a heartbeat
+         * @return false to end the subscription
+         * @throws IOException the consumer is gone, ends the subscription
+         */
+        boolean onChanges(List<EmployeeChange> changes) throws IOException;
+
+        /**
+         * The next changes were overwritten before they could be delivered, the subscription is ended
+         */
+        void onGap(ChangeStreamGapException gap);
+    }
+
+    /**
+     * Subscription of one consumer, with its queue of changes not yet sent
+     */
+    public final class Subscription {
+
+        private final ChangeSubscriber subscriber;
+
+        private final BlockingQueue<EmployeeChange> queue;
+
+        /**
+         * Last sequence queued, dispatcher thread only
+         */
+        private long cursor;
+
+        /**
+         * Last sequence given to the consumer, sender thread only
+         */
+        private volatile long delivered;
+
+        private volatile boolean heartbeat;
+
+        /**
+         * The queue overflowed or the ring overwrote the next changes: the consumer is sent a gap and nothing more
+         */
+        private volatile boolean behind;
+
+        /**
+         * A sender thread is draining the queue
+         */
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private Subscription(ChangeSubscriber subscriber, long cursor) {
+            this.subscriber = subscriber;
+            this.queue = new ArrayBlockingQueue<>(subscriberBuffer);
+            this.cursor = cursor;
+            this.delivered = cursor;
+        }
+
+        public void cancel() {
+            subscriptions.remove(this);
+        }
+
+        private boolean hasWork() {
+            return behind || heartbeat || !queue.isEmpty();
+        }
+    }
+
+    private final int capacity;
+
+    private final int maxBatch;
+
+    private final long heartbeatMs;
+
+    private final int subscriberBuffer;
+
+    /**
+     * Change of sequence s at s % capacity, guarded by this
+     */
+    private final EmployeeChange[] ring;
+
+    private long latest;
+
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+
+    private final ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "employee-change-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * One thread per consumer being sent to, a consumer blocked on its socket only holds its own
+     */
+    private final ExecutorService senders = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger threads = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "employee-change-sender-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    @Autowired
+    public EmployeeChangeStream(@Value("${app.employees.changes.capacity:10000}") int capacity,
+                                @Value("${app.employees.changes.max-batch:500}") int maxBatch,
+                                @Value("${app.employees.changes.heartbeat-ms:15000}") long heartbeatMs,
+                                @Value("${app.employees.changes.subscriber-buffer:1000}") int subscriberBuffer) {
+        if (capacity < 1 || maxBatch < 1 || subscriberBuffer < 1) {
+            throw new IllegalArgumentException("app.employees.changes.capacity, max-batch and subscriber-buffer must be positive");
+        }
+        this.capacity = capacity;
+        this.maxBatch = maxBatch;
+        this.heartbeatMs = heartbeatMs;
+        this.subscriberBuffer = subscriberBuffer;
+        this.ring = new EmployeeChange[capacity];
+    }
+
+    @PostConstruct
+    public void start() {
+        dispatcher.scheduleWithFixedDelay(() -> dispatch(true), heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    /**
+     * Append a committed employee change and wake the subscribers
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeeChange(EmployeeChangeEvent event) {
+        // an immutable snapshot: the entity may still be changed by the caller
+        EmployeeView employee = event.getEmployee() == null ? null : EmployeeView.of(event.getEmployee());
+        synchronized (this) {
+            latest++;
+            ring[(int) (latest % capacity)] = new EmployeeChange(latest, event.getType(), event.getEmployeeId(),
+                    event.getVersion(), System.currentTimeMillis(), employee);
+        }
+        if (dispatchScheduled.compareAndSet(false, true)) {
+            dispatcher.execute(() -> dispatch(false));
+        }
+    }
+
+    public synchronized long latest() {
+        return latest;
+    }
+
+    /**
+     * @return the oldest retained sequence, latest + 1 when the stream is empty
+     */
+    public synchronized long oldest() {
+        return Math.max(1, latest - capacity + 1);
+    }
+
+    /**
+     * @param after last sequence already seen, 0 for the start of the stream
+     * @param limit max number of changes
+     * @return the changes following after, in sequence order
+     * @throws ChangeStreamGapException when some of them are not retained, or after is beyond the latest sequence
+     */
+    public synchronized List<EmployeeChange> read(long after, int limit) {
+        long oldest = oldest();
+        if (after < oldest - 1 || after > latest) {
+            throw new ChangeStreamGapException(after, oldest, latest);
+        }
+        int count = (int) Math.min(limit, latest - after);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<EmployeeChange> changes = new ArrayList<>(count);
+        for (long sequence = after + 1; sequence <= after + count; sequence++) {
+            changes.add(ring[(int) (sequence % capacity)]);
+        }
+        return changes;
+    }
+
+    /**
+     * Deliver the changes following after to the subscriber, then every new change, on a sender thread
+     * An idle subscriber is given an empty list every app.employees.changes.heartbeat-ms; one more than
+     * app.employees.changes.subscriber-buffer changes behind is ended with a gap
+     */
+    public Subscription subscribe(long after, ChangeSubscriber subscriber) {
+        Subscription subscription = new Subscription(subscriber, after);
+        subscriptions.add(subscription);
+        dispatcher.execute(() -> enqueue(subscription, false));
+        return subscription;
+    }
+
+    public int subscriberCount() {
+        return subscriptions.size();
+    }
+
+    private void dispatch(boolean heartbeat) {
+        dispatchScheduled.set(false);
+        for (Subscription subscription : subscriptions) {
+            enqueue(subscription, heartbeat);
+        }
+    }
+
+    /**
+     * Queue the new changes of one subscription, on the dispatcher thread, and have them sent
+     * Never blocks: a full queue marks the subscription behind instead
+     */
+    private void enqueue(Subscription subscription, boolean heartbeat) {
+        if (!subscriptions.contains(subscription)) {
+            return;
+        }
+        if (!fill(subscription)) {
+            subscription.behind = true;
+            subscription.cancel();
+        } else if (heartbeat) {
+            subscription.heartbeat = true;
+        }
+        if (subscription.hasWork() && subscription.sending.compareAndSet(false, true)) {
+            senders.execute(() -> send(subscription));
+        }
+    }
+
+    /**
+     * @return false when the changes to queue do not fit, or are no longer in the ring
+     */
+    private boolean fill(Subscription subscription) {
+        try {
+            List<EmployeeChange> changes;
+            do {
+                changes = read(subscription.cursor, maxBatch);
+                for (EmployeeChange change : changes) {
+                    if (!subscription.queue.offer(change)) {
+                        return false;
+                    }
+                    subscription.cursor = change.getSequence();
+                }
+            } while (changes.size() == maxBatch);
+            return true;
+        } catch (ChangeStreamGapException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Send the queue of one subscription to its consumer, on a sender thread, until it is empty
+     * Ends the subscription when its consumer is gone or behind
+     */
+    private void send(Subscription subscription) {
+        try {
+            do {
+                while (true) {
+                    if (subscription.behind) {
+                        subscription.queue.clear();
+                        subscription.subscriber.onGap(new ChangeStreamGapException(subscription.delivered, oldest(), latest()));
+                        return;
+                    }
+                    if (!subscriptions.contains(subscription)) {
+                        return;
+                    }
+                    // a new list each time: the consumer may keep it
+                    List<EmployeeChange> changes = new ArrayList<>(Math.min(subscription.queue.size(), maxBatch));
+                    subscription.queue.drainTo(changes, maxBatch);
+                    boolean heartbeat = subscription.heartbeat;
+                    subscription.heartbeat = false;
+                    if (changes.isEmpty() && !heartbeat) {
+                        break;
+                    }
+                    if (!subscription.subscriber.onChanges(changes)) {
+                        subscription.cancel();
+                        return;
+                    }
+                    if (!changes.isEmpty()) {
+                        subscription.delivered = changes.get(changes.size() - 1).getSequence();
+                    }
+                }
+                subscription.sending.set(false);
+                // work queued between the last drain and the release is sent by whoever takes the flag first
+            } while (subscription.hasWork() && subscription.sending.compareAndSet(false, true));
+        } catch (IOException e) {
+            subscription.cancel();
+            log.debug("Change stream consumer gone: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            subscription.cancel();
+            log.warn("Change stream consumer failed, unsubscribed", e);
+        }
+    }
+}
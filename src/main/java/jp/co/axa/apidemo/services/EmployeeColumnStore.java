@@ -0,0 +1,299 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.entities.Employee;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Employees packed off-heap, for {@link EmployeeReadReplica}
+ * One fixed-width row per employee in a direct buffer, names as UTF-8 in a second direct buffer,
+ * departments as codes of a small dictionary
+ * On heap only primitive arrays: id to row index, and the ids sorted for keyset pages
+ * A lookup is not allocation free: it returns a new immutable {@link EmployeeView}, with its name decoded
+ * from the UTF-8 bytes (one byte[] and one String) and its boxed id, salary and version; the department is shared
+ * Not thread safe: a write needs exclusive access, reads may run concurrently (nothing shared is mutated by a read)
+ */
+final class EmployeeColumnStore {
+
+    // row layout: id, version, salary, department code, name offset, name length
+    private static final int ID = 0;
+    private static final int VERSION = 8;
+    private static final int SALARY = 16;
+    private static final int DEPARTMENT = 20;
+    private static final int NAME_OFFSET = 24;
+    private static final int NAME_LENGTH = 28;
+    private static final int ROW_BYTES = 32;
+
+    private static final int AVERAGE_NAME_BYTES = 16;
+
+    private final LongIntHashMap rowById;
+
+    private ByteBuffer rows;
+
+    private int rowCount;
+
+    private int[] freeRows = new int[16];
+
+    private int freeRowCount;
+
+    private ByteBuffer names;
+
+    private int namesEnd;
+
+    /**
+     * bytes of names which were replaced or deleted, reclaimed by compaction
+     */
+    private int deadNameBytes;
+
+    /**
+     * ids in ascending order, deleted ones stay until compaction and are skipped by pages
+     */
+    private long[] sortedIds;
+
+    private int sortedCount;
+
+    private int deadIds;
+
+    private final List<String> departments = new ArrayList<>();
+
+    private final Map<String, Integer> departmentCodes = new HashMap<>();
+
+    EmployeeColumnStore(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        rowById = new LongIntHashMap(capacity);
+        rows = ByteBuffer.allocateDirect(capacity * ROW_BYTES);
+        names = ByteBuffer.allocateDirect(capacity * AVERAGE_NAME_BYTES);
+        sortedIds = new long[capacity];
+    }
+
+    int size() {
+        return rowById.size();
+    }
+
+    /**
+     * @return bytes held off-heap
+     */
+    long offHeapBytes() {
+        return (long) rows.capacity() + names.capacity();
+    }
+
+    /**
+     * Insert or replace an employee
+     */
+    void put(Employee employee) {
+        long id = employee.getId();
+        int row = rowById.get(id);
+        if (row == LongIntHashMap.MISSING) {
+            row = allocateRow();
+            rowById.put(id, row);
+            insertSortedId(id);
+        } else {
+            deadNameBytes += rows.getInt(row * ROW_BYTES + NAME_LENGTH);
+        }
+
+        byte[] name = employee.getName().getBytes(StandardCharsets.UTF_8);
+        int nameOffset = appendName(name);
+        int base = row * ROW_BYTES;
+        rows.putLong(base + ID, id);
+        rows.putLong(base + VERSION, employee.getVersion() == null ? 0L : employee.getVersion());
+        rows.putInt(base + SALARY, employee.getSalary());
+        rows.putInt(base + DEPARTMENT, departmentCode(employee.getDepartment()));
+        rows.putInt(base + NAME_OFFSET, nameOffset);
+        rows.putInt(base + NAME_LENGTH, name.length);
+    }
+
+    /**
+     * @return true: removed, false: not present
+     */
+    boolean remove(long id) {
+        int row = rowById.remove(id);
+        if (row == LongIntHashMap.MISSING) {
+            return false;
+        }
+        deadNameBytes += rows.getInt(row * ROW_BYTES + NAME_LENGTH);
+        if (freeRowCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeRows.length * 2);
+        }
+        freeRows[freeRowCount++] = row;
+        deadIds++;
+        if (deadIds > 1024 && deadIds > sortedCount / 4) {
+            compactSortedIds();
+        }
+        return true;
+    }
+
+    /**
+     * @return the version of the employee, -1 when not present
+     */
+    long version(long id) {
+        int row = rowById.get(id);
+        return row == LongIntHashMap.MISSING ? -1L : rows.getLong(row * ROW_BYTES + VERSION);
+    }
+
+    /**
+     * @return the employee, null when not present
+     */
+    EmployeeView get(long id) {
+        int row = rowById.get(id);
+        return row == LongIntHashMap.MISSING ? null : read(row);
+    }
+
+    /**
+     * @param afterId only employees with a greater id are returned
+     * @param size max number of employees
+     * @return employees ordered by id
+     */
+    List<EmployeeView> page(long afterId, int size) {
+        List<EmployeeView> page = new ArrayList<>(Math.min(size, rowById.size()));
+        for (int i = upperBound(afterId); i < sortedCount && page.size() < size; i++) {
+            int row = rowById.get(sortedIds[i]);
+            if (row != LongIntHashMap.MISSING) {
+                page.add(read(row));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * the name is copied with absolute gets, without a duplicate of the names buffer
+     */
+    private EmployeeView read(int row) {
+        int base = row * ROW_BYTES;
+        int nameOffset = rows.getInt(base + NAME_OFFSET);
+        byte[] name = new byte[rows.getInt(base + NAME_LENGTH)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = names.get(nameOffset + i);
+        }
+
+        return new EmployeeView(rows.getLong(base + ID), new String(name, StandardCharsets.UTF_8),
+                rows.getInt(base + SALARY), departments.get(rows.getInt(base + DEPARTMENT)), rows.getLong(base + VERSION));
+    }
+
+    private int allocateRow() {
+        if (freeRowCount > 0) {
+            return freeRows[--freeRowCount];
+        }
+        if ((rowCount + 1) * ROW_BYTES > rows.capacity()) {
+            rows = grow(rows, rows.capacity() * 2);
+        }
+        return rowCount++;
+    }
+
+    private int appendName(byte[] name) {
+        if (namesEnd + name.length > names.capacity()) {
+            if (deadNameBytes > namesEnd / 2) {
+                compactNames();
+            }
+            if (namesEnd + name.length > names.capacity()) {
+                names = grow(names, Math.max(names.capacity() * 2, namesEnd + name.length));
+            }
+        }
+        int offset = namesEnd;
+        ByteBuffer target = names.duplicate();
+        target.position(offset);
+        target.put(name);
+        namesEnd += name.length;
+        return offset;
+    }
+
+    /**
+     * Copy the names of the live rows into a new buffer, dropping replaced / deleted ones
+     */
+    private void compactNames() {
+        ByteBuffer compacted = ByteBuffer.allocateDirect(names.capacity());
+        for (int i = 0; i < sortedCount; i++) {
+            int row = rowById.get(sortedIds[i]);
+            if (row == LongIntHashMap.MISSING) {
+                continue;
+            }
+            int base = row * ROW_BYTES;
+            int offset = rows.getInt(base + NAME_OFFSET);
+            int length = rows.getInt(base + NAME_LENGTH);
+            ByteBuffer name = names.duplicate();
+            name.limit(offset + length);
+            name.position(offset);
+            rows.putInt(base + NAME_OFFSET, compacted.position());
+            compacted.put(name);
+        }
+        namesEnd = compacted.position();
+        names = compacted;
+        deadNameBytes = 0;
+    }
+
+    private void insertSortedId(long id) {
+        if (sortedCount == 0 || id > sortedIds[sortedCount - 1]) {
+            if (sortedCount == sortedIds.length) {
+                sortedIds = Arrays.copyOf(sortedIds, sortedIds.length * 2);
+            }
+            sortedIds[sortedCount++] = id;
+            return;
+        }
+        int index = Arrays.binarySearch(sortedIds, 0, sortedCount, id);
+        if (index >= 0) {
+            // deleted then inserted again, the id is still in place
+            deadIds--;
+            return;
+        }
+        index = -index - 1;
+        if (sortedCount == sortedIds.length) {
+            sortedIds = Arrays.copyOf(sortedIds, sortedIds.length * 2);
+        }
+        System.arraycopy(sortedIds, index, sortedIds, index + 1, sortedCount - index);
+        sortedIds[index] = id;
+        sortedCount++;
+    }
+
+    private void compactSortedIds() {
+        int kept = 0;
+        for (int i = 0; i < sortedCount; i++) {
+            if (rowById.get(sortedIds[i]) != LongIntHashMap.MISSING) {
+                sortedIds[kept++] = sortedIds[i];
+            }
+        }
+        sortedCount = kept;
+        deadIds = 0;
+    }
+
+    /**
+     * index of the first id greater than afterId
+     */
+    private int upperBound(long afterId) {
+        int low = 0;
+        int high = sortedCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedIds[middle] <= afterId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int departmentCode(String department) {
+        Integer code = departmentCodes.get(department);
+        if (code == null) {
+            code = departments.size();
+            departments.add(department);
+            departmentCodes.put(department, code);
+        }
+        return code;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+        ByteBuffer source = buffer.duplicate();
+        source.clear();
+        grown.put(source);
+        grown.clear();
+        return grown;
+    }
+}
@@ -0,0 +1,323 @@
+package jp.co.axa.apidemo.services;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.entities.Employee;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Append-only journal of the employee writes acknowledged but not yet applied to the table
+ * One JSON line per write, forced to disk before the write is acknowledged when fsync is on
+ * Group commit: writes are appended under the journal lock, the force runs outside it,
+ * and one force makes every write appended before it durable
+ * Kept in segments next to the journal path (employee-journal.log.1, .2...): the writer rotates to a new segment
+ * before applying a batch, and a segment is deleted once none of its writes is still pending,
+ * so the applied writes are dropped without rewriting the pending ones or holding up the appends
+ * (a journal path left by a version without segments is read as the first segment)
+ */
+@Log4j2
+public class EmployeeJournal implements Closeable {
+
+    private final Path path;
+
+    private final ObjectMapper objectMapper;
+
+    private final boolean fsync;
+
+    /**
+     * Segment appended to, guarded by this
+     */
+    private FileChannel channel;
+
+    /**
+     * Sequence of the segment appended to, guarded by this
+     */
+    private long segment;
+
+    /**
+     * Segments no longer appended to, by sequence, with the number of their last write, guarded by syncLock
+     * the writes replayed from a previous run have the number 0
+     */
+    private final TreeMap<Long, Long> closedSegments = new TreeMap<>();
+
+    /**
+     * Only one force at a time, the writers waiting for it are covered by the next one
+     */
+    private final Object syncLock = new Object();
+
+    /**
+     * Number of writes appended, guarded by this
+     */
+    private long written;
+
+    /**
+     * Number of the first writes known durable, guarded by syncLock
+     */
+    private long synced;
+
+    public EmployeeJournal(Path path, ObjectMapper objectMapper, boolean fsync) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.path = path;
+        this.objectMapper = objectMapper;
+        this.fsync = fsync;
+        // a leftover of a crash during a rewrite by a version without segments, the journal itself is still whole
+        Files.deleteIfExists(path.resolveSibling(path.getFileName() + ".rewrite"));
+        if (Files.exists(path)) {
+            closedSegments.put(0L, 0L);
+        }
+        String prefix = path.getFileName() + ".";
+        try (DirectoryStream<Path> siblings = Files.newDirectoryStream(path.toAbsolutePath().getParent(), prefix + "*")) {
+            for (Path sibling : siblings) {
+                String suffix = sibling.getFileName().toString().substring(prefix.length());
+                if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+                    closedSegments.put(Long.parseLong(suffix), 0L);
+                }
+            }
+        }
+        this.segment = closedSegments.isEmpty() ? 1 : closedSegments.lastKey() + 1;
+        this.channel = open(segmentPath(segment));
+        forceDirectory();
+    }
+
+    /**
+     * Append one write, durable once this returns when fsync is on
+     */
+    public void append(Entry entry) throws IOException {
+        sync(write(entry));
+    }
+
+    /**
+     * Append one write, not forced yet, see {@link #sync(long)}
+     * @return number of the write, to pass to sync and {@link #release(long)}
+     */
+    public synchronized long write(Entry entry) throws IOException {
+        writeFully(ByteBuffer.wrap(toLine(entry)));
+        return ++written;
+    }
+
+    /**
+     * Make a write durable when fsync is on, along with every write appended before the force
+     * @param number number returned by {@link #write(Entry)}
+     */
+    public void sync(long number) throws IOException {
+        if (!fsync) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= number) {
+                return;
+            }
+            FileChannel target;
+            long upTo;
+            synchronized (this) {
+                target = channel;
+                upTo = written;
+            }
+            target.force(false);
+            synced = Math.max(synced, upTo);
+        }
+    }
+
+    /**
+     * Read every write of the closed segments, in append order: the writes of the previous run, before any append
+     * A torn last line (crash in the middle of an append) ends its segment
+     */
+    public List<Entry> readAll() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        synchronized (syncLock) {
+            for (Long closed : closedSegments.keySet()) {
+                readSegment(segmentPath(closed), entries);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Start a new segment when the current one has writes; the appends only wait for the new file to be opened,
+     * the old segment is forced and closed outside the journal lock
+     */
+    public void rotate() throws IOException {
+        synchronized (syncLock) {
+            FileChannel old;
+            long upTo;
+            synchronized (this) {
+                if (channel.position() == 0) {
+                    return;
+                }
+                old = channel;
+                upTo = written;
+                closedSegments.put(segment, upTo);
+                segment++;
+                channel = open(segmentPath(segment));
+            }
+            if (fsync) {
+                old.force(false);
+                forceDirectory();
+                synced = Math.max(synced, upTo);
+            }
+            old.close();
+        }
+    }
+
+    /**
+     * Delete the closed segments whose writes are all applied or replaced by a later write
+     * @param oldestPending number of the oldest write still pending, Long.MAX_VALUE when none
+     */
+    public void release(long oldestPending) throws IOException {
+        List<Path> released = new ArrayList<>();
+        synchronized (syncLock) {
+            Iterator<Map.Entry<Long, Long>> segments = closedSegments.entrySet().iterator();
+            while (segments.hasNext()) {
+                Map.Entry<Long, Long> closed = segments.next();
+                if (closed.getValue() >= oldestPending) {
+                    break;
+                }
+                released.add(segmentPath(closed.getKey()));
+                segments.remove();
+            }
+        }
+        for (Path segmentPath : released) {
+            Files.deleteIfExists(segmentPath);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return the file of a segment, the first one is the journal path itself
+     */
+    private Path segmentPath(long sequence) {
+        return sequence == 0 ? path : path.resolveSibling(path.getFileName() + "." + sequence);
+    }
+
+    private void readSegment(Path segmentPath, List<Entry> entries) throws IOException {
+        List<String> lines = Files.readAllLines(segmentPath, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                entries.add(objectMapper.readValue(line, Entry.class));
+            } catch (IOException e) {
+                log.warn("Journal segment {} ends with a torn entry, ignored", segmentPath.getFileName());
+                break;
+            }
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    /**
+     * Make a new segment durable: the directory entry now points to it
+     * Not supported on every platform (a directory cannot be opened on Windows), the file is then as durable as the OS makes it
+     */
+    private void forceDirectory() {
+        if (!fsync) {
+            return;
+        }
+        Path directory = path.toAbsolutePath().getParent();
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            log.debug("Cannot force the journal directory {}", directory, e);
+        }
+    }
+
+    private byte[] toLine(Entry entry) throws JsonProcessingException {
+        String json = objectMapper.writeValueAsString(entry);
+        return (json + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * One acknowledged write, the whole state of the employee after it
+     */
+    @Data
+    @NoArgsConstructor
+    public static class Entry {
+        private Long id;
+        private String name;
+        private Integer salary;
+        private String department;
+        private Long version;
+        private boolean deleted;
+        /**
+         * the employee was not in the table when the write was acknowledged
+         */
+        private boolean created;
+        /**
+         * number of the write in the journal, to release its segment once applied; 0 when replayed
+         */
+        @JsonIgnore
+        private long number;
+
+        static Entry of(Employee employee, boolean created) {
+            Entry entry = new Entry();
+            entry.setId(employee.getId());
+            entry.setName(employee.getName());
+            entry.setSalary(employee.getSalary());
+            entry.setDepartment(employee.getDepartment());
+            entry.setVersion(employee.getVersion());
+            entry.setCreated(created);
+            return entry;
+        }
+
+        /**
+         * @param version last version of the employee
+         */
+        static Entry deleted(Long id, Long version) {
+            Entry entry = new Entry();
+            entry.setId(id);
+            entry.setVersion(version);
+            entry.setDeleted(true);
+            return entry;
+        }
+
+        Employee toEmployee() {
+            Employee employee = new Employee();
+            employee.setId(id);
+            employee.setName(name);
+            employee.setSalary(salary);
+            employee.setDepartment(department);
+            employee.setVersion(version);
+            return employee;
+        }
+
+        EmployeeView toView() {
+            return new EmployeeView(id, name, salary, department, version);
+        }
+    }
+}
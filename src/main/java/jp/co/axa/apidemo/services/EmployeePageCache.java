@@ -0,0 +1,273 @@
+package jp.co.axa.apidemo.services;
+
+import com.github.benmanes.caffeine.cache.Policy;
+import jp.co.axa.apidemo.configs.CacheInvalidation;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.events.EmployeeChangeEvent;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the plain keyset pages of employees
+ * A page only keeps the ids of its employees, the employees themselves are read from the "employees" cache,
+ * so a page never contradicts the single employee API
+ * An update does not touch any page, a create / delete only invalidates the pages whose id range covers it
+ * Concurrent misses of one page share a single load
+ * The "employees" cache is raised at startup to hold the employees of every cached page of the default size,
+ * otherwise the cached pages evict each other's employees and are resolved from the table again
+ */
+@Component
+@Log4j2
+public class EmployeePageCache {
+
+    public static final String EMPLOYEE_PAGES_CACHE = "employeePages";
+
+    private final EmployeeRepository employeeRepository;
+
+    private final Cache pages;
+
+    private final Cache employees;
+
+    /**
+     * Incremented by every invalidation, a page loaded while it changed is not stored
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Page loads in flight, so a burst of misses on one page (e.g. the first page after an invalidation) runs one query
+     */
+    private final ConcurrentMap<PageKey, PageLoad> loading = new ConcurrentHashMap<>();
+
+    @Autowired
+    public EmployeePageCache(EmployeeRepository employeeRepository, CacheManager cacheManager,
+                             @Value("${app.employees.page.default-size:100}") int defaultPageSize) {
+        this.employeeRepository = employeeRepository;
+        this.pages = cacheManager.getCache(EMPLOYEE_PAGES_CACHE);
+        this.employees = cacheManager.getCache(EmployeeServiceImpl.EMPLOYEES_CACHE);
+        fitPages(defaultPageSize);
+    }
+
+    /**
+     * Raise the max number of entries of the "employees" cache to the max number of pages times the page size
+     * Caches sized by weight are left as configured, so is a max of 0, which turns the cache off (e.g. to benchmark the database)
+     */
+    private void fitPages(int pageSize) {
+        if (!(pages instanceof CaffeineCache) || !(employees instanceof CaffeineCache)) {
+            return;
+        }
+        Optional<Policy.Eviction<Object, Object>> pageEviction = ((CaffeineCache) pages).getNativeCache().policy().eviction();
+        Optional<Policy.Eviction<Object, Object>> employeeEviction = ((CaffeineCache) employees).getNativeCache().policy().eviction();
+        if (!pageEviction.isPresent() || !employeeEviction.isPresent()
+                || pageEviction.get().isWeighted() || employeeEviction.get().isWeighted()) {
+            return;
+        }
+        long needed = pageEviction.get().getMaximum() * pageSize;
+        if (employeeEviction.get().getMaximum() > 0 && employeeEviction.get().getMaximum() < needed) {
+            log.info("Employees cache raised from {} to {} entries, for {} cached pages of {}",
+                    employeeEviction.get().getMaximum(), needed, pageEviction.get().getMaximum(), pageSize);
+            employeeEviction.get().setMaximum(needed);
+        }
+    }
+
+    /**
+     * Get one keyset page of employees, from the caches when possible
+     * @param afterId only employees with a greater id are returned
+     * @param size max number of employees
+     */
+    public List<EmployeeView> getPage(long afterId, int size) {
+        PageKey key = new PageKey(afterId, size);
+        Page page = pages.get(key, Page.class);
+        if (page != null) {
+            return resolve(page.getIds());
+        }
+
+        // concurrent misses of a page wait for the load in flight, unless a write was seen since it started
+        long loadedAt = generation.get();
+        PageLoad load = new PageLoad(loadedAt);
+        PageLoad inFlight = loading.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return inFlight.generation == loadedAt ? new ArrayList<>(inFlight.await()) : load(key, loadedAt);
+        }
+        try {
+            // a load that finished between the miss above and putIfAbsent has stored the page already
+            page = pages.get(key, Page.class);
+            List<EmployeeView> result = page != null ? resolve(page.getIds()) : load(key, loadedAt);
+            load.result.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            load.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    /**
+     * Read one page from the table, and store it unless an invalidation happened meanwhile
+     */
+    private List<EmployeeView> load(PageKey key, long loadedAt) {
+        List<EmployeeView> loaded = employeeRepository.findViewPage(key.afterId, PageRequest.of(0, key.size));
+        List<Long> ids = new ArrayList<>(loaded.size());
+        List<EmployeeView> result = new ArrayList<>(loaded.size());
+        for (EmployeeView employee : loaded) {
+            ids.add(employee.getId());
+            result.add(share(employee));
+        }
+        if (generation.get() == loadedAt) {
+            pages.put(key, new Page(key.afterId, key.size, ids));
+        }
+        log.debug("Loaded employee page after id: {}, size: {}", key.afterId, key.size);
+        return result;
+    }
+
+    /**
+     * Invalidate the pages covering a created / deleted employee as soon as the change is made,
+     * so no page loaded before the change gets stored
+     */
+    @EventListener
+    public void onEmployeeChange(EmployeeChangeEvent event) {
+        if (event.getType() != EmployeeChangeEvent.Type.UPDATED) {
+            invalidate(event.getEmployeeId());
+        }
+    }
+
+    /**
+     * Invalidate again once the change is committed, a page loaded meanwhile did not see it
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeeChangeCommitted(EmployeeChangeEvent event) {
+        onEmployeeChange(event);
+    }
+
+    /**
+     * Another instance changed an employee (create, update or delete, the message does not tell),
+     * invalidate the pages covering it, or all of them when its whole cache was cleared
+     */
+    @EventListener
+    public void onRemoteInvalidation(CacheInvalidation invalidation) {
+        if (!EmployeeServiceImpl.EMPLOYEES_CACHE.equals(invalidation.getCacheName())) {
+            return;
+        }
+        if (invalidation.getKey() == null) {
+            generation.incrementAndGet();
+            pages.clear();
+        } else {
+            invalidate((Long) invalidation.getKey());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void invalidate(Long employeeId) {
+        generation.incrementAndGet();
+        Map<Object, Object> entries = ((com.github.benmanes.caffeine.cache.Cache<Object, Object>) pages.getNativeCache()).asMap();
+        entries.values().removeIf(page -> ((Page) page).covers(employeeId));
+    }
+
+    /**
+     * Employees of the ids, in the same order, from the "employees" cache
+     * missing ones are read with one query, ids which no longer exist are skipped
+     */
+    private List<EmployeeView> resolve(List<Long> ids) {
+        Map<Long, EmployeeView> found = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            EmployeeView employee = employees.get(id, EmployeeView.class);
+            if (employee != null) {
+                found.put(id, employee);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (EmployeeView employee : employeeRepository.findViewsByIdIn(missing)) {
+                found.put(employee.getId(), share(employee));
+            }
+        }
+
+        List<EmployeeView> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            EmployeeView employee = found.get(id);
+            if (employee != null) {
+                result.add(employee);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Store a loaded employee in the "employees" cache unless present, and return the cached one
+     */
+    private EmployeeView share(EmployeeView employee) {
+        Cache.ValueWrapper existing = employees.putIfAbsent(employee.getId(), employee);
+        if (existing != null && existing.get() != null) {
+            return (EmployeeView) existing.get();
+        }
+        return employee;
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class PageKey {
+        private final long afterId;
+        private final int size;
+    }
+
+    /**
+     * One page load, with the generation it started at
+     */
+    @RequiredArgsConstructor
+    private static final class PageLoad {
+        private final long generation;
+        private final CompletableFuture<List<EmployeeView>> result = new CompletableFuture<>();
+
+        List<EmployeeView> await() {
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class Page {
+        private final long afterId;
+        private final int size;
+        private final List<Long> ids;
+
+        /**
+         * whether an employee with this id belongs to this page
+         * a full page ends at its last id, a partial one is the end of the table
+         */
+        boolean covers(long id) {
+            if (id <= afterId) {
+                return false;
+            }
+            return ids.size() < size || id <= ids.get(ids.size() - 1);
+        }
+    }
+}
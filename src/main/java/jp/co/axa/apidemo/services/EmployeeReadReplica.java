@@ -0,0 +1,126 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.events.EmployeeChangeEvent;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory read replica of the employee table, enabled by app.employees.replica.enabled
+ * Loaded from the table at startup, then updated by every committed employee change,
+ * {@link EmployeeServiceImpl} serves getEmployee and the plain keyset pages from it instead of the caches
+ * The employees are packed off-heap by {@link EmployeeColumnStore}, the heap only holds primitive arrays
+ * The after-commit listeners of concurrent transactions may run out of commit order: a change only replaces
+ * an older version of its employee, and a deleted id is remembered for app.employees.tombstone-ms
+ * so that a late update does not bring it back, see {@link EmployeeTombstones}
+ */
+@Service
+@Log4j2
+@ConditionalOnProperty(name = "app.employees.replica.enabled", havingValue = "true")
+public class EmployeeReadReplica {
+
+    private final EmployeeRepository employeeRepository;
+
+    private final int initialCapacity;
+
+    /**
+     * Guarded by the write lock
+     */
+    private final EmployeeTombstones tombstones;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private EmployeeColumnStore store;
+
+    @Autowired
+    public EmployeeReadReplica(EmployeeRepository employeeRepository,
+                               @Value("${app.employees.replica.initial-capacity:1024}") int initialCapacity,
+                               @Value("${app.employees.tombstone-ms:60000}") long tombstoneMs) {
+        this.employeeRepository = employeeRepository;
+        this.initialCapacity = initialCapacity;
+        this.tombstones = new EmployeeTombstones(tombstoneMs);
+        this.store = new EmployeeColumnStore(initialCapacity);
+    }
+
+    /**
+     * Rebuild the replica from the table, before the web server accepts requests
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void rebuild() {
+        EmployeeColumnStore newStore = new EmployeeColumnStore(initialCapacity);
+        employeeRepository.forEachEmployee(newStore::put);
+        lock.writeLock().lock();
+        try {
+            store = newStore;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Employee replica loaded with {} employees, {} bytes off-heap", newStore.size(), newStore.offHeapBytes());
+    }
+
+    /**
+     * Apply a committed employee change, unless the replica already holds a newer one
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeeChange(EmployeeChangeEvent event) {
+        long now = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            long id = event.getEmployeeId();
+            if (event.getType() == EmployeeChangeEvent.Type.DELETED) {
+                store.remove(id);
+                tombstones.add(id, now);
+            } else if (!tombstones.contains(id, now) && event.versionOrZero() > store.version(id)) {
+                store.put(event.getEmployee());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the employee, null when not exist
+     */
+    public EmployeeView getEmployee(long employeeId) {
+        lock.readLock().lock();
+        try {
+            return store.get(employeeId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param afterId only employees with a greater id are returned
+     * @param size max number of employees
+     * @return employees ordered by id
+     */
+    public List<EmployeeView> getPage(long afterId, int size) {
+        lock.readLock().lock();
+        try {
+            return store.page(afterId, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return store.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.dto.EmployeeSearchHit;
+import jp.co.axa.apidemo.events.EmployeeChangeEvent;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Search index of the employee names and departments, for typeahead
+ * Loaded from the table at startup, then updated by every committed employee change
+ * The after-commit listeners of concurrent transactions may run out of commit order: a change only replaces
+ * an older version of its employee, and a deleted id ignores late updates, see {@link EmployeeTombstones}
+ * Prefix, typo tolerant and ranked matching is done by {@link EmployeeTermIndex}, without touching the database
+ */
+@Service
+@Log4j2
+public class EmployeeSearchIndex {
+
+    private final EmployeeRepository employeeRepository;
+
+    private final int initialCapacity;
+
+    /**
+     * Guarded by the write lock
+     */
+    private final EmployeeTombstones tombstones;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private EmployeeTermIndex index;
+
+    @Autowired
+    public EmployeeSearchIndex(EmployeeRepository employeeRepository,
+                               @Value("${app.employees.search.initial-capacity:1024}") int initialCapacity,
+                               @Value("${app.employees.tombstone-ms:60000}") long tombstoneMs) {
+        this.employeeRepository = employeeRepository;
+        this.initialCapacity = initialCapacity;
+        this.tombstones = new EmployeeTombstones(tombstoneMs);
+        this.index = new EmployeeTermIndex(initialCapacity);
+    }
+
+    /**
+     * Rebuild the index from the table, before the web server accepts requests
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void rebuild() {
+        EmployeeTermIndex newIndex = new EmployeeTermIndex(initialCapacity);
+        employeeRepository.forEachEmployee(employee ->
+                newIndex.put(employee.getId(), employee.getVersion() == null ? 0L : employee.getVersion(),
+                        employee.getName(), employee.getDepartment()));
+        lock.writeLock().lock();
+        try {
+            index = newIndex;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Employee search index loaded with {} employees", newIndex.size());
+    }
+
+    /**
+     * Apply a committed employee change, unless the index already holds a newer one
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeeChange(EmployeeChangeEvent event) {
+        long now = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            long id = event.getEmployeeId();
+            if (event.getType() == EmployeeChangeEvent.Type.DELETED) {
+                index.remove(id);
+                tombstones.add(id, now);
+            } else if (!tombstones.contains(id, now)) {
+                index.put(id, event.versionOrZero(), event.getEmployee().getName(), event.getEmployee().getDepartment());
+            }
+            if (index.needsCompaction()) {
+                index = index.compacted();
+                log.debug("Employee search index compacted to {} employees", index.size());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param text words to find, each one matching a word of the name or department
+     * @param limit max number of hits
+     * @return hits, best first
+     */
+    public List<EmployeeSearchHit> search(String text, int limit) {
+        lock.readLock().lock();
+        try {
+            return index.search(text, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
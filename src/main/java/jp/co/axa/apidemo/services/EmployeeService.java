@@ -1,20 +1,38 @@
 package jp.co.axa.apidemo.services;
 
+import jp.co.axa.apidemo.dto.EmployeeQuery;
+import jp.co.axa.apidemo.dto.EmployeeSearchHit;
+import jp.co.axa.apidemo.dto.EmployeeView;
 import jp.co.axa.apidemo.entities.Employee;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface EmployeeService {
 
-    List<Employee> retrieveEmployees();
+    List<EmployeeView> retrieveEmployees(long afterId, int size);
 
-    Employee getEmployee(Long employeeId);
+    List<EmployeeView> retrieveEmployees(EmployeeQuery query);
+
+    List<Map<String, Object>> retrieveEmployeeFields(EmployeeQuery query);
+
+    void streamEmployees(Consumer<Employee> action);
+
+    List<EmployeeSearchHit> searchEmployees(String text, int limit);
+
+    EmployeeView getEmployee(Long employeeId);
 
     Employee saveEmployee(Employee employee);
 
-    void deleteEmployee(Long employeeId);
+    boolean deleteEmployee(Long employeeId, Long expectedVersion);
 
     Employee updateEmployee(Employee employee);
 
-    boolean checkEmployee(Long employeeId);
+    List<Employee> saveEmployees(List<Employee> employees);
+
+    List<Employee> updateEmployees(List<Employee> employees);
+
+    Set<Long> deleteEmployees(List<Long> employeeIds);
 }
\ No newline at end of file
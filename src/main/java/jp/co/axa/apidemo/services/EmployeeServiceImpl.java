@@ -1,22 +1,33 @@
 package jp.co.axa.apidemo.services;
 
+import jp.co.axa.apidemo.dto.EmployeeQuery;
+import jp.co.axa.apidemo.dto.EmployeeSearchHit;
+import jp.co.axa.apidemo.dto.EmployeeView;
 import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.events.EmployeeChangeEvent;
 import jp.co.axa.apidemo.repositories.EmployeeRepository;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheConfig;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.CachePut;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.NoOpCache;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Service
 @Log4j2
-@CacheConfig(cacheNames = EmployeeServiceImpl.EMPLOYEES_CACHE)
 @Transactional(readOnly = true)
 public class EmployeeServiceImpl implements EmployeeService {
 
@@ -24,30 +35,106 @@ public class EmployeeServiceImpl implements EmployeeService {
 
     private final EmployeeRepository employeeRepository;
 
+    /**
+     * the employees cache of {@link EmployeeView}, a no-op one when reads are served by the replica
+     */
+    private final Cache employeesCache;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final EmployeePageCache pageCache;
+
+    /**
+     * null unless app.employees.replica.enabled, then it replaces the caches for reads
+     */
+    private final EmployeeReadReplica replica;
+
+    private final EmployeeSearchIndex searchIndex;
+
     @Autowired
-    public EmployeeServiceImpl(EmployeeRepository employeeRepository) {
+    public EmployeeServiceImpl(EmployeeRepository employeeRepository, CacheManager cacheManager,
+                               ApplicationEventPublisher eventPublisher, EmployeePageCache pageCache,
+                               ObjectProvider<EmployeeReadReplica> replica, EmployeeSearchIndex searchIndex) {
         this.employeeRepository = employeeRepository;
+        this.eventPublisher = eventPublisher;
+        this.pageCache = pageCache;
+        this.replica = replica.getIfAvailable();
+        this.employeesCache = this.replica != null ? new NoOpCache(EMPLOYEES_CACHE) : cacheManager.getCache(EMPLOYEES_CACHE);
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * whether reads are served by {@link EmployeeReadReplica}, the employees cache is then left empty
+     */
+    public boolean isReplicaEnabled() {
+        return replica != null;
+    }
+
+    /**
+     * Get one keyset page of employees' info, see {@link EmployeePageCache} and {@link EmployeeReadReplica}
+     * @param afterId only employees with a greater id are returned
+     * @param size max number of employees
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<EmployeeView> retrieveEmployees(long afterId, int size) {
+        if (log.isDebugEnabled()) {
+            log.debug("Fetching employees after id: {}", afterId);
+        }
+        return replica != null ? replica.getPage(afterId, size) : pageCache.getPage(afterId, size);
+    }
+
+    /**
+     * Get one keyset page of employees' info matching the filters, in the query order
+     */
+    @Override
+    public List<EmployeeView> retrieveEmployees(EmployeeQuery query) {
+        return employeeRepository.findPage(query);
+    }
+
+    /**
+     * Get the selected fields of one keyset page of employees matching the filters, in the query order
+     */
+    @Override
+    public List<Map<String, Object>> retrieveEmployeeFields(EmployeeQuery query) {
+        return employeeRepository.findPageFields(query);
+    }
+
+    /**
+     * Pass all employees' info to the action, row by row
+     */
+    @Override
+    public void streamEmployees(Consumer<Employee> action) {
+        employeeRepository.forEachEmployee(action);
+        log.debug("Streamed all employees");
     }
 
     /**
-     * Get all employees' info
+     * Search employees by the words of their name and department, see {@link EmployeeSearchIndex}
      */
     @Override
-    public List<Employee> retrieveEmployees() {
-        List<Employee> employees = employeeRepository.findAll();
-        log.info("Fetching all employees");
-        return employees;
+    public List<EmployeeSearchHit> searchEmployees(String text, int limit) {
+        return searchIndex.search(text, limit);
     }
 
     /**
-     * Get employee info by employee id
+     * Get employee info by employee id, from the replica when enabled, otherwise through the employees cache
+     * (looked up in code rather than with @Cacheable, whose condition alone allocated ~11KB per replica read)
+     * a miss is read straight into a view with JDBC: no session, entity or persistence-context snapshot
      */
     @Override
-    @Cacheable(key = "#employeeId")
-    public Employee getEmployee(Long employeeId) {
-        Optional<Employee> optionalEmployee  = employeeRepository.findById(employeeId);
-        log.info("Fetching employee by id: {}", employeeId);
-        return optionalEmployee .orElse(null);
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public EmployeeView getEmployee(Long employeeId) {
+        if (employeeId == null) {
+            throw new IllegalArgumentException("Employee id must not be null");
+        }
+        if (replica != null) {
+            return replica.getEmployee(employeeId);
+        }
+        return employeesCache.get(employeeId, () -> {
+            log.debug("Fetching employee by id: {}", employeeId);
+            return employeeRepository.findViewById(employeeId);
+        });
     }
 
     /**
@@ -55,48 +142,162 @@ public class EmployeeServiceImpl implements EmployeeService {
      */
     @Override
     @Transactional
-    @CachePut(key = "#employee.id")
     public Employee saveEmployee(Employee employee){
         employeeRepository.save(employee);
-        log.info("Add new employee {}", employee.getId());
+        employeesCache.put(employee.getId(), EmployeeView.of(employee));
+        eventPublisher.publishEvent(EmployeeChangeEvent.created(employee));
+        log.debug("Add new employee {}", employee.getId());
         return employee;
     }
 
     /**
      * delete existing employee info and refresh cache
+     * with an expected version: one conditional statement on it, the affected row count tells whether the employee existed
+     * without: two statements, the current version is read and then deleted, again when an update committed in between,
+     * so the change event carries the deleted version (a delete without one could be overtaken by a late update)
+     * @param expectedVersion only delete this version, null: any version
+     * @return true: deleted, false: not exist
+     * @throws OptimisticLockingFailureException the employee exists with another version
      */
     @Override
     @Transactional
-    @CacheEvict(value = "employees", key = "#employeeId")
-    public void deleteEmployee(Long employeeId){
-        employeeRepository.deleteById(employeeId);
-        log.info("Delete employee by id: {}", employeeId);
+    public boolean deleteEmployee(Long employeeId, Long expectedVersion){
+        Long version = expectedVersion;
+        int deleted;
+        if (expectedVersion == null) {
+            // read again when an update committed in between
+            do {
+                version = employeeRepository.findVersionById(employeeId);
+                deleted = version == null ? 0 : employeeRepository.removeByIdAndVersion(employeeId, version);
+            } while (version != null && deleted == 0);
+        } else {
+            deleted = employeeRepository.removeByIdAndVersion(employeeId, expectedVersion);
+            if (deleted == 0 && employeeRepository.existsById(employeeId)) {
+                throw new OptimisticLockingFailureException("Employee " + employeeId + " is not at version " + expectedVersion);
+            }
+        }
+        employeesCache.evict(employeeId);
+        if (deleted > 0) {
+            eventPublisher.publishEvent(EmployeeChangeEvent.deleted(employeeId, version));
+        }
+        log.debug("Delete employee by id: {}, deleted: {}", employeeId, deleted > 0);
+        return deleted > 0;
     }
 
     /**
      * Update existing employee info and refresh cache
+     * when the employee has a version: one conditional statement on it, the affected row count tells whether the employee existed
+     * without: the update statement, then a second one reads the new version back for the ETag and the change event
+     * @return updated employee, null: not exist
+     * @throws OptimisticLockingFailureException the employee exists with another version
      */
     @Override
     @Transactional
-    @CachePut(key = "#employee.id")
     public Employee updateEmployee(Employee employee) {
-        employeeRepository.save(employee);
-        log.info("Update employee by id: {}", employee.getId());
-        return employee;
+        if (employee.getId() == null) {
+            throw new IllegalArgumentException("Employee id must not be null");
+        }
+        Long expectedVersion = employee.getVersion();
+        int updated;
+        if (expectedVersion == null) {
+            updated = employeeRepository.updateById(employee.getId(), employee.getName(),
+                    employee.getSalary(), employee.getDepartment());
+            if (updated > 0) {
+                employee.setVersion(employeeRepository.findVersionById(employee.getId()));
+            }
+        } else {
+            updated = employeeRepository.updateByIdAndVersion(employee.getId(), expectedVersion,
+                    employee.getName(), employee.getSalary(), employee.getDepartment());
+            if (updated > 0) {
+                employee.setVersion(expectedVersion + 1);
+            } else if (employeeRepository.existsById(employee.getId())) {
+                throw new OptimisticLockingFailureException("Employee " + employee.getId() + " is not at version " + expectedVersion);
+            }
+        }
+        if (updated > 0) {
+            employeesCache.put(employee.getId(), EmployeeView.of(employee));
+            eventPublisher.publishEvent(EmployeeChangeEvent.updated(employee));
+        }
+        log.debug("Update employee by id: {}, updated: {}", employee.getId(), updated > 0);
+        return updated > 0 ? employee : null;
     }
 
+    /**
+     * add new employees in one transaction and refresh cache
+     * inserts are sent in JDBC batches (hibernate.jdbc.batch_size)
+     * @param employees validated employees without id
+     * @return saved employees, in the same order
+     */
+    @Override
+    @Transactional
+    public List<Employee> saveEmployees(List<Employee> employees) {
+        List<Employee> saved = employeeRepository.saveAll(employees);
+        for (Employee employee : saved) {
+            employeesCache.put(employee.getId(), EmployeeView.of(employee));
+            eventPublisher.publishEvent(EmployeeChangeEvent.created(employee));
+        }
+        log.info("Add {} new employees", saved.size());
+        return saved;
+    }
 
     /**
-     * Check employee id whether exist
-     * @param employeeId employ id
-     * @return true: existing
+     * Update existing employees in one transaction and refresh cache
+     * existing rows are read with one query, updates are sent in JDBC batches
+     * @param employees validated employees with id
+     * @return updated employees, in the same order, null when the id does not exist
      */
     @Override
-    public boolean checkEmployee(Long employeeId) {
-        boolean existsById = employeeRepository.existsById(employeeId);
-        if (!existsById) {
-            log.info("Employee object does not exist. Id: {}", employeeId);
+    @Transactional
+    public List<Employee> updateEmployees(List<Employee> employees) {
+        List<Long> ids = new ArrayList<>(employees.size());
+        for (Employee employee : employees) {
+            ids.add(employee.getId());
+        }
+        Map<Long, Employee> existing = new HashMap<>();
+        for (Employee employee : employeeRepository.findAllById(ids)) {
+            existing.put(employee.getId(), employee);
+        }
+
+        List<Employee> updated = new ArrayList<>(employees.size());
+        for (Employee employee : employees) {
+            Employee managed = existing.get(employee.getId());
+            if (managed != null) {
+                managed.setName(employee.getName());
+                managed.setSalary(employee.getSalary());
+                managed.setDepartment(employee.getDepartment());
+            }
+            updated.add(managed);
+        }
+        // flush first, so the cached entities carry their new version
+        employeeRepository.flush();
+        for (Employee employee : existing.values()) {
+            employeesCache.put(employee.getId(), EmployeeView.of(employee));
+            eventPublisher.publishEvent(EmployeeChangeEvent.updated(employee));
+        }
+        log.info("Update {} employees", existing.size());
+        return updated;
+    }
+
+    /**
+     * delete existing employees and refresh cache
+     * two statements: one SELECT ... FOR UPDATE reads the existing ids and their versions (the change events carry them),
+     * then one DELETE removes all of those rows (deleteInBatch)
+     * @param employeeIds employee ids
+     * @return ids which existed and were deleted
+     */
+    @Override
+    @Transactional
+    public Set<Long> deleteEmployees(List<Long> employeeIds) {
+        List<Employee> existing = employeeRepository.lockAllByIdIn(employeeIds);
+        employeeRepository.deleteInBatch(existing);
+
+        Set<Long> deleted = new HashSet<>();
+        for (Employee employee : existing) {
+            employeesCache.evict(employee.getId());
+            deleted.add(employee.getId());
+            eventPublisher.publishEvent(EmployeeChangeEvent.deleted(employee.getId(), employee.getVersion()));
         }
-        return existsById;
+        log.info("Delete {} employees", deleted.size());
+        return deleted;
     }
-}
\ No newline at end of file
+}
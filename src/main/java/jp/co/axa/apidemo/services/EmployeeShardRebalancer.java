@@ -0,0 +1,117 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.configs.ShardProperties;
+import jp.co.axa.apidemo.dto.ShardMove;
+import jp.co.axa.apidemo.dto.ShardStatus;
+import jp.co.axa.apidemo.repositories.EmployeeShards;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Even out the employees of the shards by moving id ranges, see {@link EmployeeShards#move}
+ * With the department key, a department grows on one shard; a rebalance hands part of its older ids to the smallest shard
+ * (its new employees keep being created on the department's shard)
+ */
+@Service
+@Log4j2
+@ConditionalOnProperty(name = "app.employees.shards.enabled", havingValue = "true")
+public class EmployeeShardRebalancer {
+
+    private final EmployeeShards shards;
+
+    private final double tolerance;
+
+    @Autowired
+    public EmployeeShardRebalancer(EmployeeShards shards, ShardProperties properties) {
+        this.shards = shards;
+        this.tolerance = properties.getRebalanceTolerance();
+    }
+
+    /**
+     * Employees and id ranges of every shard
+     */
+    public List<ShardStatus> status() {
+        List<List<ShardStatus.Range>> ranges = new ArrayList<>();
+        for (int shard = 0; shard < shards.count(); shard++) {
+            ranges.add(new ArrayList<>());
+        }
+        for (EmployeeShards.Range range : shards.ranges()) {
+            ranges.get(range.getShard()).add(new ShardStatus.Range(range.getFromId(), range.getToId(),
+                    shards.countEmployees(range.getShard(), range.getFromId(), range.getToId())));
+        }
+        List<ShardStatus> status = new ArrayList<>(shards.count());
+        for (int shard = 0; shard < shards.count(); shard++) {
+            long employees = 0;
+            for (ShardStatus.Range range : ranges.get(shard)) {
+                employees += range.getEmployees();
+            }
+            status.add(new ShardStatus(shard, employees, ranges.get(shard)));
+        }
+        return status;
+    }
+
+    /**
+     * Move half of the difference between the largest and the smallest shard, until every shard is within the tolerance
+     * of the average (or nothing more can be moved: the ids still handed out by a sequence stay)
+     * @return moves done, in order
+     */
+    public List<ShardMove> rebalance() {
+        List<ShardMove> moves = new ArrayList<>();
+        for (int round = 0; round < shards.count() * 2; round++) {
+            List<ShardStatus> status = status();
+            ShardStatus largest = status.get(0);
+            ShardStatus smallest = status.get(0);
+            long total = 0;
+            for (ShardStatus shard : status) {
+                largest = shard.getEmployees() > largest.getEmployees() ? shard : largest;
+                smallest = shard.getEmployees() < smallest.getEmployees() ? shard : smallest;
+                total += shard.getEmployees();
+            }
+            long excess = (largest.getEmployees() - smallest.getEmployees()) / 2;
+            if (excess == 0 || excess <= tolerance * total / status.size()) {
+                break;
+            }
+            ShardMove move = moveFirst(largest.getShard(), smallest.getShard(), excess);
+            if (move == null) {
+                break;
+            }
+            moves.add(move);
+        }
+        log.info("Rebalanced the shards with {} moves", moves.size());
+        return moves;
+    }
+
+    /**
+     * Move up to n employees from the start of the source's fullest movable range
+     * @return the move, null when the source has nothing movable
+     */
+    ShardMove moveFirst(int source, int target, long n) {
+        EmployeeShards.Range fullest = null;
+        long fullestCount = 0;
+        long fullestEnd = 0;
+        for (EmployeeShards.Range range : shards.ranges()) {
+            if (range.getShard() != source) {
+                continue;
+            }
+            long end = shards.movableTo(range);
+            long count = shards.countEmployees(source, range.getFromId(), end);
+            if (count > fullestCount) {
+                fullest = range;
+                fullestCount = count;
+                fullestEnd = end;
+            }
+        }
+        if (fullest == null) {
+            return null;
+        }
+        Long split = shards.idAfter(source, fullest.getFromId(), fullestEnd, n);
+        long toId = split == null ? fullestEnd : split;
+        long moved = shards.move(fullest.getFromId(), toId, target);
+        return new ShardMove(fullest.getFromId(), toId, source, target, moved);
+    }
+}
@@ -0,0 +1,511 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.dto.EmployeeSearchHit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Inverted index of the name and department words of the employees, searched by {@link EmployeeSearchIndex}
+ * - words are lower-cased and kept in a sorted dictionary, so the words starting with a prefix are one range of it
+ * - each word has the doc numbers of the employees using it in their name, and in their department, appended only:
+ *   a changed employee gets a new doc and its old doc is marked dead, dead docs are dropped when they are the majority
+ * - each doc keeps the version of its employee, an older version is not indexed over a newer one
+ * - fuzzy (typo tolerant) matching walks the sorted dictionary like a trie, skipping every word of a prefix
+ *   as soon as that prefix is too far from the searched word
+ * Not thread safe
+ */
+final class EmployeeTermIndex {
+
+    static final int MAX_QUERY_TERMS = 8;
+
+    private static final double NAME_WEIGHT = 2;
+
+    private static final double DEPARTMENT_WEIGHT = 1;
+
+    private static final int EXACT = 3;
+
+    private static final int PREFIX = 2;
+
+    private static final int FUZZY = 1;
+
+    private static final double BEST_WORD_SCORE = NAME_WEIGHT * EXACT;
+
+    private static final String[] NO_TERMS = new String[0];
+
+    private final NavigableMap<String, Postings> terms = new TreeMap<>();
+
+    private final Map<String, String[]> departmentTerms = new HashMap<>();
+
+    private final LongIntHashMap docsById;
+
+    private final BitSet dead = new BitSet();
+
+    private long[] ids;
+
+    private long[] versions;
+
+    private String[] names;
+
+    /**
+     * Name lengths, the rank tie-break, read in doc order instead of through every name
+     */
+    private int[] nameLengths;
+
+    private String[] departments;
+
+    private String[][] nameTerms;
+
+    private int docs;
+
+    private int live;
+
+    EmployeeTermIndex(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        docsById = new LongIntHashMap(capacity);
+        ids = new long[capacity];
+        versions = new long[capacity];
+        names = new String[capacity];
+        nameLengths = new int[capacity];
+        departments = new String[capacity];
+        nameTerms = new String[capacity][];
+    }
+
+    int size() {
+        return live;
+    }
+
+    /**
+     * @return the indexed version of the employee, -1 when not indexed
+     */
+    long version(long id) {
+        int doc = docsById.get(id);
+        return doc == LongIntHashMap.MISSING ? -1L : versions[doc];
+    }
+
+    /**
+     * Index an employee, replacing the name / department of an older version
+     * @return false when the same or a newer version is indexed, nothing changed
+     */
+    boolean put(long id, long version, String name, String department) {
+        if (version <= version(id)) {
+            return false;
+        }
+        remove(id);
+        if (docs == ids.length) {
+            int capacity = docs * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            names = Arrays.copyOf(names, capacity);
+            nameLengths = Arrays.copyOf(nameLengths, capacity);
+            departments = Arrays.copyOf(departments, capacity);
+            nameTerms = Arrays.copyOf(nameTerms, capacity);
+        }
+        int doc = docs++;
+        ids[doc] = id;
+        versions[doc] = version;
+        names[doc] = name;
+        nameLengths[doc] = name == null ? 0 : name.length();
+        departments[doc] = department;
+        nameTerms[doc] = intern(tokenize(name));
+        for (String term : nameTerms[doc]) {
+            terms.get(term).name.add(doc);
+        }
+        for (String term : departmentTerms(department)) {
+            terms.get(term).department.add(doc);
+        }
+        docsById.put(id, doc);
+        live++;
+        return true;
+    }
+
+    /**
+     * @return false when the employee is not indexed
+     */
+    boolean remove(long id) {
+        int doc = docsById.remove(id);
+        if (doc == LongIntHashMap.MISSING) {
+            return false;
+        }
+        dead.set(doc);
+        names[doc] = null;
+        nameTerms[doc] = null;
+        live--;
+        return true;
+    }
+
+    /**
+     * @return true when dead docs are the majority, see {@link #compacted()}
+     */
+    boolean needsCompaction() {
+        int deadDocs = docs - live;
+        return deadDocs > 1024 && deadDocs > live;
+    }
+
+    /**
+     * @return a new index with the live employees only
+     */
+    EmployeeTermIndex compacted() {
+        EmployeeTermIndex index = new EmployeeTermIndex(live);
+        for (int doc = dead.nextClearBit(0); doc < docs; doc = dead.nextClearBit(doc + 1)) {
+            index.put(ids[doc], versions[doc], names[doc], departments[doc]);
+        }
+        return index;
+    }
+
+    /**
+     * Find the employees matching every word of the text
+     * Each word matches a name or department word equal to it, starting with it, or, when the exact
+     * and prefix matches are fewer than the limit, within 1 typo (2 from 6 letters) of a prefix of it
+     * (the first letter has to be right)
+     * @return at most limit hits, best first, then shorter names, then smaller ids
+     */
+    List<EmployeeSearchHit> search(String text, int limit) {
+        List<String> words = tokenize(text);
+        if (words.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (words.size() > MAX_QUERY_TERMS) {
+            words = words.subList(0, MAX_QUERY_TERMS);
+        }
+        List<QueryTerm> query = new ArrayList<>(words.size());
+        QueryTerm driver = null;
+        for (String word : words) {
+            QueryTerm queryTerm = expand(word, limit);
+            if (queryTerm.postings == 0) {
+                return Collections.emptyList();
+            }
+            query.add(queryTerm);
+            if (driver == null || queryTerm.postings < driver.postings) {
+                driver = queryTerm;
+            }
+        }
+
+        // the least frequent word drives: its doc lists are scored against every word, best lists first,
+        // keeping the best docs in a min-heap; lists are skipped once they cannot beat the worst kept doc
+        // with one word, a doc scores the score of the first list it is in, nothing to compute
+        boolean oneWord = query.size() == 1;
+        double othersBest = BEST_WORD_SCORE * (query.size() - 1);
+        PriorityQueue<Candidate> best = new PriorityQueue<>(limit + 1, this::compare);
+        for (DocList list : driver.lists()) {
+            if (best.size() == limit && best.peek().score > list.score + othersBest) {
+                break;
+            }
+            for (int i = 0; i < list.docs.size; i++) {
+                int doc = list.docs.docs[i];
+                if (dead.get(doc)) {
+                    continue;
+                }
+                double score = oneWord ? list.score : score(doc, query);
+                if (score == 0 || best.size() == limit && compare(score, doc, best.peek()) <= 0 || isQueued(best, doc)) {
+                    continue;
+                }
+                best.add(new Candidate(doc, score));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+
+        List<EmployeeSearchHit> hits = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            Candidate candidate = best.poll();
+            hits.add(new EmployeeSearchHit(ids[candidate.doc], names[candidate.doc], departments[candidate.doc], candidate.score));
+        }
+        Collections.reverse(hits);
+        return hits;
+    }
+
+    /**
+     * Words of a text: lower-cased runs of letters and digits, without repeats
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>(4);
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String token = lower.substring(start, i);
+                if (!tokens.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private QueryTerm expand(String word, int limit) {
+        QueryTerm queryTerm = new QueryTerm(word);
+        for (Postings postings : terms.subMap(word, true, word + Character.MAX_VALUE, false).values()) {
+            queryTerm.add(postings, postings.term.length() == word.length() ? EXACT : PREFIX);
+        }
+        if (queryTerm.postings < limit && word.length() >= 3) {
+            expandFuzzy(queryTerm, word.length() < 6 ? 1 : 2);
+        }
+        return queryTerm;
+    }
+
+    /**
+     * Add the terms with a prefix within max typos of the word (insert, delete, replace, swap of neighbours),
+     * starting with the same letter, except the terms starting with the word itself
+     * The dictionary is walked in order, computing one row of the edit distance table per term letter:
+     * terms sharing a prefix share its rows, and all the terms of a prefix are taken, or skipped,
+     * at once when the prefix matches, or when no cell of its row is within max typos
+     */
+    private void expandFuzzy(QueryTerm queryTerm, int max) {
+        String word = queryTerm.word;
+        int m = word.length();
+        // a cell is at least |word letters - term letters|, so no row deeper than m + max + 1 is needed
+        int[][] rows = new int[m + max + 2][];
+        rows[0] = new int[m + 1];
+        for (int i = 0; i <= m; i++) {
+            rows[0][i] = i;
+        }
+        String previous = "";
+        int computed = 0;
+        String term = terms.ceilingKey(word.substring(0, 1));
+        while (term != null && term.charAt(0) == word.charAt(0)) {
+            int depth = Math.min(computed, commonPrefix(previous, term));
+            String skipped = null;
+            for (int j = depth + 1; j <= term.length() && skipped == null; j++) {
+                int rowMin = fillRow(rows, j, word, term);
+                computed = j;
+                if (rows[j][m] <= max) {
+                    skipped = term.substring(0, j);
+                    for (Postings postings : terms.subMap(skipped, true, skipped + Character.MAX_VALUE, false).values()) {
+                        if (!postings.term.startsWith(word)) {
+                            queryTerm.add(postings, FUZZY);
+                        }
+                    }
+                } else if (rowMin > max) {
+                    skipped = term.substring(0, j);
+                }
+            }
+            previous = term;
+            term = skipped == null ? terms.higherKey(term) : terms.ceilingKey(skipped + Character.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Row j of the optimal string alignment table of the word against the term: row[i] is the distance
+     * between the first i letters of the word and the first j letters of the term
+     * @return the smallest cell of the row
+     */
+    private static int fillRow(int[][] rows, int j, String word, String term) {
+        int m = word.length();
+        if (rows[j] == null) {
+            rows[j] = new int[m + 1];
+        }
+        int[] row = rows[j];
+        int[] up = rows[j - 1];
+        char letter = term.charAt(j - 1);
+        row[0] = j;
+        int rowMin = j;
+        for (int i = 1; i <= m; i++) {
+            int value = Math.min(Math.min(up[i] + 1, row[i - 1] + 1), up[i - 1] + (word.charAt(i - 1) == letter ? 0 : 1));
+            if (i > 1 && j > 1 && word.charAt(i - 1) == term.charAt(j - 2) && word.charAt(i - 2) == letter) {
+                value = Math.min(value, rows[j - 2][i - 2] + 1);
+            }
+            row[i] = value;
+            rowMin = Math.min(rowMin, value);
+        }
+        return rowMin;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return sum over the words of their best match in the doc, 0 when a word does not match
+     */
+    private double score(int doc, List<QueryTerm> query) {
+        String[] deptTerms = departmentTerms.getOrDefault(departments[doc], NO_TERMS);
+        double score = 0;
+        for (QueryTerm queryTerm : query) {
+            double best = 0;
+            for (String term : nameTerms[doc]) {
+                best = Math.max(best, NAME_WEIGHT * queryTerm.match(term));
+            }
+            for (String term : deptTerms) {
+                best = Math.max(best, DEPARTMENT_WEIGHT * queryTerm.match(term));
+            }
+            if (best == 0) {
+                return 0;
+            }
+            score += best;
+        }
+        return score;
+    }
+
+    /**
+     * Ranking order, greater is better: score, then shorter name, then smaller id
+     */
+    private int compare(Candidate a, Candidate b) {
+        return compare(a.score, a.doc, b);
+    }
+
+    private int compare(double score, int doc, Candidate other) {
+        int result = Double.compare(score, other.score);
+        if (result == 0) {
+            result = Integer.compare(nameLengths[other.doc], nameLengths[doc]);
+        }
+        return result != 0 ? result : Long.compare(ids[other.doc], ids[doc]);
+    }
+
+    private String[] intern(List<String> tokens) {
+        String[] interned = new String[tokens.size()];
+        for (int i = 0; i < interned.length; i++) {
+            String token = tokens.get(i);
+            Postings postings = terms.get(token);
+            if (postings == null) {
+                postings = new Postings(token);
+                terms.put(token, postings);
+            }
+            interned[i] = postings.term;
+        }
+        return interned;
+    }
+
+    private String[] departmentTerms(String department) {
+        String[] deptTerms = departmentTerms.get(department);
+        if (deptTerms == null) {
+            deptTerms = intern(tokenize(department));
+            departmentTerms.put(department, deptTerms);
+        }
+        return deptTerms;
+    }
+
+    private static boolean isQueued(PriorityQueue<Candidate> queue, int doc) {
+        for (Candidate candidate : queue) {
+            if (candidate.doc == doc) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Growable list of doc numbers, in doc order
+     */
+    private static final class Docs {
+
+        private int[] docs = new int[2];
+
+        private int size;
+
+        void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+    }
+
+    /**
+     * Docs of one term, by the field using it
+     */
+    private static final class Postings {
+
+        private final String term;
+
+        private final Docs name = new Docs();
+
+        private final Docs department = new Docs();
+
+        Postings(String term) {
+            this.term = term;
+        }
+    }
+
+    /**
+     * Docs of a term in one field, with the score a word gets from them
+     */
+    private static final class DocList {
+
+        private final Docs docs;
+
+        private final double score;
+
+        DocList(Docs docs, double score) {
+            this.docs = docs;
+            this.score = score;
+        }
+    }
+
+    /**
+     * One word of a search, with the terms it matches
+     */
+    private static final class QueryTerm {
+
+        private final String word;
+
+        private final List<DocList> lists = new ArrayList<>();
+
+        private final Map<String, Boolean> fuzzy = new IdentityHashMap<>();
+
+        private long postings;
+
+        QueryTerm(String word) {
+            this.word = word;
+        }
+
+        void add(Postings postings, int match) {
+            if (match == FUZZY) {
+                fuzzy.put(postings.term, Boolean.TRUE);
+            }
+            lists.add(new DocList(postings.name, NAME_WEIGHT * match));
+            lists.add(new DocList(postings.department, DEPARTMENT_WEIGHT * match));
+            this.postings += postings.name.size + postings.department.size;
+        }
+
+        /**
+         * @return doc lists, the best scoring first
+         */
+        List<DocList> lists() {
+            lists.sort((a, b) -> Double.compare(b.score, a.score));
+            return lists;
+        }
+
+        int match(String term) {
+            if (term.startsWith(word)) {
+                return term.length() == word.length() ? EXACT : PREFIX;
+            }
+            return fuzzy.containsKey(term) ? FUZZY : 0;
+        }
+    }
+
+    private static final class Candidate {
+
+        private final int doc;
+
+        private final double score;
+
+        Candidate(int doc, double score) {
+            this.doc = doc;
+            this.score = score;
+        }
+    }
+}
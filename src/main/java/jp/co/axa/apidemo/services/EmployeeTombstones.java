@@ -0,0 +1,47 @@
+package jp.co.axa.apidemo.services;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ids deleted recently, for the in-memory views updated by the after-commit listeners
+ * The listeners of concurrent transactions may run out of commit order, so an update committed before a delete
+ * can be published after it: a tombstone makes the view ignore it, ids are never used again
+ * A tombstone is dropped after retentionMs, far longer than a listener lags behind its commit
+ * Not thread safe
+ */
+final class EmployeeTombstones {
+
+    private final long retentionMs;
+
+    /**
+     * Millis of the delete by id, oldest first
+     */
+    private final LinkedHashMap<Long, Long> deletes = new LinkedHashMap<>();
+
+    EmployeeTombstones(long retentionMs) {
+        this.retentionMs = retentionMs;
+    }
+
+    void add(long id, long now) {
+        expire(now);
+        deletes.remove(id);
+        deletes.put(id, now);
+    }
+
+    /**
+     * @return true when the employee was deleted within retentionMs
+     */
+    boolean contains(long id, long now) {
+        expire(now);
+        return deletes.containsKey(id);
+    }
+
+    private void expire(long now) {
+        Iterator<Map.Entry<Long, Long>> oldest = deletes.entrySet().iterator();
+        while (oldest.hasNext() && oldest.next().getValue() < now - retentionMs) {
+            oldest.remove();
+        }
+    }
+}
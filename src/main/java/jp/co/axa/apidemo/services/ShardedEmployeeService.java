@@ -0,0 +1,242 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.dto.EmployeeQuery;
+import jp.co.axa.apidemo.dto.EmployeeSearchHit;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.repositories.EmployeeShards;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Sharded employee service, enabled by app.employees.shards.enabled, see {@link EmployeeShards}
+ * Each operation runs {@link EmployeeServiceImpl} on the shard it concerns:
+ * - a single employee on the shard owning its id, a new one on the shard chosen by the shard key
+ * - bulk writes split by shard, the parts in parallel, each in its own transaction (a bulk write is atomic per shard only)
+ * - list queries on every shard in parallel, the sorted pages merged and cut to the page size
+ * Caches, search index, stats and change stream are shared by the shards, fed by the committed writes as before
+ */
+@Service
+@Primary
+@Log4j2
+@ConditionalOnProperty(name = "app.employees.shards.enabled", havingValue = "true")
+public class ShardedEmployeeService implements EmployeeService {
+
+    private final EmployeeService delegate;
+
+    private final EmployeeRepository employeeRepository;
+
+    private final EmployeeShards shards;
+
+    private final Cache employeesCache;
+
+    @Autowired
+    public ShardedEmployeeService(@Qualifier("employeeServiceImpl") EmployeeService delegate,
+                                  EmployeeRepository employeeRepository, EmployeeShards shards, CacheManager cacheManager) {
+        this.delegate = delegate;
+        this.employeeRepository = employeeRepository;
+        this.shards = shards;
+        this.employeesCache = cacheManager.getCache(EmployeeServiceImpl.EMPLOYEES_CACHE);
+    }
+
+    /**
+     * Keyset page by id, merged from the shards (the page cache only knows one database)
+     */
+    @Override
+    public List<EmployeeView> retrieveEmployees(long afterId, int size) {
+        EmployeeQuery query = new EmployeeQuery();
+        query.setAfterId(afterId);
+        query.setSize(size);
+        return retrieveEmployees(query);
+    }
+
+    @Override
+    public List<EmployeeView> retrieveEmployees(EmployeeQuery query) {
+        List<List<EmployeeView>> pages = shards.shared(() -> shards.onEach(shard -> delegate.retrieveEmployees(query)));
+        return merge(pages, viewOrder(query), query.getSize());
+    }
+
+    @Override
+    public List<Map<String, Object>> retrieveEmployeeFields(EmployeeQuery query) {
+        List<List<Map<String, Object>>> pages = shards.shared(() -> shards.onEach(shard -> delegate.retrieveEmployeeFields(query)));
+        return merge(pages, fieldsOrder(query), query.getSize());
+    }
+
+    /**
+     * All employees in id order, range after range (not in a transaction, which would hold one shard's connection)
+     */
+    @Override
+    public void streamEmployees(Consumer<Employee> action) {
+        shards.shared(() -> {
+            employeeRepository.forEachEmployee(action);
+            return null;
+        });
+        log.debug("Streamed all employees");
+    }
+
+    @Override
+    public List<EmployeeSearchHit> searchEmployees(String text, int limit) {
+        return delegate.searchEmployees(text, limit);
+    }
+
+    /**
+     * A cached employee is served without waiting; a miss goes to the owning shard with {@link EmployeeShards#onOwner}:
+     * a read resolving the shard before a move and querying it after would miss the employee, and cache the miss
+     */
+    @Override
+    public EmployeeView getEmployee(Long employeeId) {
+        Cache.ValueWrapper cached = employeesCache.get(employeeId);
+        if (cached != null) {
+            return (EmployeeView) cached.get();
+        }
+        return shards.onOwner(employeeId, () -> delegate.getEmployee(employeeId));
+    }
+
+    /**
+     * The new id is drawn from the placement shard's sequence, never in a range being moved
+     */
+    @Override
+    public Employee saveEmployee(Employee employee) {
+        return shards.on(shards.placementOf(employee), () -> delegate.saveEmployee(employee));
+    }
+
+    @Override
+    public boolean deleteEmployee(Long employeeId, Long expectedVersion) {
+        return shards.onOwner(employeeId, () -> delegate.deleteEmployee(employeeId, expectedVersion));
+    }
+
+    @Override
+    public Employee updateEmployee(Employee employee) {
+        if (employee.getId() == null) {
+            return shards.on(0, () -> delegate.updateEmployee(employee));
+        }
+        return shards.onOwner(employee.getId(), () -> delegate.updateEmployee(employee));
+    }
+
+    @Override
+    public List<Employee> saveEmployees(List<Employee> employees) {
+        return shards.shared(() -> bulk(employees, shards::placementOf, delegate::saveEmployees));
+    }
+
+    @Override
+    public List<Employee> updateEmployees(List<Employee> employees) {
+        return shards.shared(() -> bulk(employees, employee -> shardOf(employee.getId()), delegate::updateEmployees));
+    }
+
+    @Override
+    public Set<Long> deleteEmployees(List<Long> employeeIds) {
+        return shards.shared(() -> {
+            Map<Integer, List<Long>> byShard = new LinkedHashMap<>();
+            for (Long id : employeeIds) {
+                byShard.computeIfAbsent(shardOf(id), shard -> new ArrayList<>()).add(id);
+            }
+            Set<Long> deleted = new HashSet<>();
+            for (Set<Long> part : shards.onShards(byShard.keySet(), shard -> delegate.deleteEmployees(byShard.get(shard))).values()) {
+                deleted.addAll(part);
+            }
+            return deleted;
+        });
+    }
+
+    /**
+     * Split the employees by shard, run the bulk operation on each part in parallel
+     * @return results of the operation, in the order of the employees
+     */
+    private List<Employee> bulk(List<Employee> employees, Function<Employee, Integer> shardOf,
+                                Function<List<Employee>, List<Employee>> operation) {
+        Map<Integer, List<Integer>> positions = new LinkedHashMap<>();
+        for (int i = 0; i < employees.size(); i++) {
+            positions.computeIfAbsent(shardOf.apply(employees.get(i)), shard -> new ArrayList<>()).add(i);
+        }
+        Map<Integer, List<Employee>> results = shards.onShards(positions.keySet(), shard -> {
+            List<Employee> part = new ArrayList<>(positions.get(shard).size());
+            for (int position : positions.get(shard)) {
+                part.add(employees.get(position));
+            }
+            return operation.apply(part);
+        });
+        Employee[] ordered = new Employee[employees.size()];
+        for (Map.Entry<Integer, List<Integer>> shard : positions.entrySet()) {
+            List<Employee> result = results.get(shard.getKey());
+            for (int i = 0; i < result.size(); i++) {
+                ordered[shard.getValue().get(i)] = result.get(i);
+            }
+        }
+        return Arrays.asList(ordered);
+    }
+
+    private int shardOf(Long employeeId) {
+        return employeeId == null ? 0 : shards.shardOf(employeeId);
+    }
+
+    /**
+     * Merge pages sorted in the same order, up to limit elements
+     */
+    static <T> List<T> merge(List<List<T>> pages, Comparator<T> order, int limit) {
+        int[] next = new int[pages.size()];
+        List<T> merged = new ArrayList<>(limit);
+        while (merged.size() < limit) {
+            int smallest = -1;
+            for (int i = 0; i < pages.size(); i++) {
+                if (next[i] < pages.get(i).size() && (smallest < 0
+                        || order.compare(pages.get(i).get(next[i]), pages.get(smallest).get(next[smallest])) < 0)) {
+                    smallest = i;
+                }
+            }
+            if (smallest < 0) {
+                break;
+            }
+            merged.add(pages.get(smallest).get(next[smallest]++));
+        }
+        return merged;
+    }
+
+    /**
+     * Order of the query's SQL: sort attribute (nulls first ascending, as in H2) then id
+     */
+    static Comparator<EmployeeView> viewOrder(EmployeeQuery query) {
+        Comparator<EmployeeView> order;
+        switch (query.getSortField()) {
+            case "name":
+                order = Comparator.comparing(EmployeeView::getName, Comparator.nullsFirst(Comparator.naturalOrder()));
+                break;
+            case "salary":
+                order = Comparator.comparing(EmployeeView::getSalary, Comparator.nullsFirst(Comparator.naturalOrder()));
+                break;
+            case "department":
+                order = Comparator.comparing(EmployeeView::getDepartment, Comparator.nullsFirst(Comparator.naturalOrder()));
+                break;
+            default:
+                order = (a, b) -> 0;
+        }
+        order = order.thenComparing(EmployeeView::getId);
+        return query.isDescending() ? order.reversed() : order;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Comparator<Map<String, Object>> fieldsOrder(EmployeeQuery query) {
+        String sortField = query.getSortField();
+        Comparator<Map<String, Object>> order = Comparator.comparing(row -> (Comparable<Object>) row.get(sortField),
+                Comparator.nullsFirst(Comparator.naturalOrder()));
+        order = order.thenComparing(row -> (Long) row.get("id"));
+        return query.isDescending() ? order.reversed() : order;
+    }
+}
@@ -0,0 +1,519 @@
+package jp.co.axa.apidemo.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.co.axa.apidemo.dto.EmployeeQuery;
+import jp.co.axa.apidemo.dto.EmployeeSearchHit;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.events.EmployeeChangeEvent;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind employee service, enabled by app.employees.write-behind.enabled
+ * A single create / update / delete is appended to the {@link EmployeeJournal} and acknowledged,
+ * a background writer applies the pending writes to the table in batches, the latest write of an employee wins
+ * getEmployee reads the pending writes first, lists and stats follow once the writes are applied
+ * Bulk writes apply the pending writes first, then go through {@link EmployeeServiceImpl}
+ * Writes of the same employee, single or bulk, are serialized by a striped lock, the journal is forced outside of any lock
+ * (group commit), applied writes are dropped by deleting whole journal segments, and the writer stops with the context's lifecycle, before the listener beans are destroyed
+ */
+@Service
+@Primary
+@Log4j2
+@ConditionalOnProperty(name = "app.employees.write-behind.enabled", havingValue = "true")
+public class WriteBehindEmployeeService implements EmployeeService, SmartLifecycle {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final EmployeeService delegate;
+
+    private final EmployeeRepository employeeRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Cache cache;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final EmployeeJournal journal;
+
+    private final int maxBatch;
+
+    private final long flushIntervalMs;
+
+    /**
+     * Acknowledged writes not applied yet, by employee id, in journal order, guarded by this
+     */
+    private final Map<Long, EmployeeJournal.Entry> pending = new LinkedHashMap<>();
+
+    /**
+     * Only one batch is applied at a time
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * Held by an update / delete from the read of the current state to the journaled write, by employee id,
+     * and by a bulk update / delete for all of its ids until it commits
+     */
+    private final ReentrantLock[] writeLocks = new ReentrantLock[LOCK_STRIPES];
+
+    private volatile boolean running;
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "employee-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public WriteBehindEmployeeService(@Qualifier("employeeServiceImpl") EmployeeService delegate,
+                                      EmployeeRepository employeeRepository,
+                                      PlatformTransactionManager transactionManager,
+                                      CacheManager cacheManager,
+                                      ApplicationEventPublisher eventPublisher,
+                                      ObjectMapper objectMapper,
+                                      @Value("${app.employees.write-behind.journal:data/employee-journal.log}") String journalPath,
+                                      @Value("${app.employees.write-behind.fsync:true}") boolean fsync,
+                                      @Value("${app.employees.write-behind.max-batch:500}") int maxBatch,
+                                      @Value("${app.employees.write-behind.flush-interval-ms:100}") long flushIntervalMs) throws IOException {
+        this.delegate = delegate;
+        this.employeeRepository = employeeRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cache = cacheManager.getCache(EmployeeServiceImpl.EMPLOYEES_CACHE);
+        this.eventPublisher = eventPublisher;
+        this.journal = new EmployeeJournal(Paths.get(journalPath), objectMapper, fsync);
+        this.maxBatch = maxBatch;
+        this.flushIntervalMs = flushIntervalMs;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Replay the writes left in the journal by the previous run, then start the writer
+     */
+    @PostConstruct
+    public void replay() throws IOException {
+        List<EmployeeJournal.Entry> entries = journal.readAll();
+        synchronized (this) {
+            for (EmployeeJournal.Entry entry : entries) {
+                pending.put(entry.getId(), entry);
+            }
+        }
+        if (!entries.isEmpty()) {
+            log.info("Replaying {} journaled writes of {} employees", entries.size(), pending.size());
+            flush();
+        }
+        writer.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Stop the writer and apply what is left while the change listeners are still there,
+     * the journal keeps anything that failed or is written later, for the next start
+     */
+    @Override
+    public void stop() {
+        running = false;
+        writer.shutdown();
+        flushQuietly();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    @Override
+    public List<EmployeeView> retrieveEmployees(long afterId, int size) {
+        return delegate.retrieveEmployees(afterId, size);
+    }
+
+    @Override
+    public List<EmployeeView> retrieveEmployees(EmployeeQuery query) {
+        return delegate.retrieveEmployees(query);
+    }
+
+    @Override
+    public List<Map<String, Object>> retrieveEmployeeFields(EmployeeQuery query) {
+        return delegate.retrieveEmployeeFields(query);
+    }
+
+    @Override
+    public void streamEmployees(Consumer<Employee> action) {
+        delegate.streamEmployees(action);
+    }
+
+    @Override
+    public List<EmployeeSearchHit> searchEmployees(String text, int limit) {
+        return delegate.searchEmployees(text, limit);
+    }
+
+    /**
+     * Get employee info by employee id, a pending write wins over the table
+     */
+    @Override
+    public EmployeeView getEmployee(Long employeeId) {
+        EmployeeJournal.Entry entry;
+        synchronized (this) {
+            entry = pending.get(employeeId);
+        }
+        if (entry != null) {
+            return entry.isDeleted() ? null : entry.toView();
+        }
+        return delegate.getEmployee(employeeId);
+    }
+
+    /**
+     * journal new employee info, the id is drawn right away
+     */
+    @Override
+    public Employee saveEmployee(Employee employee) {
+        employee.setId(transactionTemplate.execute(status -> employeeRepository.nextId()));
+        employee.setVersion(0L);
+        sync(record(EmployeeJournal.Entry.of(employee, true)));
+        return employee;
+    }
+
+    /**
+     * journal the deletion of an existing employee
+     * @param expectedVersion only delete this version, null: any version
+     * @return true: deleted, false: not exist
+     * @throws OptimisticLockingFailureException the employee exists with another version
+     */
+    @Override
+    public boolean deleteEmployee(Long employeeId, Long expectedVersion) {
+        long number;
+        ReentrantLock lock = writeLock(employeeId);
+        lock.lock();
+        try {
+            EmployeeView current = getEmployee(employeeId);
+            if (current == null) {
+                return false;
+            }
+            checkVersion(current, expectedVersion);
+            number = record(EmployeeJournal.Entry.deleted(employeeId, current.getVersion()));
+        } finally {
+            lock.unlock();
+        }
+        sync(number);
+        return true;
+    }
+
+    /**
+     * journal the update of an existing employee
+     * @return updated employee, null: not exist
+     * @throws OptimisticLockingFailureException the employee exists with another version
+     */
+    @Override
+    public Employee updateEmployee(Employee employee) {
+        long number;
+        ReentrantLock lock = writeLock(employee.getId());
+        lock.lock();
+        try {
+            EmployeeView current = getEmployee(employee.getId());
+            if (current == null) {
+                return null;
+            }
+            checkVersion(current, employee.getVersion());
+            employee.setVersion(current.getVersion() + 1);
+            number = record(EmployeeJournal.Entry.of(employee, isCreated(employee.getId())));
+        } finally {
+            lock.unlock();
+        }
+        sync(number);
+        return employee;
+    }
+
+    /**
+     * new employees get new ids, no single write can be journaled for them meanwhile
+     */
+    @Override
+    public List<Employee> saveEmployees(List<Employee> employees) {
+        flush();
+        return delegate.saveEmployees(employees);
+    }
+
+    /**
+     * apply the pending writes then update, holding the write locks of the ids until the update commits,
+     * so no single write is journaled in between from the version before it
+     */
+    @Override
+    public List<Employee> updateEmployees(List<Employee> employees) {
+        List<Long> ids = new ArrayList<>(employees.size());
+        for (Employee employee : employees) {
+            ids.add(employee.getId());
+        }
+        List<ReentrantLock> locks = lockAll(ids);
+        try {
+            flush();
+            return delegate.updateEmployees(employees);
+        } finally {
+            unlockAll(locks);
+        }
+    }
+
+    /**
+     * apply the pending writes then delete, holding the write locks of the ids until the delete commits
+     */
+    @Override
+    public Set<Long> deleteEmployees(List<Long> employeeIds) {
+        List<ReentrantLock> locks = lockAll(employeeIds);
+        try {
+            flush();
+            return delegate.deleteEmployees(employeeIds);
+        } finally {
+            unlockAll(locks);
+        }
+    }
+
+    /**
+     * Apply every pending write to the table, in batches of max-batch
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            try {
+                journal.rotate();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            List<EmployeeJournal.Entry> batch = nextBatch();
+            while (!batch.isEmpty()) {
+                apply(batch);
+                batch = nextBatch();
+            }
+        }
+    }
+
+    /**
+     * @return number of acknowledged writes not applied yet
+     */
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Write-behind batch failed, retried on the next run", e);
+        }
+    }
+
+    private synchronized List<EmployeeJournal.Entry> nextBatch() {
+        List<EmployeeJournal.Entry> batch = new ArrayList<>(Math.min(pending.size(), maxBatch));
+        for (EmployeeJournal.Entry entry : pending.values()) {
+            if (batch.size() == maxBatch) {
+                break;
+            }
+            batch.add(entry);
+        }
+        return batch;
+    }
+
+    /**
+     * Apply one batch in one transaction, then refresh the cache, drop the applied writes
+     * and delete the journal segments left with no pending write
+     * a write only replaces an older row: a replayed write, or one overtaken by another path, is skipped
+     * the change events are published in the transaction, so their listeners run after commit
+     */
+    private void apply(List<EmployeeJournal.Entry> batch) {
+        List<EmployeeJournal.Entry> writes = new ArrayList<>();
+        List<EmployeeJournal.Entry> deletes = new ArrayList<>();
+        for (EmployeeJournal.Entry entry : batch) {
+            (entry.isDeleted() ? deletes : writes).add(entry);
+        }
+        Set<EmployeeJournal.Entry> applied = transactionTemplate.execute(status -> {
+            Set<EmployeeJournal.Entry> done = new HashSet<>();
+            int[] updated = employeeRepository.updateAllIfOlder(toEmployees(writes));
+            Map<Long, EmployeeJournal.Entry> missing = new HashMap<>();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] != 0) {
+                    done.add(writes.get(i));
+                } else if (writes.get(i).isCreated()) {
+                    missing.put(writes.get(i).getId(), writes.get(i));
+                }
+            }
+            if (!missing.isEmpty()) {
+                // a create applied before a crash is already there
+                missing.keySet().removeAll(employeeRepository.findExistingIds(missing.keySet()));
+                employeeRepository.insertAll(toEmployees(missing.values()));
+                done.addAll(missing.values());
+            }
+            int[] removed = employeeRepository.removeAllUpToVersion(toEmployees(deletes));
+            for (int i = 0; i < removed.length; i++) {
+                if (removed[i] != 0) {
+                    done.add(deletes.get(i));
+                }
+            }
+            for (EmployeeJournal.Entry entry : batch) {
+                if (done.contains(entry)) {
+                    publish(entry);
+                }
+            }
+            return done;
+        });
+
+        for (EmployeeJournal.Entry entry : batch) {
+            if (entry.isDeleted() || !applied.contains(entry)) {
+                cache.evict(entry.getId());
+            } else {
+                cache.put(entry.getId(), entry.toView());
+            }
+        }
+        long oldestPending;
+        synchronized (this) {
+            for (EmployeeJournal.Entry entry : batch) {
+                pending.remove(entry.getId(), entry);
+            }
+            oldestPending = pending.isEmpty() ? Long.MAX_VALUE : pending.values().iterator().next().getNumber();
+        }
+        try {
+            journal.release(oldestPending);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (applied.size() < batch.size()) {
+            log.warn("Skipped {} employee writes already applied or overtaken by a newer version", batch.size() - applied.size());
+        }
+        log.debug("Applied {} employee writes", applied.size());
+    }
+
+    private void publish(EmployeeJournal.Entry entry) {
+        if (entry.isDeleted()) {
+            eventPublisher.publishEvent(EmployeeChangeEvent.deleted(entry.getId(), entry.getVersion()));
+        } else if (entry.isCreated()) {
+            eventPublisher.publishEvent(EmployeeChangeEvent.created(entry.toEmployee()));
+        } else {
+            eventPublisher.publishEvent(EmployeeChangeEvent.updated(entry.toEmployee()));
+        }
+    }
+
+    /**
+     * journal then buffer one write, together so the pending writes stay in journal order
+     * (the first one then holds the oldest journal segment); not durable before {@link #sync(long)}
+     * @return number of the write in the journal
+     */
+    private synchronized long record(EmployeeJournal.Entry entry) {
+        long number;
+        try {
+            number = journal.write(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        entry.setNumber(number);
+        pending.remove(entry.getId());
+        pending.put(entry.getId(), entry);
+        return number;
+    }
+
+    /**
+     * wait until the write is durable, sharing the force with the concurrent writes
+     */
+    private void sync(long number) {
+        try {
+            journal.sync(number);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.debug("Journaled write {}", number);
+    }
+
+    private ReentrantLock writeLock(Long employeeId) {
+        return writeLocks[stripe(employeeId)];
+    }
+
+    private static int stripe(Long employeeId) {
+        return (int) (employeeId % LOCK_STRIPES + LOCK_STRIPES) % LOCK_STRIPES;
+    }
+
+    /**
+     * lock the stripes of the ids, in stripe order so two bulk writes cannot deadlock
+     * @return the locks held, to pass to {@link #unlockAll(List)}
+     */
+    private List<ReentrantLock> lockAll(Collection<Long> employeeIds) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (Long employeeId : employeeIds) {
+            if (employeeId != null) {
+                stripes.add(stripe(employeeId));
+            }
+        }
+        List<ReentrantLock> locks = new ArrayList<>(stripes.size());
+        for (int stripe : stripes) {
+            writeLocks[stripe].lock();
+            locks.add(writeLocks[stripe]);
+        }
+        return locks;
+    }
+
+    private static void unlockAll(List<ReentrantLock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    private static List<Employee> toEmployees(Collection<EmployeeJournal.Entry> entries) {
+        List<Employee> employees = new ArrayList<>(entries.size());
+        for (EmployeeJournal.Entry entry : entries) {
+            employees.add(entry.toEmployee());
+        }
+        return employees;
+    }
+
+    /**
+     * whether the employee only exists as a pending write
+     */
+    private synchronized boolean isCreated(Long employeeId) {
+        EmployeeJournal.Entry entry = pending.get(employeeId);
+        return entry != null && entry.isCreated();
+    }
+
+    private static void checkVersion(EmployeeView current, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(current.getVersion())) {
+            throw new OptimisticLockingFailureException("Employee " + current.getId() + " is not at version " + expectedVersion);
+        }
+    }
+}
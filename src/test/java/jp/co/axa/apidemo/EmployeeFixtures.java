@@ -0,0 +1,54 @@
+package jp.co.axa.apidemo;
+
+import jp.co.axa.apidemo.entities.Employee;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Objects;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Employees for the tests
+ */
+public final class EmployeeFixtures {
+
+    private EmployeeFixtures() {
+    }
+
+    /**
+     * @return a new employee, not saved yet
+     */
+    public static Employee employee(String name, String department, int salary) {
+        Employee employee = new Employee();
+        employee.setName(name);
+        employee.setDepartment(department);
+        employee.setSalary(salary);
+        return employee;
+    }
+
+    /**
+     * @return an employee as stored at this id and version, e.g. for a change event
+     */
+    public static Employee employee(long id, String name, String department, int salary, Long version) {
+        Employee employee = employee(name, department, salary);
+        employee.setId(id);
+        employee.setVersion(version);
+        return employee;
+    }
+
+    /**
+     * Add the employee with the API
+     * @return the created employee
+     */
+    public static Employee post(TestRestTemplate restTemplate, HttpHeaders headers, Employee employee) {
+        ResponseEntity<Employee> response = restTemplate.exchange("/api/v1/employees", HttpMethod.POST,
+                new HttpEntity<>(employee, headers), Employee.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return Objects.requireNonNull(response.getBody());
+    }
+}
@@ -0,0 +1,78 @@
+package jp.co.axa.apidemo;
+
+import jp.co.axa.apidemo.entities.Employee;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Objects;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static jp.co.axa.apidemo.EmployeeFixtures.post;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("fast-start")
+@DirtiesContext
+public class FastStartProfileTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    private HttpHeaders headers;
+
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+    }
+
+    /**
+     * test the application beans are lazy and the APIs still work once started
+     */
+    @Test
+    public void testLazyBeansServeRequests() {
+        assertTrue(context.getBeanFactory().getBeanDefinition("employeeController").isLazyInit());
+        assertFalse(context.getBeanFactory().containsSingleton("employeeBulkController"));
+
+        Employee employee = employee("Lazy", "startup", 10);
+        Employee saved = post(restTemplate, headers, employee);
+        ResponseEntity<Employee> response = restTemplate.exchange("/api/v1/employees/" + Objects.requireNonNull(saved).getId(),
+                HttpMethod.GET, new HttpEntity<>(headers), Employee.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("Lazy", Objects.requireNonNull(response.getBody()).getName());
+        assertTrue(context.getBeanFactory().containsSingleton("employeeController"));
+    }
+
+    /**
+     * test the API docs are scanned in the background after the startup
+     */
+    @Test
+    public void testDeferredApiDocs() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000;
+        ResponseEntity<String> response;
+        do {
+            Thread.sleep(50);
+            response = restTemplate.exchange("/v2/api-docs", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        } while (response.getStatusCode() != HttpStatus.OK && System.currentTimeMillis() < deadline);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(Objects.requireNonNull(response.getBody()).contains("/api/v1/employees/{employeeId}"));
+    }
+}
@@ -0,0 +1,74 @@
+package jp.co.axa.apidemo;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "app.datasource.h2-file=./target/h2-file-profile-test/employees")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2-file")
+@DirtiesContext
+public class H2FileProfileTest {
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.datasource.h2-file}")
+    private String file;
+
+    /**
+     * test the profile sizes the pool and the JDBC batches
+     */
+    @Test
+    public void testPoolAndBatchSettings() {
+        HikariDataSource hikari = (HikariDataSource) dataSource;
+        assertEquals(8, hikari.getMaximumPoolSize());
+        assertEquals(8, hikari.getMinimumIdle());
+        assertTrue(hikari.getJdbcUrl().startsWith("jdbc:h2:file:"));
+        assertEquals("100", entityManagerFactory.getProperties().get("hibernate.jdbc.batch_size"));
+    }
+
+    /**
+     * test the employees are written to the database file
+     */
+    @Test
+    public void testEmployeesInFile() {
+        Employee employee = employee("Filed", "storage", 10);
+        Long id = employeeService.saveEmployee(employee).getId();
+
+        assertEquals("Filed", jdbcTemplate.queryForObject("SELECT EMPLOYEE_NAME FROM EMPLOYEE WHERE ID = ?", String.class, id));
+        assertEquals("64", jdbcTemplate.queryForObject(
+                "SELECT VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE NAME = 'QUERY_CACHE_SIZE'", String.class).trim());
+        assertEquals("0", jdbcTemplate.queryForObject(
+                "SELECT VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE NAME = 'WRITE_DELAY'", String.class).trim());
+        assertTrue(Files.exists(Paths.get(file + ".mv.db")));
+    }
+}
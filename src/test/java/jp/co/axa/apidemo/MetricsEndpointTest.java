@@ -0,0 +1,65 @@
+package jp.co.axa.apidemo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class MetricsEndpointTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private HttpHeaders headers;
+
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+    }
+
+    /**
+     * test the prometheus scrape has endpoint, repository, cache and pool metrics
+     */
+    @Test
+    public void testPrometheusScrape() {
+        HttpEntity<String> entity = new HttpEntity<>(null, headers);
+        restTemplate.exchange("/api/v1/employees/1", HttpMethod.GET, entity, String.class);
+        restTemplate.exchange("/api/v1/employees", HttpMethod.GET, entity, String.class);
+
+        ResponseEntity<String> response = restTemplate.exchange("/actuator/prometheus", HttpMethod.GET, entity, String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertThat(response.getBody())
+                .contains("http_server_requests_seconds_bucket{")
+                .contains("uri=\"/api/v1/employees/{employeeId}\"")
+                .contains("employee_repository_seconds_bucket{")
+                .contains("method=\"findViewById\"")
+                .contains("method=\"findViewPage\"")
+                .contains("cache_gets_total{")
+                .contains("cache=\"employees\"")
+                .contains("hikaricp_connections_active");
+    }
+
+    /**
+     * test the scrape needs authentication
+     */
+    @Test
+    public void testPrometheusScrapeUnauthorized() {
+        ResponseEntity<String> response = restTemplate.getForEntity("/actuator/prometheus", String.class);
+
+        assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+    }
+}
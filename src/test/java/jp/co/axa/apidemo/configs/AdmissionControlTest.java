@@ -0,0 +1,149 @@
+package jp.co.axa.apidemo.configs;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class AdmissionControlTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    private final AtomicInteger poolWaiters = new AtomicInteger();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private AdmissionProperties properties;
+
+    @Before
+    public void setup() {
+        properties = new AdmissionProperties();
+        properties.getRateLimit().setCapacity(10);
+        properties.getRateLimit().setRefillPerSecond(2);
+        AdmissionProperties.Cost bulk = new AdmissionProperties.Cost();
+        bulk.setPattern("/api/v1/employees/bulk");
+        bulk.setCost(4);
+        AdmissionProperties.Cost export = new AdmissionProperties.Cost();
+        export.setMethod("GET");
+        export.setPattern("/api/v1/employees/export");
+        export.setCost(100);
+        properties.getCosts().add(bulk);
+        properties.getCosts().add(export);
+        properties.getShed().setMaxInFlight(3);
+        properties.getShed().setMaxPoolWaiters(2);
+        properties.getShed().setLatencyThreshold(Duration.ofMillis(500));
+        properties.getShed().setLatencyHalfLife(Duration.ofSeconds(1));
+    }
+
+    /**
+     * test the first matching rule gives the cost, 1 otherwise
+     */
+    @Test
+    public void testCosts() {
+        AdmissionControl control = control();
+        assertEquals(4, control.cost("POST", "/api/v1/employees/bulk"));
+        assertEquals(4, control.cost("DELETE", "/api/v1/employees/bulk"));
+        assertEquals(100, control.cost("GET", "/api/v1/employees/export"));
+        assertEquals(1, control.cost("POST", "/api/v1/employees/export"));
+        assertEquals(1, control.cost("GET", "/api/v1/employees/1"));
+        properties.setCosts(Collections.emptyList());
+        assertEquals(1, control().cost("POST", "/api/v1/employees/bulk"));
+    }
+
+    /**
+     * test each client has its bucket, a rejected client is told when enough tokens are back
+     */
+    @Test
+    public void testTokenBucketPerClient() {
+        AdmissionControl control = control();
+        for (int i = 0; i < 2; i++) {
+            assertNull(control.admit("user:a", 4));
+            control.release(4, 0);
+        }
+        AdmissionControl.Rejection rejection = control.admit("user:a", 4);
+        assertNotNull(rejection);
+        assertEquals(AdmissionControl.Reason.RATE_LIMIT, rejection.getReason());
+        assertEquals(429, rejection.getReason().getStatus());
+        // 2 tokens left, 2 per second
+        assertEquals(1, rejection.getRetryAfterSeconds());
+        assertNull(control.admit("user:b", 4));
+        control.release(4, 0);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertNull(control.admit("user:a", 4));
+        control.release(4, 0);
+        assertEquals(1.0, meterRegistry.get("admission.rejected").tag("reason", "rate_limit").counter().count(), 0);
+    }
+
+    /**
+     * test a request costing more than the capacity needs a full bucket
+     */
+    @Test
+    public void testCostAboveCapacity() {
+        AdmissionControl control = control();
+        assertNull(control.admit("user:a", 100));
+        control.release(100, 0);
+        AdmissionControl.Rejection rejection = control.admit("user:a", 1);
+        assertNotNull(rejection);
+        assertNotNull(control.admit("user:a", 100));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertNull(control.admit("user:a", 100));
+    }
+
+    /**
+     * test every request is shed past max-in-flight, until one is released
+     */
+    @Test
+    public void testMaxInFlight() {
+        AdmissionControl control = control();
+        for (int i = 0; i < 3; i++) {
+            assertNull(control.admit("user:a", 1));
+        }
+        AdmissionControl.Rejection rejection = control.admit("user:b", 1);
+        assertEquals(AdmissionControl.Reason.IN_FLIGHT, rejection.getReason());
+        assertEquals(503, rejection.getReason().getStatus());
+        control.release(1, 0);
+        assertNull(control.admit("user:b", 1));
+    }
+
+    /**
+     * test pool waiters and a high latency only shed the expensive requests, and shedding ends with them
+     */
+    @Test
+    public void testOverloadShedsExpensiveRequests() {
+        AdmissionControl control = control();
+        poolWaiters.set(3);
+        assertEquals(AdmissionControl.Reason.POOL, control.admit("user:a", 4).getReason());
+        assertNull(control.admit("user:a", 1));
+        control.release(1, 0);
+        poolWaiters.set(2);
+        assertNull(control.admit("user:a", 4));
+        control.release(4, TimeUnit.SECONDS.toNanos(60));
+
+        // slow expensive requests are not a signal, slow cheap ones are
+        for (int i = 0; i < 10; i++) {
+            assertNull(control.admit("user:b", 1));
+            control.release(1, TimeUnit.SECONDS.toNanos(2));
+        }
+        assertEquals(AdmissionControl.Reason.LATENCY, control.admit("user:c", 2).getReason());
+        assertNull(control.admit("user:c", 1));
+        control.release(1, TimeUnit.SECONDS.toNanos(2));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3));
+        assertNull(control.admit("user:c", 2));
+        assertEquals(1.0, meterRegistry.get("admission.rejected").tag("reason", "latency").counter().count(), 0);
+    }
+
+    private AdmissionControl control() {
+        return new AdmissionControl(properties, meterRegistry, poolWaiters::get, now::get);
+    }
+}
@@ -0,0 +1,114 @@
+package jp.co.axa.apidemo.configs;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+public class CachingAuthenticationProviderTest {
+
+    private AtomicInteger delegateCalls;
+
+    /**
+     * Run by the delegate once the password is checked, before the result is cached
+     */
+    private Runnable afterCheck;
+
+    private CachingAuthenticationProvider provider;
+
+    private CredentialCacheUserDetailsManager users;
+
+    @Before
+    public void setup() {
+        InMemoryUserDetailsManager inMemoryUsers = new InMemoryUserDetailsManager(
+                User.withUsername("admin").password("{noop}admin").roles("ADMIN").build());
+        delegateCalls = new AtomicInteger();
+        afterCheck = () -> { };
+        DaoAuthenticationProvider dao = new DaoAuthenticationProvider() {
+            @Override
+            public Authentication authenticate(Authentication authentication) {
+                delegateCalls.incrementAndGet();
+                Authentication result = super.authenticate(authentication);
+                afterCheck.run();
+                return result;
+            }
+        };
+        dao.setUserDetailsService(inMemoryUsers);
+        dao.setPasswordEncoder(PasswordEncoderFactories.createDelegatingPasswordEncoder());
+        provider = new CachingAuthenticationProvider(dao, 100, Duration.ofMinutes(1));
+        users = new CredentialCacheUserDetailsManager(inMemoryUsers, provider);
+    }
+
+    /**
+     * test the second authentication is served from the cache
+     */
+    @Test
+    public void testCachedAuthentication() {
+        Authentication first = provider.authenticate(token("admin", "admin"));
+        Authentication second = provider.authenticate(token("admin", "admin"));
+
+        assertEquals(1, delegateCalls.get());
+        assertThat(second.isAuthenticated()).isTrue();
+        assertEquals(first.getAuthorities(), second.getAuthorities());
+    }
+
+    /**
+     * test a wrong password is never served from the cache
+     */
+    @Test(expected = BadCredentialsException.class)
+    public void testWrongPasswordNotCached() {
+        provider.authenticate(token("admin", "admin"));
+        provider.authenticate(token("admin", "wrong"));
+    }
+
+    /**
+     * test changing the user evicts its cached authentications
+     */
+    @Test
+    public void testEvictOnUserChange() {
+        provider.authenticate(token("admin", "admin"));
+        users.updateUser(User.withUsername("admin").password("{noop}changed").roles("ADMIN").build());
+
+        try {
+            provider.authenticate(token("admin", "admin"));
+        } catch (BadCredentialsException expected) {
+            assertEquals(2, delegateCalls.get());
+            return;
+        }
+        throw new AssertionError("old password still accepted");
+    }
+
+    /**
+     * test a user change while the old password is being checked does not cache the old password
+     */
+    @Test
+    public void testEvictDuringAuthentication() {
+        afterCheck = () -> users.updateUser(User.withUsername("admin").password("{noop}changed").roles("ADMIN").build());
+        assertThat(provider.authenticate(token("admin", "admin")).isAuthenticated()).isTrue();
+        afterCheck = () -> { };
+
+        try {
+            provider.authenticate(token("admin", "admin"));
+        } catch (BadCredentialsException expected) {
+            assertEquals(2, delegateCalls.get());
+            assertThat(provider.authenticate(token("admin", "changed")).isAuthenticated()).isTrue();
+            return;
+        }
+        throw new AssertionError("old password still accepted");
+    }
+
+    private static UsernamePasswordAuthenticationToken token(String username, String password) {
+        return new UsernamePasswordAuthenticationToken(username, password);
+    }
+}
@@ -0,0 +1,128 @@
+package jp.co.axa.apidemo.configs;
+
+import jp.co.axa.apidemo.ApiDemoApplication;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Objects;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Two instances on the same database and the same in-process shared tier:
+ * this test context, and a second application started by the test
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"app.cache.shared.enabled=true", "app.cache.shared.cluster=two-level-test"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class TwoLevelCacheTest {
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private SharedCacheTier tier;
+
+    private ConfigurableApplicationContext otherNode;
+
+    private EmployeeService otherService;
+
+    @Before
+    public void startOtherNode() {
+        otherNode = new SpringApplicationBuilder(ApiDemoApplication.class)
+                .run("--server.port=0",
+                        "--spring.jpa.hibernate.ddl-auto=none",
+                        "--app.cache.shared.enabled=true",
+                        "--app.cache.shared.cluster=two-level-test");
+        otherService = otherNode.getBean(EmployeeService.class);
+    }
+
+    @After
+    public void stopOtherNode() {
+        otherNode.close();
+    }
+
+    /**
+     * test a write on one instance is seen by the other one, which had the employee cached locally
+     */
+    @Test
+    public void testWritesInvalidateOtherInstance() {
+        Employee employee = employee("Shared", "Cluster", 1000);
+        Long id = employeeService.saveEmployee(employee).getId();
+
+        assertEquals("Shared", otherService.getEmployee(id).getName());
+        assertThat(localSize(otherNode)).isEqualTo(1L);
+
+        Employee update = employeeService.getEmployee(id).toEmployee();
+        update.setName("Shared updated");
+        update.setVersion(null);
+        employeeService.updateEmployee(update);
+        assertEquals("Shared updated", otherService.getEmployee(id).getName());
+
+        employeeService.deleteEmployee(id, null);
+        assertNull(otherService.getEmployee(id));
+    }
+
+    /**
+     * test an entry loaded by one instance is served to the other from the shared tier
+     */
+    @Test
+    public void testSharedTierServesOtherInstance() {
+        Employee employee = employee("Loaded once", "Cluster", 2000);
+        Long id = otherService.saveEmployee(employee).getId();
+
+        CaffeineCache local = (CaffeineCache) otherNode.getBean(CacheManager.class).getCache("employees");
+        local.getNativeCache().invalidateAll();
+
+        assertEquals("Loaded once", employeeService.getEmployee(id).getName());
+        long missesBefore = local.getNativeCache().stats().missCount();
+        assertEquals("Loaded once", otherService.getEmployee(id).getName());
+        assertEquals(missesBefore + 1, local.getNativeCache().stats().missCount());
+        assertThat(local.getNativeCache().estimatedSize()).isEqualTo(1L);
+    }
+
+    /**
+     * test a value loaded while another instance commits a write is not kept, locally or in the shared tier
+     */
+    @Test
+    public void testLoadRacingInvalidationNotKept() {
+        TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache("employees");
+        Cache otherCache = otherNode.getBean(CacheManager.class).getCache("employees");
+
+        // the other instance commits a write while this one is loading from the database
+        String loaded = Objects.requireNonNull(cache).get(990021L, () -> {
+            Objects.requireNonNull(otherCache).evict(990022L);
+            return "loaded before the write";
+        });
+
+        assertEquals("loaded before the write", loaded);
+        assertNull(tier.get("employees", 990021L));
+        assertNull(cache.getNativeCache().getIfPresent(990021L));
+    }
+
+    private static long localSize(ConfigurableApplicationContext node) {
+        CaffeineCache cache = (CaffeineCache) node.getBean(CacheManager.class).getCache("employees");
+        return cache.getNativeCache().estimatedSize();
+    }
+}
@@ -0,0 +1,53 @@
+package jp.co.axa.apidemo.configs;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "app.web.virtual-threads=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class VirtualThreadsConfigTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ServletWebServerApplicationContext context;
+
+    /**
+     * test requests are served on virtual threads on Java 21+, on the Tomcat pool before
+     */
+    @Test
+    public void testConnectorExecutor() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+        ResponseEntity<String> response = restTemplate.exchange("/api/v1/employees", HttpMethod.GET,
+                new HttpEntity<>(null, headers), String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+
+        Executor executor = ((TomcatWebServer) context.getWebServer()).getTomcat()
+                .getConnector().getProtocolHandler().getExecutor();
+        ExecutorService virtual = VirtualThreadsConfig.newVirtualThreadPerTaskExecutor();
+        if (virtual != null) {
+            assertEquals(virtual.getClass(), executor.getClass());
+            virtual.shutdown();
+        } else {
+            assertThat(executor).isInstanceOf(org.apache.tomcat.util.threads.ThreadPoolExecutor.class);
+        }
+    }
+}
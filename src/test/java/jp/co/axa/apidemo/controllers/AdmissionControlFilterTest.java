@@ -0,0 +1,75 @@
+package jp.co.axa.apidemo.controllers;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.provisioning.UserDetailsManager;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "app.admission.rate-limit.capacity=10",
+        "app.admission.rate-limit.refill-per-second=0.1"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class AdmissionControlFilterTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private UserDetailsManager userDetailsManager;
+
+    /**
+     * test a user over its limit gets 429 with Retry-After, another user is not affected
+     */
+    @Test
+    public void testRateLimitPerUser() {
+        HttpHeaders first = user("limited");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(HttpStatus.NOT_FOUND, get("/api/v1/employees/0", first).getStatusCode());
+        }
+        ResponseEntity<String> limited = get("/api/v1/employees/0", first);
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, limited.getStatusCode());
+        assertThat(Long.parseLong(limited.getHeaders().getFirst(HttpHeaders.RETRY_AFTER))).isBetween(1L, 10L);
+        assertThat(limited.getBody()).contains("\"error\"");
+
+        assertEquals(HttpStatus.NOT_FOUND, get("/api/v1/employees/0", user("other")).getStatusCode());
+    }
+
+    /**
+     * test an export weighs a full bucket, the actuator is not limited
+     */
+    @Test
+    public void testWeightedCost() {
+        HttpHeaders headers = user("exporter");
+        assertEquals(HttpStatus.OK, get("/api/v1/employees/export", headers).getStatusCode());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, get("/api/v1/employees/0", headers).getStatusCode());
+
+        headers.setBasicAuth("admin", "admin");
+        for (int i = 0; i < 12; i++) {
+            assertEquals(HttpStatus.OK, get("/actuator/health", headers).getStatusCode());
+        }
+        assertThat(get("/actuator/prometheus", headers).getBody())
+                .contains("admission_rejected_total{application=\"api-demo\",reason=\"rate_limit\",}");
+    }
+
+    private HttpHeaders user(String name) {
+        userDetailsManager.createUser(User.withUsername(name).password("{noop}" + name).roles("ADMIN").build());
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBasicAuth(name, name);
+        return headers;
+    }
+
+    private ResponseEntity<String> get(String url, HttpHeaders headers) {
+        return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    }
+}
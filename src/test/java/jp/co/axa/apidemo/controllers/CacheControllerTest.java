@@ -0,0 +1,90 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Map;
+import java.util.Objects;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class CacheControllerTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    private HttpHeaders headers;
+
+    private final ParameterizedTypeReference<Map<String, Object>> statsType = new ParameterizedTypeReference<Map<String, Object>>() {};
+
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+    }
+
+    /**
+     * test hit and miss counts of the employees cache
+     */
+    @Test
+    public void testEmployeesCacheStats() {
+        Employee employee = employee("Tom", "Sales", 20000);
+        employeeRepository.save(employee);
+
+        HttpEntity<String> entity = new HttpEntity<>(null, headers);
+        Map<String, Object> before = getStats(entity);
+        for (int i = 0; i < 3; i++) {
+            restTemplate.exchange("/api/v1/employees/" + employee.getId(), HttpMethod.GET, entity, Employee.class);
+        }
+        Map<String, Object> after = getStats(entity);
+
+        assertEquals(1L, count(after, "missCount") - count(before, "missCount"));
+        assertEquals(2L, count(after, "hitCount") - count(before, "hitCount"));
+        assertThat(count(after, "estimatedSize")).isGreaterThan(0L);
+    }
+
+    /**
+     * test stats of an unknown cache
+     */
+    @Test
+    public void testUnknownCache() {
+        HttpEntity<String> entity = new HttpEntity<>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(
+                "/api/v1/caches/unknown",
+                HttpMethod.GET,
+                entity,
+                String.class);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    private Map<String, Object> getStats(HttpEntity<String> entity) {
+        ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
+                "/api/v1/caches/employees", HttpMethod.GET, entity, statsType);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return Objects.requireNonNull(response.getBody());
+    }
+
+    private static long count(Map<String, Object> stats, String name) {
+        return ((Number) stats.get(name)).longValue();
+    }
+}
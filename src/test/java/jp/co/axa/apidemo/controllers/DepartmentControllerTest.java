@@ -0,0 +1,138 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.dto.DepartmentStats;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.events.EmployeeChangeEvent;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.services.DepartmentStatsRollup;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Map;
+import java.util.Objects;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class DepartmentControllerTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private DepartmentStatsRollup departmentStatsRollup;
+
+    private HttpHeaders headers;
+
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+    }
+
+    /**
+     * test the stats follow add, update and delete
+     */
+    @Test
+    public void testStatsFollowWrites() {
+        long[] ids = new long[4];
+        for (int i = 0; i < 4; i++) {
+            ids[i] = save("Stats", 100 * (i + 1));
+        }
+        Map<String, Object> stats = getStats("Stats");
+        assertEquals(4, stats.get("headcount"));
+        assertEquals(1000, stats.get("totalSalary"));
+        assertEquals(100, stats.get("minSalary"));
+        assertEquals(400, stats.get("maxSalary"));
+        assertEquals(250.0, stats.get("averageSalary"));
+        assertEquals(200, stats.get("p50Salary"));
+        assertEquals(400, stats.get("p90Salary"));
+
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        restTemplate.exchange("/api/v1/employees/" + ids[3], HttpMethod.PUT,
+                new HttpEntity<>("{\"name\":\"Moved\", \"department\":\"Stats-Other\", \"salary\":900}", headers), String.class);
+        restTemplate.exchange("/api/v1/employees/" + ids[0], HttpMethod.DELETE, new HttpEntity<>(null, headers), String.class);
+
+        stats = getStats("Stats");
+        assertEquals(2, stats.get("headcount"));
+        assertEquals(200, stats.get("minSalary"));
+        assertEquals(300, stats.get("maxSalary"));
+        assertEquals(900, getStats("Stats-Other").get("maxSalary"));
+    }
+
+    /**
+     * test the rollup rebuilt from the table
+     */
+    @Test
+    public void testRebuild() {
+        Employee employee = employee("Direct", "Stats-Rebuild", 123);
+        employeeRepository.save(employee);
+
+        departmentStatsRollup.rebuild();
+
+        DepartmentStats stats = departmentStatsRollup.getStats("Stats-Rebuild");
+        assertEquals(1, stats.getHeadcount());
+        assertEquals(123, stats.getP99Salary());
+    }
+
+    /**
+     * test changes published out of commit order: an older version or an update after the delete is ignored
+     */
+    @Test
+    public void testOutOfOrderChanges() {
+        Employee employee = employee(990002, "Newer", "Stats-Newer", 500, 2L);
+        departmentStatsRollup.onEmployeeChange(EmployeeChangeEvent.updated(employee));
+
+        Employee older = employee(990002, "Older", "Stats-Older", 400, 1L);
+        departmentStatsRollup.onEmployeeChange(EmployeeChangeEvent.updated(older));
+        assertNull(departmentStatsRollup.getStats("Stats-Older"));
+        assertEquals(500, departmentStatsRollup.getStats("Stats-Newer").getMaxSalary());
+
+        departmentStatsRollup.onEmployeeChange(EmployeeChangeEvent.deleted(990002L, 2L));
+        departmentStatsRollup.onEmployeeChange(EmployeeChangeEvent.updated(older));
+        assertNull(departmentStatsRollup.getStats("Stats-Newer"));
+        assertNull(departmentStatsRollup.getStats("Stats-Older"));
+    }
+
+    /**
+     * test the stats of a department without employee
+     */
+    @Test
+    public void testUnknownDepartment() {
+        ResponseEntity<String> response = restTemplate.exchange("/api/v1/departments/Nobody/stats", HttpMethod.GET,
+                new HttpEntity<>(null, headers), String.class);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    private long save(String department, int salary) {
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        String requestBody = "{\"name\":\"Stat\", \"department\":\"" + department + "\", \"salary\":" + salary + "}";
+        ResponseEntity<Employee> response = restTemplate.exchange("/api/v1/employees", HttpMethod.POST,
+                new HttpEntity<>(requestBody, headers), Employee.class);
+        return Objects.requireNonNull(response.getBody()).getId();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getStats(String department) {
+        ResponseEntity<Map> response = restTemplate.exchange("/api/v1/departments/" + department + "/stats",
+                HttpMethod.GET, new HttpEntity<>(null, headers), Map.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return (Map<String, Object>) response.getBody();
+    }
+}
@@ -0,0 +1,131 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "app.employees.bulk.chunk-size=2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class EmployeeBulkControllerTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    private HttpHeaders headers;
+
+    private final ParameterizedTypeReference<List<Map<String, Object>>> resultType = new ParameterizedTypeReference<List<Map<String, Object>>>() {};
+
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+    }
+
+    /**
+     * test bulk add with a JSON array, over several chunks, with one invalid item
+     */
+    @Test
+    public void testBulkSaveJsonArray() {
+        String requestBody = "[{\"name\":\"A\", \"department\":\"engineering\", \"salary\":1}," +
+                "{\"name\":\"\", \"department\":\"engineering\", \"salary\":2}," +
+                "{\"name\":\"C\", \"department\":\"engineering\", \"salary\":3}," +
+                "{\"name\":\"D\", \"department\":\"engineering\", \"salary\":4}]";
+        List<Map<String, Object>> results = exchange(HttpMethod.POST, requestBody, MediaType.APPLICATION_JSON);
+
+        assertEquals(4, results.size());
+        assertEquals(201, results.get(0).get("status"));
+        assertEquals(400, results.get(1).get("status"));
+        assertEquals(201, results.get(2).get("status"));
+        assertEquals(201, results.get(3).get("status"));
+        long id = ((Number) results.get(3).get("id")).longValue();
+        assertThat(employeeRepository.findById(id).map(Employee::getName)).contains("D");
+    }
+
+    /**
+     * test bulk add ignores the version in the request, a created employee starts at the initial version
+     */
+    @Test
+    public void testBulkSaveIgnoresVersion() {
+        String requestBody = "[{\"name\":\"A\", \"department\":\"engineering\", \"salary\":1, \"version\":7}]";
+        List<Map<String, Object>> results = exchange(HttpMethod.POST, requestBody, MediaType.APPLICATION_JSON);
+
+        assertEquals(201, results.get(0).get("status"));
+        long id = ((Number) results.get(0).get("id")).longValue();
+        assertThat(employeeRepository.findById(id).map(Employee::getVersion)).contains(0L);
+    }
+
+    /**
+     * test bulk update with NDJSON, with one id not exist
+     */
+    @Test
+    public void testBulkUpdateNdjson() {
+        Employee employee = employeeRepository.save(employee("Before", "engineering", 1));
+        String requestBody = "{\"id\":" + employee.getId() + ", \"name\":\"After\", \"department\":\"engineering\", \"salary\":5}\n" +
+                "{\"id\":99999, \"name\":\"Nobody\", \"department\":\"engineering\", \"salary\":5}\n";
+        List<Map<String, Object>> results = exchange(HttpMethod.PUT, requestBody,
+                MediaType.parseMediaType(EmployeeBulkController.APPLICATION_NDJSON_VALUE));
+
+        assertEquals(200, results.get(0).get("status"));
+        assertEquals(404, results.get(1).get("status"));
+        assertThat(employeeRepository.findById(employee.getId()).map(Employee::getName)).contains("After");
+    }
+
+    /**
+     * test bulk delete, with one id not exist
+     */
+    @Test
+    public void testBulkDelete() {
+        Employee employee = employeeRepository.save(employee("Deleted", "engineering", 1));
+        List<Map<String, Object>> results = exchange(HttpMethod.DELETE, "[" + employee.getId() + ", 99999]",
+                MediaType.APPLICATION_JSON);
+
+        assertEquals(200, results.get(0).get("status"));
+        assertEquals(404, results.get(1).get("status"));
+        assertThat(employeeRepository.existsById(employee.getId())).isFalse();
+    }
+
+    /**
+     * test bulk add stops at a malformed item
+     */
+    @Test
+    public void testBulkSaveMalformed() {
+        String requestBody = "{\"name\":\"A\", \"department\":\"engineering\", \"salary\":1}\n{\"name\":";
+        List<Map<String, Object>> results = exchange(HttpMethod.POST, requestBody,
+                MediaType.parseMediaType(EmployeeBulkController.APPLICATION_NDJSON_VALUE));
+
+        assertEquals(2, results.size());
+        assertEquals(201, results.get(0).get("status"));
+        assertEquals(400, results.get(1).get("status"));
+    }
+
+    private List<Map<String, Object>> exchange(HttpMethod method, String requestBody, MediaType contentType) {
+        headers.setContentType(contentType);
+        ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(
+                "/api/v1/employees/bulk", method, new HttpEntity<>(requestBody, headers), resultType);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return Objects.requireNonNull(response.getBody());
+    }
+}
@@ -0,0 +1,176 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.entities.Employee;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static jp.co.axa.apidemo.EmployeeFixtures.post;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"app.employees.changes.capacity=20", "app.employees.changes.stream-timeout-ms=2000"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class EmployeeChangeControllerTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private HttpHeaders headers;
+
+    private final ParameterizedTypeReference<Map<String, Object>> batchType = new ParameterizedTypeReference<Map<String, Object>>() {};
+
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+    }
+
+    /**
+     * test a poll after the latest sequence returns the following writes in order, with their type and state
+     */
+    @Test
+    public void testPollFollowsWrites() {
+        long latest = latest();
+        Employee saved = post(restTemplate, headers, employee("Changed", "engineering", 10));
+        saved.setSalary(20);
+        restTemplate.exchange("/api/v1/employees/" + saved.getId(), HttpMethod.PUT, new HttpEntity<>(saved, headers), Employee.class);
+        restTemplate.exchange("/api/v1/employees/" + saved.getId(), HttpMethod.DELETE, new HttpEntity<>(headers), String.class);
+
+        Map<String, Object> batch = poll("after=" + latest + "&wait=0");
+        List<Map<String, Object>> changes = changes(batch);
+        assertEquals(3, changes.size());
+        assertEquals(latest + 3, ((Number) batch.get("last")).longValue());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(latest + 1 + i, ((Number) changes.get(i).get("sequence")).longValue());
+            assertEquals(saved.getId().longValue(), ((Number) changes.get(i).get("employeeId")).longValue());
+        }
+        assertEquals("CREATED", changes.get(0).get("type"));
+        assertEquals("UPDATED", changes.get(1).get("type"));
+        assertEquals(20, ((Map<?, ?>) changes.get(1).get("employee")).get("salary"));
+        assertEquals("DELETED", changes.get(2).get("type"));
+        assertNull(changes.get(2).get("employee"));
+        // the delete carries the version it removed
+        assertEquals(changes.get(1).get("version"), changes.get(2).get("version"));
+        assertNotNull(changes.get(2).get("version"));
+
+        Map<String, Object> next = poll("after=" + (latest + 3) + "&limit=1&wait=0");
+        assertThat(changes(next)).isEmpty();
+        assertEquals(latest + 3, ((Number) next.get("last")).longValue());
+    }
+
+    /**
+     * test a long-poll without changes waits for the next write
+     */
+    @Test
+    public void testLongPollWaits() throws Exception {
+        long latest = latest();
+        CompletableFuture<Map<String, Object>> pending = CompletableFuture.supplyAsync(() -> poll("after=" + latest + "&wait=20"));
+        Thread.sleep(300);
+        Employee saved = post(restTemplate, headers, employee("Awaited", "engineering", 10));
+
+        List<Map<String, Object>> changes = changes(pending.get(10, TimeUnit.SECONDS));
+        assertEquals(1, changes.size());
+        assertEquals(saved.getId().longValue(), ((Number) changes.get(0).get("employeeId")).longValue());
+    }
+
+    /**
+     * test a sequence no longer retained is 410 with the latest sequence, bad parameters are 400
+     */
+    @Test
+    public void testGoneAndBadRequest() {
+        StringBuilder bulk = new StringBuilder("[");
+        for (int i = 0; i < 25; i++) {
+            bulk.append(i == 0 ? "" : ",").append("{\"name\":\"Bulk ").append(i).append("\", \"department\":\"ops\", \"salary\":1}");
+        }
+        HttpHeaders jsonHeaders = new HttpHeaders();
+        jsonHeaders.putAll(headers);
+        jsonHeaders.setContentType(MediaType.APPLICATION_JSON);
+        restTemplate.exchange("/api/v1/employees/bulk", HttpMethod.POST, new HttpEntity<>(bulk.append("]").toString(), jsonHeaders), String.class);
+        long latest = latest();
+
+        ResponseEntity<Map<String, Object>> gone = restTemplate.exchange("/api/v1/employees/changes?after=0", HttpMethod.GET,
+                new HttpEntity<>(headers), batchType);
+        assertEquals(HttpStatus.GONE, gone.getStatusCode());
+        assertEquals(latest, ((Number) Objects.requireNonNull(gone.getBody()).get("latest")).longValue());
+
+        for (String query : new String[]{"after=-1", "limit=0", "wait=100", "after=" + (latest + 1000)}) {
+            ResponseEntity<String> response = restTemplate.exchange("/api/v1/employees/changes?" + query, HttpMethod.GET,
+                    new HttpEntity<>(headers), String.class);
+            assertThat(response.getStatusCode()).isIn(HttpStatus.BAD_REQUEST, HttpStatus.GONE);
+        }
+    }
+
+    /**
+     * test the event stream resumes after Last-Event-ID, with the sequence as event id
+     */
+    @Test
+    public void testEventStreamResumes() {
+        long latest = latest();
+        post(restTemplate, headers, employee("Streamed 1", "engineering", 10));
+        post(restTemplate, headers, employee("Streamed 2", "engineering", 10));
+
+        List<String> ids = restTemplate.execute("/api/v1/employees/changes", HttpMethod.GET, request -> {
+            request.getHeaders().setBasicAuth("admin", "admin");
+            request.getHeaders().setAccept(Collections.singletonList(MediaType.TEXT_EVENT_STREAM));
+            request.getHeaders().set("Last-Event-ID", Long.toString(latest));
+        }, response -> {
+            assertThat(response.getHeaders().getContentType().isCompatibleWith(MediaType.TEXT_EVENT_STREAM)).isTrue();
+            List<String> seen = new ArrayList<>();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+            String line;
+            while (seen.size() < 2 && (line = reader.readLine()) != null) {
+                if (line.startsWith("id:")) {
+                    seen.add(line.substring(3));
+                } else if (line.startsWith("data:")) {
+                    assertThat(line).contains("\"type\":\"CREATED\"").contains("Streamed");
+                }
+            }
+            return seen;
+        });
+
+        assertEquals(Arrays.asList(Long.toString(latest + 1), Long.toString(latest + 2)), ids);
+    }
+
+    private long latest() {
+        return ((Number) poll("wait=0").get("last")).longValue();
+    }
+
+    private Map<String, Object> poll(String query) {
+        ResponseEntity<Map<String, Object>> response = restTemplate.exchange("/api/v1/employees/changes?" + query,
+                HttpMethod.GET, new HttpEntity<>(headers), batchType);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return Objects.requireNonNull(response.getBody());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> changes(Map<String, Object> batch) {
+        return (List<Map<String, Object>>) batch.get("changes");
+    }
+}
@@ -242,7 +242,7 @@ public class EmployeeControllerTest {
                 entity,
                 String.class);
 
-        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
     }
 
     /**
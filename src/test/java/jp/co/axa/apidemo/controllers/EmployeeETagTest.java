@@ -0,0 +1,144 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class EmployeeETagTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    private HttpHeaders headers;
+
+    private Employee employee;
+
+    // fill test data before test
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+
+        employee = employee("Versioned", "Finance", 30000);
+        employeeRepository.save(employee);
+    }
+
+    /**
+     * test conditional get of one employee
+     */
+    @Test
+    public void testGetEmployeeNotModified() {
+        ResponseEntity<Employee> response = restTemplate.exchange(url(), HttpMethod.GET,
+                new HttpEntity<>(null, headers), Employee.class);
+        String eTag = response.getHeaders().getETag();
+        assertEquals("\"0\"", eTag);
+
+        headers.setIfNoneMatch(eTag);
+        ResponseEntity<Employee> notModified = restTemplate.exchange(url(), HttpMethod.GET,
+                new HttpEntity<>(null, headers), Employee.class);
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+    }
+
+    /**
+     * test conditional get of the employee list
+     */
+    @Test
+    public void testGetEmployeesNotModified() {
+        ResponseEntity<String> response = restTemplate.exchange("/api/v1/employees", HttpMethod.GET,
+                new HttpEntity<>(null, headers), String.class);
+        String eTag = response.getHeaders().getETag();
+        assertThat(eTag).startsWith("W/");
+
+        headers.setIfNoneMatch(eTag);
+        ResponseEntity<String> notModified = restTemplate.exchange("/api/v1/employees", HttpMethod.GET,
+                new HttpEntity<>(null, headers), String.class);
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+    }
+
+    /**
+     * test update with the current version, then with the stale one
+     */
+    @Test
+    public void testUpdateIfMatch() {
+        String requestBody = "{\"name\":\"Fancy\", \"department\":\"engineering\", \"salary\":50000}";
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setIfMatch("\"0\"");
+
+        ResponseEntity<Employee> response = restTemplate.exchange(url(), HttpMethod.PUT,
+                new HttpEntity<>(requestBody, headers), Employee.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"1\"", response.getHeaders().getETag());
+
+        ResponseEntity<String> stale = restTemplate.exchange(url(), HttpMethod.PUT,
+                new HttpEntity<>(requestBody, headers), String.class);
+        assertEquals(HttpStatus.PRECONDITION_FAILED, stale.getStatusCode());
+    }
+
+    /**
+     * test update without If-Match returns the new version
+     */
+    @Test
+    public void testUpdateWithoutIfMatch() {
+        String requestBody = "{\"name\":\"Fancy\", \"department\":\"engineering\", \"salary\":50000}";
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        ResponseEntity<Employee> response = restTemplate.exchange(url(), HttpMethod.PUT,
+                new HttpEntity<>(requestBody, headers), Employee.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"1\"", response.getHeaders().getETag());
+    }
+
+    /**
+     * test delete with a stale version
+     */
+    @Test
+    public void testDeleteIfMatchStale() {
+        headers.setIfMatch("\"7\"");
+        ResponseEntity<String> response = restTemplate.exchange(url(), HttpMethod.DELETE,
+                new HttpEntity<>(null, headers), String.class);
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+        assertThat(employeeRepository.existsById(employee.getId())).isTrue();
+    }
+
+    /**
+     * test update and delete with If-Match "*" on an id not exist
+     */
+    @Test
+    public void testIfMatchAnyNotExist() {
+        String requestBody = "{\"name\":\"Fancy\", \"department\":\"engineering\", \"salary\":50000}";
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setIfMatch("*");
+
+        ResponseEntity<String> updated = restTemplate.exchange("/api/v1/employees/99999", HttpMethod.PUT,
+                new HttpEntity<>(requestBody, headers), String.class);
+        assertEquals(HttpStatus.PRECONDITION_FAILED, updated.getStatusCode());
+
+        ResponseEntity<String> deleted = restTemplate.exchange("/api/v1/employees/99999", HttpMethod.DELETE,
+                new HttpEntity<>(null, headers), String.class);
+        assertEquals(HttpStatus.PRECONDITION_FAILED, deleted.getStatusCode());
+    }
+
+    private String url() {
+        return "/api/v1/employees/" + employee.getId();
+    }
+}
@@ -0,0 +1,150 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class EmployeeFilterTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private HttpHeaders headers;
+
+    private final ParameterizedTypeReference<List<Map<String, Object>>> rowsType = new ParameterizedTypeReference<List<Map<String, Object>>>() {};
+
+    // fill test data before test
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+
+        if (employeeRepository.count() == 0) {
+            String[] names = {"Alice", "Albert", "Bob", "Carol", "Alan"};
+            int[] salaries = {500, 300, 300, 100, 300};
+            for (int i = 0; i < names.length; i++) {
+                Employee employee = employee(names[i], i % 2 == 0 ? "Filter-A" : "Filter-B", salaries[i]);
+                employeeRepository.save(employee);
+            }
+            Employee other = employee("Al_x", "Filter-C", 1);
+            employeeRepository.save(other);
+        }
+    }
+
+    /**
+     * test filter by department and salary range
+     */
+    @Test
+    public void testFilterDepartmentAndSalary() {
+        List<Map<String, Object>> rows = get("/api/v1/employees?department=Filter-A&minSalary=200&maxSalary=400");
+
+        assertThat(names(rows)).containsExactlyInAnyOrder("Bob", "Alan");
+    }
+
+    /**
+     * test name prefix, with the LIKE wildcard escaped
+     */
+    @Test
+    public void testNamePrefix() {
+        assertThat(names(get("/api/v1/employees?namePrefix=Al"))).containsExactlyInAnyOrder("Alice", "Albert", "Alan", "Al_x");
+        assertThat(names(get("/api/v1/employees?namePrefix=Al_"))).containsExactly("Al_x");
+    }
+
+    /**
+     * test sort by salary desc over several pages, ties broken by id desc
+     */
+    @Test
+    public void testSortedKeysetPages() {
+        String url = "/api/v1/employees?namePrefix=A&sort=salary,desc&size=2";
+        List<String> names = new ArrayList<>();
+        while (url != null) {
+            ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(url, HttpMethod.GET,
+                    new HttpEntity<>(null, headers), rowsType);
+            names.addAll(names(Objects.requireNonNull(response.getBody())));
+            String link = response.getHeaders().getFirst(HttpHeaders.LINK);
+            url = link == null ? null : link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+        }
+
+        assertEquals(Arrays.asList("Alice", "Alan", "Albert", "Al_x"), names);
+    }
+
+    /**
+     * test sparse field selection
+     */
+    @Test
+    public void testFields() {
+        List<Map<String, Object>> rows = get("/api/v1/employees?department=Filter-B&sort=name&fields=name,salary");
+
+        assertEquals(2, rows.size());
+        assertThat(rows.get(0).keySet()).containsExactly("name", "salary");
+        assertEquals("Albert", rows.get(0).get("name"));
+    }
+
+    /**
+     * test invalid sort and fields
+     */
+    @Test
+    public void testInvalidParameters() {
+        HttpEntity<String> entity = new HttpEntity<>(null, headers);
+        assertEquals(HttpStatus.BAD_REQUEST, restTemplate.exchange("/api/v1/employees?sort=password",
+                HttpMethod.GET, entity, String.class).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, restTemplate.exchange("/api/v1/employees?fields=name,password",
+                HttpMethod.GET, entity, String.class).getStatusCode());
+    }
+
+    /**
+     * test the indexes are created with the schema
+     */
+    @Test
+    public void testIndexes() {
+        List<String> indexes = jdbcTemplate.queryForList(
+                "SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = 'EMPLOYEE'", String.class);
+
+        assertThat(indexes).contains("IDX_EMPLOYEE_DEPARTMENT", "IDX_EMPLOYEE_SALARY", "IDX_EMPLOYEE_NAME");
+    }
+
+    private List<Map<String, Object>> get(String url) {
+        ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(url, HttpMethod.GET,
+                new HttpEntity<>(null, headers), rowsType);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return Objects.requireNonNull(response.getBody());
+    }
+
+    private static List<String> names(List<Map<String, Object>> rows) {
+        List<String> names = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            names.add((String) row.get("name"));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,160 @@
+package jp.co.axa.apidemo.controllers;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.metrics.RepositoryMetricsAspect;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static jp.co.axa.apidemo.EmployeeFixtures.post;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class EmployeePageCacheTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private HttpHeaders headers;
+
+    private final ParameterizedTypeReference<List<Employee>> listType = new ParameterizedTypeReference<List<Employee>>() {};
+
+    private final ParameterizedTypeReference<Map<String, Object>> statsType = new ParameterizedTypeReference<Map<String, Object>>() {};
+
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+    }
+
+    /**
+     * test a repeated page is served from the page cache
+     */
+    @Test
+    public void testPageServedFromCache() {
+        Map<String, Object> before = getStats();
+        getPage();
+        getPage();
+        Map<String, Object> after = getStats();
+
+        assertThat(count(after, "hitCount") - count(before, "hitCount")).isGreaterThanOrEqualTo(1L);
+    }
+
+    /**
+     * test the cached page follows create, update and delete of its employees
+     */
+    @Test
+    public void testPageFollowsWrites() {
+        getPage();
+        Employee created = post(restTemplate, headers, employee("Cached", "Cache", 1000));
+        assertThat(names(getPage())).contains("Cached");
+
+        created.setName("Renamed");
+        ResponseEntity<Employee> updated = restTemplate.exchange("/api/v1/employees/" + created.getId(), HttpMethod.PUT,
+                new HttpEntity<>(created, headers), Employee.class);
+        assertEquals(HttpStatus.OK, updated.getStatusCode());
+        List<Employee> page = getPage();
+        assertThat(names(page)).contains("Renamed").doesNotContain("Cached");
+        Employee listed = page.stream().filter(e -> e.getId().equals(created.getId())).findFirst().orElseThrow(AssertionError::new);
+        assertEquals(getEmployee(created.getId()).getVersion(), listed.getVersion());
+
+        restTemplate.exchange("/api/v1/employees/" + created.getId(), HttpMethod.DELETE,
+                new HttpEntity<>(null, headers), String.class);
+        assertThat(getPage()).noneMatch(e -> e.getId().equals(created.getId()));
+    }
+
+    /**
+     * test walking cached pages again reaches no repository: every employee of the pages stays in the employees cache
+     */
+    @Test
+    public void testCachedPagesNeverReachRepository() {
+        List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            Employee employee = employee("Walked " + i, "Cache", 1000);
+            employees.add(employee);
+        }
+        employeeRepository.saveAll(employees);
+        List<Long> firstWalk = walkPages(6);
+
+        long before = repositoryCalls();
+        assertEquals(firstWalk, walkPages(6));
+        assertEquals(0, repositoryCalls() - before);
+    }
+
+    /**
+     * @return ids of the first pages of 100 employees
+     */
+    private List<Long> walkPages(int count) {
+        List<Long> ids = new ArrayList<>();
+        long afterId = 0;
+        for (int i = 0; i < count; i++) {
+            List<EmployeeView> page = employeeService.retrieveEmployees(afterId, 100);
+            page.forEach(employee -> ids.add(employee.getId()));
+            afterId = page.get(page.size() - 1).getId();
+        }
+        return ids;
+    }
+
+    private long repositoryCalls() {
+        return meterRegistry.find(RepositoryMetricsAspect.METRIC_NAME).timers().stream().mapToLong(Timer::count).sum();
+    }
+
+    private List<Employee> getPage() {
+        ResponseEntity<List<Employee>> response = restTemplate.exchange("/api/v1/employees?size=1000", HttpMethod.GET,
+                new HttpEntity<>(null, headers), listType);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return Objects.requireNonNull(response.getBody());
+    }
+
+    private Employee getEmployee(Long id) {
+        return restTemplate.exchange("/api/v1/employees/" + id, HttpMethod.GET,
+                new HttpEntity<>(null, headers), Employee.class).getBody();
+    }
+
+    private Map<String, Object> getStats() {
+        ResponseEntity<Map<String, Object>> response = restTemplate.exchange("/api/v1/caches/employeePages",
+                HttpMethod.GET, new HttpEntity<>(null, headers), statsType);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return Objects.requireNonNull(response.getBody());
+    }
+
+    private static List<String> names(List<Employee> employees) {
+        return employees.stream().map(Employee::getName).collect(Collectors.toList());
+    }
+
+    private static long count(Map<String, Object> stats, String name) {
+        return ((Number) stats.get(name)).longValue();
+    }
+}
@@ -0,0 +1,106 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.Objects;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class EmployeePaginationTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    private HttpHeaders headers;
+
+    private final ParameterizedTypeReference<List<Employee>> listType = new ParameterizedTypeReference<List<Employee>>() {};
+
+    // fill test data before test
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+
+        for (int i = 0; i < 5; i++) {
+            Employee employee = employee("Page" + i, "Paging", 1000 * i);
+            employeeRepository.save(employee);
+        }
+    }
+
+    /**
+     * test walking all pages through the next cursor
+     */
+    @Test
+    public void testKeysetPages() {
+        HttpEntity<String> entity = new HttpEntity<>(null, headers);
+        String url = "/api/v1/employees?size=2";
+        long lastId = 0;
+        int total = 0;
+        while (url != null) {
+            ResponseEntity<List<Employee>> response = restTemplate.exchange(url, HttpMethod.GET, entity, listType);
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            List<Employee> page = Objects.requireNonNull(response.getBody());
+            assertThat(page.size()).isLessThanOrEqualTo(2);
+            for (Employee employee : page) {
+                assertThat(employee.getId()).isGreaterThan(lastId);
+                lastId = employee.getId();
+            }
+            total += page.size();
+            String link = response.getHeaders().getFirst(HttpHeaders.LINK);
+            url = link == null ? null : link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+        }
+        assertEquals(employeeRepository.count(), total);
+    }
+
+    /**
+     * test page size out of range
+     */
+    @Test
+    public void testPageSizeOutOfRange() {
+        HttpEntity<String> entity = new HttpEntity<>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(
+                "/api/v1/employees?size=0",
+                HttpMethod.GET,
+                entity,
+                String.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    /**
+     * test streaming all employees as a JSON array
+     */
+    @Test
+    public void testStreamEmployees() {
+        HttpEntity<String> entity = new HttpEntity<>(null, headers);
+        ResponseEntity<List<Employee>> response = restTemplate.exchange(
+                "/api/v1/employees/stream",
+                HttpMethod.GET,
+                entity,
+                listType);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(employeeRepository.count(), Objects.requireNonNull(response.getBody()).size());
+    }
+}
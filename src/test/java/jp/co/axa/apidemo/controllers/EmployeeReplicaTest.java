@@ -0,0 +1,104 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.events.EmployeeChangeEvent;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.services.EmployeeReadReplica;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.Objects;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static jp.co.axa.apidemo.EmployeeFixtures.post;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "app.employees.replica.enabled=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class EmployeeReplicaTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EmployeeReadReplica replica;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private HttpHeaders headers;
+
+    private final ParameterizedTypeReference<List<Employee>> listType = new ParameterizedTypeReference<List<Employee>>() {};
+
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+    }
+
+    /**
+     * test single and list reads follow the writes, without filling the employees cache
+     */
+    @Test
+    public void testReadsFollowWrites() {
+        Employee employee = employee("Replica", "Off-heap", 5000);
+        Employee created = post(restTemplate, headers, employee);
+        Long id = Objects.requireNonNull(created).getId();
+        assertEquals(employeeRepository.count(), replica.size());
+
+        created.setName("Replica updated");
+        restTemplate.exchange("/api/v1/employees/" + id, HttpMethod.PUT, new HttpEntity<>(created, headers), Employee.class);
+        Employee read = restTemplate.exchange("/api/v1/employees/" + id, HttpMethod.GET,
+                new HttpEntity<>(null, headers), Employee.class).getBody();
+        assertEquals("Replica updated", Objects.requireNonNull(read).getName());
+        assertEquals(Long.valueOf(1), read.getVersion());
+
+        List<Employee> page = restTemplate.exchange("/api/v1/employees?after=" + (id - 1) + "&size=1", HttpMethod.GET,
+                new HttpEntity<>(null, headers), listType).getBody();
+        assertThat(page).extracting(Employee::getName).containsExactly("Replica updated");
+
+        restTemplate.exchange("/api/v1/employees/" + id, HttpMethod.DELETE, new HttpEntity<>(null, headers), String.class);
+        ResponseEntity<String> deleted = restTemplate.exchange("/api/v1/employees/" + id, HttpMethod.GET,
+                new HttpEntity<>(null, headers), String.class);
+        assertEquals(HttpStatus.NOT_FOUND, deleted.getStatusCode());
+
+        CaffeineCache cache = (CaffeineCache) cacheManager.getCache("employees");
+        assertEquals(0L, Objects.requireNonNull(cache).getNativeCache().estimatedSize());
+    }
+
+    /**
+     * test changes published out of commit order: an older version or an update after the delete is ignored
+     */
+    @Test
+    public void testOutOfOrderChanges() {
+        Employee employee = employee(990001, "Newer", "Off-heap", 5000, 2L);
+        replica.onEmployeeChange(EmployeeChangeEvent.updated(employee));
+
+        Employee older = employee(990001, "Older", "Off-heap", 4000, 1L);
+        replica.onEmployeeChange(EmployeeChangeEvent.updated(older));
+        assertEquals("Newer", replica.getEmployee(990001L).getName());
+
+        replica.onEmployeeChange(EmployeeChangeEvent.deleted(990001L, 2L));
+        employee.setVersion(3L);
+        replica.onEmployeeChange(EmployeeChangeEvent.updated(employee));
+        assertNull(replica.getEmployee(990001L));
+    }
+}
@@ -0,0 +1,107 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.events.EmployeeChangeEvent;
+import jp.co.axa.apidemo.services.EmployeeSearchIndex;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static jp.co.axa.apidemo.EmployeeFixtures.post;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class EmployeeSearchTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EmployeeSearchIndex searchIndex;
+
+    private HttpHeaders headers;
+
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+    }
+
+    /**
+     * test the search follows adds, updates and deletes through the APIs
+     */
+    @Test
+    public void testSearchFollowsWrites() {
+        Employee employee = employee("Quentin Zylberstein", "research", 10);
+        Employee saved = post(restTemplate, headers, employee);
+        Long id = Objects.requireNonNull(saved).getId();
+
+        assertThat(searchIds("zylb")).containsExactly(id);
+        assertThat(searchIds("zilberstein")).containsExactly(id);
+        assertThat(searchIds("res quen")).containsExactly(id);
+
+        saved.setName("Quentin Abernathy");
+        restTemplate.exchange("/api/v1/employees/" + id, HttpMethod.PUT, new HttpEntity<>(saved, headers), Employee.class);
+        assertThat(searchIds("zylb")).isEmpty();
+        assertThat(searchIds("abernathy")).containsExactly(id);
+
+        restTemplate.exchange("/api/v1/employees/" + id, HttpMethod.DELETE, new HttpEntity<>(headers), String.class);
+        assertThat(searchIds("abernathy")).isEmpty();
+    }
+
+    /**
+     * test changes published out of commit order: an older version or an update after the delete is ignored
+     */
+    @Test
+    public void testOutOfOrderChanges() {
+        Employee employee = employee(990003, "Ximena Newer", "research", 10, 2L);
+        searchIndex.onEmployeeChange(EmployeeChangeEvent.updated(employee));
+
+        Employee older = employee(990003, "Ximena Older", "research", 10, 1L);
+        searchIndex.onEmployeeChange(EmployeeChangeEvent.updated(older));
+        assertThat(searchIds("ximena")).containsExactly(990003L);
+        assertThat(searchIds("older")).isEmpty();
+
+        searchIndex.onEmployeeChange(EmployeeChangeEvent.deleted(990003L, 2L));
+        searchIndex.onEmployeeChange(EmployeeChangeEvent.updated(older));
+        assertThat(searchIds("ximena")).isEmpty();
+    }
+
+    /**
+     * test a blank text or a limit out of range is a bad request
+     */
+    @Test
+    public void testSearchBadRequest() {
+        for (String query : new String[]{"q=", "q=a&limit=0", "q=a&limit=1000"}) {
+            ResponseEntity<String> response = restTemplate.exchange("/api/v1/employees/search?" + query,
+                    HttpMethod.GET, new HttpEntity<>(headers), String.class);
+            assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        }
+    }
+
+    private List<Long> searchIds(String q) {
+        ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange("/api/v1/employees/search?q=" + q,
+                HttpMethod.GET, new HttpEntity<>(headers), new ParameterizedTypeReference<List<Map<String, Object>>>() {});
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return Objects.requireNonNull(response.getBody()).stream()
+                .map(hit -> ((Number) hit.get("id")).longValue())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,232 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.dto.EmployeeQuery;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.dto.ShardMove;
+import jp.co.axa.apidemo.dto.ShardStatus;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeShards;
+import jp.co.axa.apidemo.services.EmployeeService;
+import jp.co.axa.apidemo.services.EmployeeShardRebalancer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "app.employees.shards.enabled=true",
+        "app.employees.shards.count=3",
+        "app.employees.shards.url=jdbc:h2:mem:sharding_test_{shard};DB_CLOSE_DELAY=-1;LAZY_QUERY_EXECUTION=1"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class EmployeeShardingTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private EmployeeShards shards;
+
+    @Autowired
+    private EmployeeShardRebalancer rebalancer;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private HttpHeaders headers;
+
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+    }
+
+    /**
+     * test an employee is created on its department's shard, in that shard's id range, and read / updated / deleted there
+     */
+    @Test
+    public void testSingleWritesRoutedByDepartment() {
+        for (String department : new String[]{"Audit", "Billing", "Care", "Delivery"}) {
+            Employee created = restTemplate.exchange("/api/v1/employees", HttpMethod.POST,
+                    new HttpEntity<>(employee("Single " + department, department, 100), headers), Employee.class).getBody();
+            long id = Objects.requireNonNull(created).getId();
+            int shard = Math.floorMod(department.hashCode(), 3);
+            assertEquals(shard, id / EmployeeShards.SHARD_ID_RANGE);
+            assertEquals(shard, shards.shardOf(id));
+
+            cacheManager.getCache("employees").clear();
+            ResponseEntity<Employee> read = restTemplate.exchange("/api/v1/employees/" + id, HttpMethod.GET,
+                    new HttpEntity<>(headers), Employee.class);
+            assertEquals(HttpStatus.OK, read.getStatusCode());
+            assertEquals(department, Objects.requireNonNull(read.getBody()).getDepartment());
+
+            Employee update = employee("Renamed " + department, department, 200);
+            assertEquals(HttpStatus.OK, restTemplate.exchange("/api/v1/employees/" + id, HttpMethod.PUT,
+                    new HttpEntity<>(update, headers), String.class).getStatusCode());
+            assertEquals(HttpStatus.NO_CONTENT, restTemplate.exchange("/api/v1/employees/" + id, HttpMethod.DELETE,
+                    new HttpEntity<>(headers), String.class).getStatusCode());
+            assertEquals(HttpStatus.NOT_FOUND, restTemplate.exchange("/api/v1/employees/" + id, HttpMethod.GET,
+                    new HttpEntity<>(headers), String.class).getStatusCode());
+        }
+    }
+
+    /**
+     * test bulk saves keep their order across shards, and sorted pages are merged from every shard
+     */
+    @Test
+    public void testListsMergedAcrossShards() {
+        List<Employee> employees = new ArrayList<>();
+        String[] departments = {"Engineering", "Finance", "Legal", "Marketing", "Sales"};
+        for (int i = 0; i < 40; i++) {
+            employees.add(employee("Merge " + i, departments[i % departments.length], (i * 7919) % 1000));
+        }
+        List<Employee> saved = employeeService.saveEmployees(employees);
+        for (int i = 0; i < 40; i++) {
+            assertEquals("Merge " + i, saved.get(i).getName());
+        }
+        assertThat(saved.stream().map(employee -> shards.shardOf(employee.getId())).collect(Collectors.toSet())).hasSize(3);
+
+        EmployeeQuery query = new EmployeeQuery();
+        query.setNamePrefix("Merge ");
+        query.parseSort("salary,desc");
+        query.setSize(15);
+        List<EmployeeView> page = employeeService.retrieveEmployees(query);
+
+        List<Employee> expected = new ArrayList<>(saved);
+        expected.sort(Comparator.comparing(Employee::getSalary).thenComparing(Employee::getId).reversed());
+        assertEquals(expected.subList(0, 15).stream().map(Employee::getId).collect(Collectors.toList()),
+                page.stream().map(EmployeeView::getId).collect(Collectors.toList()));
+
+        List<Employee> byId = restTemplate.exchange("/api/v1/employees?size=1000", HttpMethod.GET, new HttpEntity<>(headers),
+                new ParameterizedTypeReference<List<Employee>>() {}).getBody();
+        List<Long> ids = Objects.requireNonNull(byId).stream().map(Employee::getId).collect(Collectors.toList());
+        assertThat(ids).isSorted();
+        assertThat(ids).containsAll(saved.stream().map(Employee::getId).collect(Collectors.toList()));
+    }
+
+    /**
+     * test a rebalance moves part of a full shard, the moved employees are still read, updated and streamed in id order
+     */
+    @Test
+    public void testRebalance() {
+        List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            employees.add(employee("Rebalance " + i, "Warehouse", 1000 + i));
+        }
+        List<Employee> saved = employeeService.saveEmployees(employees);
+        int full = shards.shardOf(saved.get(0).getId());
+        long before = rebalancer.status().get(full).getEmployees();
+
+        List<ShardMove> moves = restTemplate.exchange("/api/v1/shards/rebalance", HttpMethod.POST, new HttpEntity<>(headers),
+                new ParameterizedTypeReference<List<ShardMove>>() {}).getBody();
+        assertThat(moves).isNotEmpty();
+        assertEquals(full, moves.get(0).getFromShard());
+        List<ShardStatus> status = restTemplate.exchange("/api/v1/shards", HttpMethod.GET, new HttpEntity<>(headers),
+                new ParameterizedTypeReference<List<ShardStatus>>() {}).getBody();
+        assertThat(Objects.requireNonNull(status).get(full).getEmployees()).isLessThan(before);
+
+        Employee moved = saved.get(0);
+        assertThat(shards.shardOf(moved.getId())).isNotEqualTo(full);
+        cacheManager.getCache("employees").clear();
+        assertEquals("Rebalance 0", employeeService.getEmployee(moved.getId()).getName());
+        moved.setVersion(null);
+        moved.setSalary(5);
+        assertNotNull(employeeService.updateEmployee(moved));
+
+        List<Long> streamed = new ArrayList<>();
+        employeeService.streamEmployees(employee -> streamed.add(employee.getId()));
+        assertThat(streamed).isSorted();
+        Set<Long> unique = new HashSet<>(streamed);
+        assertEquals(streamed.size(), unique.size());
+        assertThat(unique).containsAll(saved.stream().map(Employee::getId).collect(Collectors.toList()));
+    }
+
+    /**
+     * test a move only holds up the employees it moves: other ids are read meanwhile, moved ids wait for the move
+     */
+    @Test
+    public void testMoveOnlyBlocksMovedIds() throws Exception {
+        List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            employees.add(employee("Moving " + i, "Yard", 100 + i));
+        }
+        List<Employee> saved = employeeService.saveEmployees(employees);
+        long first = saved.get(0).getId();
+        int source = shards.shardOf(first);
+        Employee other = null;
+        for (String department : new String[]{"Audit", "Billing", "Care", "Delivery"}) {
+            Employee created = employeeService.saveEmployee(employee("Staying", department, 100));
+            if (shards.shardOf(created.getId()) != source) {
+                other = created;
+            }
+        }
+        long otherId = Objects.requireNonNull(other).getId();
+        EmployeeShards.Range range = shards.ranges().stream()
+                .filter(candidate -> candidate.getFromId() <= first && first < candidate.getToId())
+                .findFirst().orElseThrow(AssertionError::new);
+        long toId = shards.movableTo(range);
+        assertThat(toId).isGreaterThan(saved.get(1).getId());
+        cacheManager.getCache("employees").clear();
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            CountDownLatch inFlight = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            // a write of a moved id in flight: the move waits for it
+            executor.submit(() -> shards.onOwner(first, () -> {
+                inFlight.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }));
+            inFlight.await();
+            Future<Long> move = executor.submit(() -> shards.move(first, toId, (source + 1) % 3));
+            Thread.sleep(200);
+
+            Future<EmployeeView> movedRead = executor.submit(() -> employeeService.getEmployee(saved.get(1).getId()));
+            assertEquals("Staying", CompletableFuture.supplyAsync(() -> employeeService.getEmployee(otherId))
+                    .get(2, TimeUnit.SECONDS).getName());
+            Thread.sleep(200);
+            assertThat(movedRead.isDone()).isFalse();
+
+            release.countDown();
+            assertThat(move.get(10, TimeUnit.SECONDS)).isGreaterThan(1L);
+            assertEquals("Moving 1", movedRead.get(10, TimeUnit.SECONDS).getName());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "app.employees.bulk.chunk-size=2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class EmployeeTransferControllerTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    private HttpHeaders headers;
+
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+    }
+
+    /**
+     * test CSV export quotes the fields with commas, quotes and line breaks
+     */
+    @Test
+    public void testExportCsv() {
+        Employee employee = employeeRepository.save(employee("Smith, \"Jo\"\nJr", "engineering", 1));
+        ResponseEntity<String> response = restTemplate.exchange("/api/v1/employees/export?format=csv",
+                HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertThat(response.getHeaders().getContentType().toString()).startsWith("text/csv");
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION)).contains("employees.csv");
+        assertThat(response.getBody()).startsWith(EmployeeCsv.HEADER + "\n");
+        assertThat(response.getBody()).contains(employee.getId() + ",\"Smith, \"\"Jo\"\"\nJr\",1,engineering,0\n");
+    }
+
+    /**
+     * test NDJSON export writes one employee per line
+     */
+    @Test
+    public void testExportNdjson() {
+        employeeRepository.save(employee("Line", "engineering", 1));
+        ResponseEntity<String> response = restTemplate.exchange("/api/v1/employees/export?format=ndjson",
+                HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        String[] lines = Objects.requireNonNull(response.getBody()).split("\n");
+        assertEquals(employeeRepository.count(), lines.length);
+        assertThat(lines).allMatch(line -> line.startsWith("{") && line.endsWith("}"));
+        assertThat(lines).anyMatch(line -> line.contains("\"name\":\"Line\""));
+    }
+
+    /**
+     * test an unknown export format is a bad request
+     */
+    @Test
+    public void testExportUnknownFormat() {
+        ResponseEntity<String> response = restTemplate.exchange("/api/v1/employees/export?format=xml",
+                HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    /**
+     * test CSV import over several chunks, with columns in any order, a quoted multi-line name and rejected records
+     */
+    @Test
+    public void testImportCsv() {
+        long before = employeeRepository.count();
+        String requestBody = "department,salary,name\r\n" +
+                "engineering,1,A\r\n" +
+                "engineering,2,\"B, \"\"the\"\"\nsecond\"\r\n" +
+                "engineering,abc,C\r\n" +
+                "\r\n" +
+                "engineering,4,\r\n" +
+                "sales,5,E\r\n";
+        Map<String, Object> progress = importBody(requestBody, MediaType.parseMediaType(EmployeeCsv.TEXT_CSV_VALUE));
+
+        assertEquals("done", progress.get("state"));
+        assertEquals(5, progress.get("read"));
+        assertEquals(3, progress.get("imported"));
+        assertEquals(2, progress.get("rejected"));
+        List<?> rejections = (List<?>) progress.get("rejections");
+        assertThat(((Map<?, ?>) rejections.get(0)).get("error").toString()).contains("line 5");
+        assertEquals(before + 3, employeeRepository.count());
+        assertThat(employeeRepository.findAll()).extracting(Employee::getName).contains("B, \"the\"\nsecond");
+
+        ResponseEntity<List<Map<String, Object>>> imports = restTemplate.exchange("/api/v1/employees/imports",
+                HttpMethod.GET, new HttpEntity<>(headers), new ParameterizedTypeReference<List<Map<String, Object>>>() {});
+        assertThat(imports.getBody()).extracting(i -> i.get("id")).contains(progress.get("id"));
+    }
+
+    /**
+     * test CSV import stops at an unterminated quoted field, chunks before it stay
+     */
+    @Test
+    public void testImportCsvMalformed() {
+        String requestBody = "name,salary,department\nA,1,sales\nB,2,sales\n\"C,3,sales\n";
+        Map<String, Object> progress = importBody(requestBody, MediaType.parseMediaType(EmployeeCsv.TEXT_CSV_VALUE));
+
+        assertEquals("failed", progress.get("state"));
+        assertEquals(2, progress.get("imported"));
+        assertThat(progress.get("error").toString()).contains("line 4");
+    }
+
+    /**
+     * test an export imported back as NDJSON adds the same employees again
+     */
+    @Test
+    public void testExportImportNdjson() {
+        employeeRepository.save(employee("Round trip", "engineering", 1));
+        String export = restTemplate.exchange("/api/v1/employees/export?format=ndjson",
+                HttpMethod.GET, new HttpEntity<>(headers), String.class).getBody();
+        long before = employeeRepository.count();
+
+        Map<String, Object> progress = importBody(export,
+                MediaType.parseMediaType(EmployeeBulkController.APPLICATION_NDJSON_VALUE));
+
+        assertEquals("done", progress.get("state"));
+        assertEquals(before, ((Number) progress.get("imported")).longValue());
+        assertEquals(2 * before, employeeRepository.count());
+    }
+
+    private Map<String, Object> importBody(String requestBody, MediaType contentType) {
+        headers.setContentType(contentType);
+        ResponseEntity<Map<String, Object>> response = restTemplate.exchange("/api/v1/employees/import",
+                HttpMethod.POST, new HttpEntity<>(requestBody, headers), new ParameterizedTypeReference<Map<String, Object>>() {});
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return Objects.requireNonNull(response.getBody());
+    }
+}
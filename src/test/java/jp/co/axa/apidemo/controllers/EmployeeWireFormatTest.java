@@ -0,0 +1,157 @@
+package jp.co.axa.apidemo.controllers;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import jp.co.axa.apidemo.configs.WireFormats;
+import jp.co.axa.apidemo.entities.Employee;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static jp.co.axa.apidemo.EmployeeFixtures.post;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class EmployeeWireFormatTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private final ObjectMapper cbor = new ObjectMapper(new CBORFactory())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final ObjectMapper smile = new ObjectMapper(new SmileFactory())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    private HttpHeaders headers;
+
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setBasicAuth("admin", "admin");
+    }
+
+    /**
+     * test JSON stays the answer without Accept or with a wildcard
+     */
+    @Test
+    public void testJsonByDefault() {
+        Employee saved = post(restTemplate, headers, employee("Default", "engineering", 10));
+        headers.setAccept(Collections.singletonList(MediaType.ALL));
+        ResponseEntity<byte[]> wildcard = get("/api/v1/employees/" + saved.getId());
+        assertThat(wildcard.getHeaders().getContentType().isCompatibleWith(MediaType.APPLICATION_JSON)).isTrue();
+
+        headers.remove(HttpHeaders.ACCEPT);
+        ResponseEntity<String> response = restTemplate.exchange("/api/v1/employees/" + saved.getId(), HttpMethod.GET,
+                new HttpEntity<>(headers), String.class);
+        assertThat(response.getHeaders().getContentType().isCompatibleWith(MediaType.APPLICATION_JSON)).isTrue();
+        assertThat(response.getBody()).contains("\"name\":\"Default\"");
+    }
+
+    /**
+     * test a single employee read as CBOR, then written and read back as Smile
+     */
+    @Test
+    public void testCborAndSmileBodies() throws IOException {
+        Employee saved = post(restTemplate, headers, employee("Binary", "engineering", 10));
+
+        headers.setAccept(Collections.singletonList(WireFormats.APPLICATION_CBOR));
+        ResponseEntity<byte[]> response = get("/api/v1/employees/" + saved.getId());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertThat(response.getHeaders().getContentType().isCompatibleWith(WireFormats.APPLICATION_CBOR)).isTrue();
+        assertThat(response.getHeaders().getVary()).contains(HttpHeaders.ACCEPT);
+        assertEquals("Binary", cbor.readValue(response.getBody(), Employee.class).getName());
+
+        Employee employee = employee("Smiley", "engineering", 7);
+        headers.setAccept(Collections.singletonList(WireFormats.APPLICATION_SMILE));
+        headers.setContentType(WireFormats.APPLICATION_SMILE);
+        ResponseEntity<byte[]> created = restTemplate.exchange("/api/v1/employees", HttpMethod.POST,
+                new HttpEntity<>(smile.writeValueAsBytes(employee), headers), byte[].class);
+        assertEquals(HttpStatus.OK, created.getStatusCode());
+        Employee read = smile.readValue(created.getBody(), Employee.class);
+        assertEquals("Smiley", read.getName());
+        assertEquals(7, read.getSalary().intValue());
+    }
+
+    /**
+     * test bulk add from a CBOR array, then the stream and a page read back as CBOR
+     */
+    @Test
+    public void testCborBulkStreamAndPage() throws IOException {
+        List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Employee employee = employee("Cbor " + i, "cbor", i);
+            employees.add(employee);
+        }
+        headers.setContentType(WireFormats.APPLICATION_CBOR);
+        ResponseEntity<String> bulk = restTemplate.exchange("/api/v1/employees/bulk", HttpMethod.POST,
+                new HttpEntity<>(cbor.writeValueAsBytes(employees), headers), String.class);
+        assertEquals(HttpStatus.OK, bulk.getStatusCode());
+        assertThat(bulk.getBody()).doesNotContain("400");
+        headers.remove(HttpHeaders.CONTENT_TYPE);
+
+        headers.setAccept(Collections.singletonList(WireFormats.APPLICATION_CBOR));
+        ResponseEntity<byte[]> stream = get("/api/v1/employees/stream");
+        assertThat(stream.getHeaders().getContentType().isCompatibleWith(WireFormats.APPLICATION_CBOR)).isTrue();
+        List<Employee> streamed = cbor.readValue(stream.getBody(), new TypeReference<List<Employee>>() {});
+        assertThat(streamed).extracting(Employee::getName).contains("Cbor 0", "Cbor 4");
+
+        ResponseEntity<byte[]> page = get("/api/v1/employees?department=cbor&fields=name");
+        List<Map<String, Object>> rows = cbor.readValue(page.getBody(), new TypeReference<List<Map<String, Object>>>() {});
+        assertEquals(5, rows.size());
+        assertEquals(Collections.singleton("name"), rows.get(0).keySet());
+    }
+
+    /**
+     * test a large response is gzipped for a caller accepting it, a small one is not
+     */
+    @Test
+    public void testGzipAboveThreshold() throws IOException {
+        StringBuilder bulk = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            bulk.append(i == 0 ? "" : ",").append("{\"name\":\"Gzip ").append(i).append("\", \"department\":\"gzip\", \"salary\":1}");
+        }
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        restTemplate.exchange("/api/v1/employees/bulk", HttpMethod.POST, new HttpEntity<>(bulk.append("]").toString(), headers), String.class);
+        headers.remove(HttpHeaders.CONTENT_TYPE);
+
+        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        ResponseEntity<byte[]> page = get("/api/v1/employees?department=gzip&size=100");
+        assertEquals("gzip", page.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        List<Map<String, Object>> rows = json.readValue(new GZIPInputStream(new ByteArrayInputStream(page.getBody())),
+                new TypeReference<List<Map<String, Object>>>() {});
+        assertEquals(100, rows.size());
+
+        ResponseEntity<byte[]> one = get("/api/v1/employees/" + ((Number) rows.get(0).get("id")).longValue());
+        assertThat(one.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+    }
+
+    private ResponseEntity<byte[]> get(String url) {
+        return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+    }
+}
@@ -0,0 +1,118 @@
+package jp.co.axa.apidemo.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.metrics.RepositoryMetricsAspect;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "app.cache.specs.employees.refresh-after-write=300ms")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class EmployeeCacheLoadingTest {
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * test concurrent misses of one employee run one query
+     */
+    @Test
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        Employee saved = employeeRepository.save(employee("Hot", "Cache", 1000));
+        long before = repositoryCalls("findViewById");
+
+        runConcurrently(16, () -> assertEquals("Hot", employeeService.getEmployee(saved.getId()).getName()));
+
+        assertEquals(1, repositoryCalls("findViewById") - before);
+    }
+
+    /**
+     * test concurrent misses of one page run one query,
+     * also for a thread missing before the page is stored and registering its load after the first one is done
+     */
+    @Test
+    public void testConcurrentPageMissesLoadOnce() throws Exception {
+        employeeRepository.save(employee("Paged", "Cache", 1000));
+        cacheManager.getCache(EmployeePageCache.EMPLOYEE_PAGES_CACHE).clear();
+        long before = repositoryCalls("findViewPage");
+
+        runConcurrently(16, () -> employeeService.retrieveEmployees(0, 50));
+
+        assertEquals(1, repositoryCalls("findViewPage") - before);
+    }
+
+    /**
+     * test an entry read after refresh-after-write is served stale once, then reloaded in the background
+     */
+    @Test
+    public void testRefreshAhead() throws Exception {
+        Employee saved = employeeService.saveEmployee(employee("Before", "Cache", 1000));
+        Employee changed = employeeRepository.findById(saved.getId()).orElseThrow(AssertionError::new);
+        changed.setName("After");
+        // written behind the cache, which is not told
+        employeeRepository.save(changed);
+        assertEquals("Before", employeeService.getEmployee(saved.getId()).getName());
+
+        Thread.sleep(400);
+        assertEquals("Before", employeeService.getEmployee(saved.getId()).getName());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!"After".equals(employeeService.getEmployee(saved.getId()).getName()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals("After", employeeService.getEmployee(saved.getId()).getName());
+    }
+
+    private long repositoryCalls(String method) {
+        Timer timer = meterRegistry.find(RepositoryMetricsAspect.METRIC_NAME).tag("method", method).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private static void runConcurrently(int threads, Runnable task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.EmployeeFixtures;
+import jp.co.axa.apidemo.dto.EmployeeChange;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.events.EmployeeChangeEvent;
+import jp.co.axa.apidemo.exception.ChangeStreamGapException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class EmployeeChangeStreamTest {
+
+    private EmployeeChangeStream stream;
+
+    @Before
+    public void setup() {
+        stream = new EmployeeChangeStream(4, 2, 100, 4);
+        stream.start();
+    }
+
+    @After
+    public void tearDown() {
+        stream.stop();
+    }
+
+    /**
+     * test the ring keeps the latest changes in order and reports the overwritten ones as a gap
+     */
+    @Test
+    public void testReadAndGap() {
+        assertThat(stream.read(0, 10)).isEmpty();
+        for (long id = 1; id <= 6; id++) {
+            stream.onEmployeeChange(EmployeeChangeEvent.created(employee(id)));
+        }
+        stream.onEmployeeChange(EmployeeChangeEvent.deleted(1L, 0L));
+
+        assertEquals(7, stream.latest());
+        assertEquals(4, stream.oldest());
+        assertEquals(Arrays.asList(4L, 5L), sequences(stream.read(3, 2)));
+        List<EmployeeChange> last = stream.read(5, 10);
+        assertEquals(Arrays.asList(6L, 7L), sequences(last));
+        assertEquals(EmployeeChangeEvent.Type.DELETED, last.get(1).getType());
+        assertNull(last.get(1).getEmployee());
+        assertThat(stream.read(7, 10)).isEmpty();
+
+        for (long after : new long[]{0, 2, 8}) {
+            try {
+                stream.read(after, 10);
+                fail("gap expected after " + after);
+            } catch (ChangeStreamGapException e) {
+                assertEquals(4, e.getOldest());
+                assertEquals(7, e.getLatest());
+            }
+        }
+    }
+
+    /**
+     * test a subscriber catches up, then gets each new change in order, and heartbeats while idle
+     */
+    @Test
+    public void testSubscribe() throws InterruptedException {
+        stream.onEmployeeChange(EmployeeChangeEvent.created(employee(1)));
+        stream.onEmployeeChange(EmployeeChangeEvent.created(employee(2)));
+        BlockingQueue<List<EmployeeChange>> deliveries = new LinkedBlockingQueue<>();
+        EmployeeChangeStream.Subscription subscription = stream.subscribe(0, new EmployeeChangeStream.ChangeSubscriber() {
+            @Override
+            public boolean onChanges(List<EmployeeChange> changes) {
+                deliveries.add(changes);
+                return true;
+            }
+
+            @Override
+            public void onGap(ChangeStreamGapException gap) {
+                fail("no gap expected");
+            }
+        });
+
+        assertEquals(Arrays.asList(1L, 2L), sequences(deliveries.poll(5, TimeUnit.SECONDS)));
+        Employee updated = employee(1);
+        stream.onEmployeeChange(EmployeeChangeEvent.updated(updated));
+        updated.setName("changed after commit");
+        List<EmployeeChange> next = deliveries.poll(5, TimeUnit.SECONDS);
+        assertNotNull(next);
+        assertEquals(Arrays.asList(3L), sequences(next));
+        assertEquals("Employee 1", next.get(0).getEmployee().getName());
+        assertThat(deliveries.poll(5, TimeUnit.SECONDS)).isEmpty();
+        assertEquals(1, stream.subscriberCount());
+
+        subscription.cancel();
+        assertEquals(0, stream.subscriberCount());
+    }
+
+    /**
+     * test a subscriber behind the ring is told and unsubscribed
+     */
+    @Test
+    public void testSubscriberGap() throws InterruptedException {
+        for (long id = 1; id <= 6; id++) {
+            stream.onEmployeeChange(EmployeeChangeEvent.created(employee(id)));
+        }
+        BlockingQueue<ChangeStreamGapException> gaps = new LinkedBlockingQueue<>();
+        stream.subscribe(0, new EmployeeChangeStream.ChangeSubscriber() {
+            @Override
+            public boolean onChanges(List<EmployeeChange> changes) {
+                fail("no changes expected");
+                return false;
+            }
+
+            @Override
+            public void onGap(ChangeStreamGapException gap) {
+                gaps.add(gap);
+            }
+        });
+
+        ChangeStreamGapException gap = gaps.poll(5, TimeUnit.SECONDS);
+        assertNotNull(gap);
+        assertEquals(6, gap.getLatest());
+        assertEquals(0, stream.subscriberCount());
+    }
+
+    /**
+     * test a consumer blocked in a send holds up neither the others nor the writes, and is ended with a gap
+     */
+    @Test
+    public void testSlowSubscriber() throws InterruptedException {
+        EmployeeChangeStream wide = new EmployeeChangeStream(100, 2, 60000, 4);
+        wide.start();
+        try {
+            CountDownLatch blocked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            BlockingQueue<ChangeStreamGapException> gaps = new LinkedBlockingQueue<>();
+            wide.subscribe(0, new EmployeeChangeStream.ChangeSubscriber() {
+                @Override
+                public boolean onChanges(List<EmployeeChange> changes) throws IOException {
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return true;
+                }
+
+                @Override
+                public void onGap(ChangeStreamGapException gap) {
+                    gaps.add(gap);
+                }
+            });
+            BlockingQueue<Long> received = new LinkedBlockingQueue<>();
+            wide.subscribe(0, new EmployeeChangeStream.ChangeSubscriber() {
+                @Override
+                public boolean onChanges(List<EmployeeChange> changes) {
+                    changes.forEach(change -> received.add(change.getSequence()));
+                    return true;
+                }
+
+                @Override
+                public void onGap(ChangeStreamGapException gap) {
+                    fail("no gap expected");
+                }
+            });
+
+            wide.onEmployeeChange(EmployeeChangeEvent.created(employee(1)));
+            assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+            assertEquals(Long.valueOf(1), received.poll(5, TimeUnit.SECONDS));
+            // the fast consumer keeps up with each change, the blocked one's queue overflows
+            for (long id = 2; id <= 12; id++) {
+                wide.onEmployeeChange(EmployeeChangeEvent.created(employee(id)));
+                assertEquals(Long.valueOf(id), received.poll(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, wide.subscriberCount());
+
+            release.countDown();
+            ChangeStreamGapException gap = gaps.poll(5, TimeUnit.SECONDS);
+            assertNotNull(gap);
+            assertEquals(1, gap.getAfter());
+        } finally {
+            wide.stop();
+        }
+    }
+
+    private static List<Long> sequences(List<EmployeeChange> changes) {
+        return changes.stream().map(EmployeeChange::getSequence).collect(Collectors.toList());
+    }
+
+    private static Employee employee(long id) {
+        return EmployeeFixtures.employee(id, "Employee " + id, "engineering", 1000, null);
+    }
+}
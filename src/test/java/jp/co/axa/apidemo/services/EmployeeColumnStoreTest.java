@@ -0,0 +1,96 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.EmployeeFixtures;
+import jp.co.axa.apidemo.dto.EmployeeView;
+import jp.co.axa.apidemo.entities.Employee;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class EmployeeColumnStoreTest {
+
+    /**
+     * test put / get / replace / remove, beyond the initial capacity
+     */
+    @Test
+    public void testPutGetRemove() {
+        EmployeeColumnStore store = new EmployeeColumnStore(16);
+        for (long id = 1; id <= 5000; id++) {
+            store.put(employee(id, "Employee " + id, 0L));
+        }
+        assertEquals(5000, store.size());
+
+        store.put(employee(42, "Renamed 名前", 1L));
+        EmployeeView renamed = store.get(42);
+        assertEquals("Renamed 名前", renamed.getName());
+        assertEquals(Long.valueOf(1), renamed.getVersion());
+        assertEquals(1L, store.version(42));
+        assertEquals("Dept 2", renamed.getDepartment());
+        assertEquals(Integer.valueOf(42 * 10), renamed.getSalary());
+
+        for (long id = 1; id <= 5000; id += 2) {
+            assertThat(store.remove(id)).isTrue();
+        }
+        assertFalse(store.remove(1));
+        assertNull(store.get(1));
+        assertEquals(-1L, store.version(1));
+        assertEquals(2500, store.size());
+        assertEquals("Employee 4000", store.get(4000).getName());
+    }
+
+    /**
+     * test keyset pages skip removed ids and include ids inserted out of order
+     */
+    @Test
+    public void testPages() {
+        EmployeeColumnStore store = new EmployeeColumnStore(16);
+        for (long id : new long[]{10, 20, 30, 40, 50}) {
+            store.put(employee(id, "E" + id, 0L));
+        }
+        store.remove(20);
+        store.put(employee(25, "E25", 0L));
+        store.put(employee(20, "E20 again", 0L));
+        store.remove(40);
+
+        assertEquals(asList(10, 20, 25), ids(store.page(0, 3)));
+        assertEquals(asList(30, 50), ids(store.page(25, 3)));
+        assertThat(store.page(50, 3)).isEmpty();
+        assertEquals("E20 again", store.get(20).getName());
+    }
+
+    /**
+     * test names survive many updates, which make the name buffer compact
+     */
+    @Test
+    public void testNameCompaction() {
+        EmployeeColumnStore store = new EmployeeColumnStore(16);
+        for (int round = 0; round < 200; round++) {
+            for (long id = 1; id <= 50; id++) {
+                store.put(employee(id, "Employee " + id + " round " + round, (long) round));
+            }
+        }
+        for (long id = 1; id <= 50; id++) {
+            assertEquals("Employee " + id + " round 199", store.get(id).getName());
+        }
+        assertThat(store.offHeapBytes()).isLessThan(64 * 1024);
+    }
+
+    private static Employee employee(long id, String name, Long version) {
+        return EmployeeFixtures.employee(id, name, "Dept " + id % 5, (int) id * 10, version);
+    }
+
+    private static List<Long> ids(List<EmployeeView> employees) {
+        return employees.stream().map(EmployeeView::getId).collect(Collectors.toList());
+    }
+
+    private static List<Long> asList(long... ids) {
+        return Arrays.stream(ids).boxed().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,89 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.dto.EmployeeSearchHit;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class EmployeeTermIndexTest {
+
+    /**
+     * test exact words rank before prefixes, name words before department words, then shorter names
+     */
+    @Test
+    public void testPrefixRanking() {
+        EmployeeTermIndex index = new EmployeeTermIndex(4);
+        index.put(1, 1, "Anna Karenina", "sales");
+        index.put(2, 1, "Annabel Lee", "sales");
+        index.put(3, 1, "Ann", "sales");
+        index.put(4, 1, "Bob Smith", "annual reports");
+        index.put(5, 1, "Carol King", "engineering");
+
+        assertEquals(Arrays.asList(3L, 2L, 1L, 4L), ids(index.search("ann", 10)));
+        assertEquals(Arrays.asList(3L, 2L), ids(index.search("ann", 2)));
+        assertEquals(Arrays.asList(2L), ids(index.search("lee ANN", 10)));
+        assertEquals(Arrays.asList(3L, 2L, 1L), ids(index.search("sal an", 10)));
+        assertThat(index.search("zzz", 10)).isEmpty();
+        assertThat(index.search(" - ", 10)).isEmpty();
+    }
+
+    /**
+     * test words with a typo match when the prefix matches are few, below the exact / prefix matches
+     */
+    @Test
+    public void testFuzzy() {
+        EmployeeTermIndex index = new EmployeeTermIndex(4);
+        index.put(1, 1, "John Johnson", "engineering");
+        index.put(2, 1, "Jonathan Smith", "engineering");
+        index.put(3, 1, "Mary Smyth", "sales");
+
+        assertEquals(Arrays.asList(1L, 2L), ids(index.search("jhon", 10)));
+        assertEquals(Arrays.asList(1L), ids(index.search("jonhson", 10)));
+        assertEquals(Arrays.asList(2L, 3L), ids(index.search("smith", 10)));
+        assertEquals(Arrays.asList(2L), ids(index.search("smith", 1)));
+        assertEquals(Arrays.asList(2L), ids(index.search("enginering smith", 10)));
+        assertThat(index.search("jo", 10)).hasSize(2);
+        assertThat(index.search("xyz", 10)).isEmpty();
+    }
+
+    /**
+     * test updates, stale updates and removes, with the compaction of the dead docs
+     */
+    @Test
+    public void testUpdateRemoveCompaction() {
+        EmployeeTermIndex index = new EmployeeTermIndex(16);
+        for (long id = 1; id <= 3000; id++) {
+            index.put(id, 1, "Employee " + id, "dept" + (id % 3));
+        }
+        index.put(42, 2, "Renamed", "dept0");
+        assertThat(ids(index.search("employee 42", 20))).doesNotContain(42L).contains(420L, 421L);
+        assertEquals(Arrays.asList(42L), ids(index.search("renamed", 10)));
+        // an older version published late is not indexed over the newer one
+        assertFalse(index.put(42, 1, "Employee 42", "dept0"));
+        assertEquals(2, index.version(42));
+        assertEquals(Arrays.asList(42L), ids(index.search("renamed", 10)));
+
+        for (long id = 1; id <= 2000; id++) {
+            assertThat(index.remove(id)).isTrue();
+        }
+        assertFalse(index.remove(1));
+        assertEquals(1000, index.size());
+        assertThat(index.needsCompaction()).isTrue();
+
+        EmployeeTermIndex compacted = index.compacted();
+        assertEquals(1000, compacted.size());
+        assertFalse(compacted.needsCompaction());
+        assertEquals(Arrays.asList(2500L), ids(compacted.search("2500", 1)));
+        assertEquals(10, compacted.search("dept1", 10).size());
+    }
+
+    private static List<Long> ids(List<EmployeeSearchHit> hits) {
+        return hits.stream().map(EmployeeSearchHit::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,228 @@
+package jp.co.axa.apidemo.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static jp.co.axa.apidemo.EmployeeFixtures.employee;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "app.employees.write-behind.enabled=true",
+        "app.employees.write-behind.journal=target/write-behind-test/employee-journal.log",
+        // no background run, the tests flush themselves
+        "app.employees.write-behind.flush-interval-ms=3600000"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DirtiesContext
+public class WriteBehindEmployeeServiceTest {
+
+    private static final Path JOURNAL = Paths.get("target/write-behind-test/employee-journal.log");
+
+    private static final long REPLAYED_ID = 900001L;
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    // journal left by a previous run, replayed when the context starts
+    @BeforeClass
+    public static void writeJournal() throws IOException {
+        for (Path segment : journalSegments()) {
+            Files.delete(segment);
+        }
+        Employee employee = employee(REPLAYED_ID, "Replayed", "Journal", 1000, 0L);
+        try (EmployeeJournal journal = new EmployeeJournal(JOURNAL, new ObjectMapper(), true)) {
+            journal.append(EmployeeJournal.Entry.of(employee, true));
+        }
+        Files.write(JOURNAL.resolveSibling(JOURNAL.getFileName() + ".1"), "{\"id\":9".getBytes(), StandardOpenOption.APPEND);
+    }
+
+    /**
+     * test journaled writes are replayed at startup, a torn last entry is ignored
+     */
+    @Test
+    public void testReplay() {
+        assertThat(employeeService).isInstanceOf(WriteBehindEmployeeService.class);
+        assertThat(employeeRepository.findById(REPLAYED_ID)).hasValueSatisfying(
+                employee -> assertEquals("Replayed", employee.getName()));
+    }
+
+    /**
+     * test a write is read back before it is applied, then applied by the writer
+     */
+    @Test
+    public void testReadYourWrites() throws IOException {
+        Employee employee = employee("Pending", "Journal", 2000);
+        Long id = employeeService.saveEmployee(employee).getId();
+
+        assertThat(employeeRepository.existsById(id)).isFalse();
+        assertEquals("Pending", employeeService.getEmployee(id).getName());
+        assertThat(journalLines()).isGreaterThan(0);
+
+        Employee update = employeeService.getEmployee(id).toEmployee();
+        update.setName("Updated");
+        assertEquals(Long.valueOf(1), employeeService.updateEmployee(update).getVersion());
+        assertEquals("Updated", employeeService.getEmployee(id).getName());
+
+        ((WriteBehindEmployeeService) employeeService).flush();
+
+        Employee stored = employeeRepository.findById(id).orElseThrow(AssertionError::new);
+        assertEquals("Updated", stored.getName());
+        assertEquals(Long.valueOf(1), stored.getVersion());
+        // the applied segments are deleted, only the empty segment appended to is left
+        assertEquals(0, journalLines());
+        assertEquals(1, journalSegments().size());
+
+        Employee next = employee("After flush", "Journal", 2500);
+        employeeService.saveEmployee(next);
+        assertEquals(1, journalLines());
+    }
+
+    /**
+     * test concurrent writes sharing the journal forces are all journaled, then applied
+     */
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        WriteBehindEmployeeService service = (WriteBehindEmployeeService) employeeService;
+        service.flush();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Long>> ids = new ArrayList<>();
+            for (int i = 0; i < 160; i++) {
+                ids.add(executor.submit(() -> {
+                    Employee employee = employee("Concurrent", "Journal", 4000);
+                    Employee saved = employeeService.saveEmployee(employee);
+                    saved.setSalary(4100);
+                    return employeeService.updateEmployee(saved).getId();
+                }));
+            }
+            for (Future<Long> id : ids) {
+                id.get(30, TimeUnit.SECONDS);
+            }
+            assertEquals(320, journalLines());
+            assertEquals(160, service.pendingCount());
+
+            service.flush();
+            for (Future<Long> id : ids) {
+                assertEquals(Integer.valueOf(4100), employeeRepository.findById(id.get()).map(Employee::getSalary).orElse(null));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * test a delete hides the employee at once and checks the version
+     */
+    @Test
+    public void testDelete() {
+        Employee employee = employee("Deleted", "Journal", 3000);
+        Long id = employeeService.saveEmployee(employee).getId();
+        ((WriteBehindEmployeeService) employeeService).flush();
+
+        try {
+            employeeService.deleteEmployee(id, 5L);
+            throw new AssertionError("stale version accepted");
+        } catch (OptimisticLockingFailureException expected) {
+            // version 0 is current
+        }
+        assertThat(employeeService.deleteEmployee(id, 0L)).isTrue();
+        assertNull(employeeService.getEmployee(id));
+        assertThat(employeeService.deleteEmployee(id, null)).isFalse();
+
+        ((WriteBehindEmployeeService) employeeService).flush();
+        assertThat(employeeRepository.existsById(id)).isFalse();
+    }
+
+    /**
+     * test a single update racing a bulk update of the same employee: both are applied, one after the other,
+     * neither overwrites the other with the same version
+     */
+    @Test
+    public void testSingleUpdateRacingBulkUpdate() throws Exception {
+        WriteBehindEmployeeService service = (WriteBehindEmployeeService) employeeService;
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 20; i++) {
+                Long id = employeeService.saveEmployee(employee("Raced", "Journal", 5000)).getId();
+                service.flush();
+                CountDownLatch start = new CountDownLatch(1);
+                Future<?> single = executor.submit(() -> {
+                    start.await();
+                    employeeService.updateEmployee(employee(id, "Single", "Journal", 5100, null));
+                    return null;
+                });
+                Future<?> bulk = executor.submit(() -> {
+                    start.await();
+                    employeeService.updateEmployees(Collections.singletonList(employee(id, "Bulk", "Journal", 5200, null)));
+                    return null;
+                });
+                start.countDown();
+                single.get(30, TimeUnit.SECONDS);
+                bulk.get(30, TimeUnit.SECONDS);
+                service.flush();
+
+                Employee stored = employeeRepository.findById(id).orElseThrow(AssertionError::new);
+                assertEquals(Long.valueOf(2), stored.getVersion());
+                assertEquals(stored.getName(), employeeService.getEmployee(id).getName());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return files of the journal segments
+     */
+    private static List<Path> journalSegments() throws IOException {
+        if (!Files.exists(JOURNAL.getParent())) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(JOURNAL.getParent())) {
+            return files.filter(file -> file.getFileName().toString().startsWith(JOURNAL.getFileName().toString()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return number of writes in the journal segments
+     */
+    private static int journalLines() throws IOException {
+        int lines = 0;
+        for (Path segment : journalSegments()) {
+            lines += Files.readAllLines(segment).size();
+        }
+        return lines;
+    }
+}